@@ -2,7 +2,7 @@
  *A GUI for RemoteBankClient
  *
  * @author Mustafa Khoraidah
- * @version 0.2
+ * @version 0.4
  */
 package edu.btp400.w2017.client;
 import static edu.btp400.w2017.client.RemoteBankClient.*;
@@ -644,13 +644,12 @@ public class GUIRemoteBankClient extends javax.swing.JFrame {
             //Search by name
             if(jRadioName.isSelected())
             {
-                Account[] searchResults = null;
+                AccountSummary[] searchResults = null;
                 try{
-                    searchResults = serverBank.searchByAccountName(jTextNameOrBalance.getText());
+                    searchResults = serverBank.searchSummariesByAccountName(jTextNameOrBalance.getText(), null);
 
                     //Display the entries
-                    for (Account account: searchResults){
-                            displayAccount(account);
+                    for (AccountSummary account: searchResults){
                             display.append("Account Details\n");
                             display.append("====================\n");
                             display.append(String.format("%s\n\n", account.toString()));
@@ -666,16 +665,15 @@ public class GUIRemoteBankClient extends javax.swing.JFrame {
                 }
             }else
             {
-                ArrayList<Account> searchResults = new ArrayList<Account>();
+                AccountSummary[] searchResults = null;
                 //Search by balance
                      try{
-                             searchResults = serverBank.searchAccountByBalance(Double.parseDouble(jTextNameOrBalance.getText()));
+                             searchResults = serverBank.searchSummariesByBalance(Double.parseDouble(jTextNameOrBalance.getText()), null);
                              //Display
-                             for (int i = 0; i < searchResults.size(); i++){
-                                     displayAccount(searchResults.get(i));
+                             for (int i = 0; i < searchResults.length; i++){
                                      display.append("Account Details\n");
                                      display.append("--------------\n");
-                                     display.append(String.format("%s\n\n", searchResults.get(i).toString()));
+                                     display.append(String.format("%s\n\n", searchResults[i].toString()));
                              }
                              
                              JOptionPane.showMessageDialog(null, display, "Display Account by Balance", JOptionPane.PLAIN_MESSAGE);
@@ -694,44 +692,25 @@ public class GUIRemoteBankClient extends javax.swing.JFrame {
 
     private void jButTaxStatActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jButTaxStatActionPerformed
         String accountName = jTextAccountHolder.getText();
-		Account[] searchResults = new Account[0];
-		int resultCounter = 1;
+		TaxStatement[] statements = new TaxStatement[0];
 		if (accountName.isEmpty()){
 			JOptionPane.showMessageDialog(null,  "Please enter an account holder name", "Error", JOptionPane.ERROR_MESSAGE);
 		}
 		else {
-			//Get all accounts by name
+			//Get the tax statements worked out by the server
 			try{
-				searchResults = serverBank.searchByAccountName(accountName);
-				int numOfStatements = 0;
-	
-				for (int i = 0; i < searchResults.length; i++){
-					if (searchResults[i] instanceof GIC || searchResults[i] instanceof Savings){
-						numOfStatements++;
-					}
-				}
+				statements = serverBank.getTaxStatements(accountName);
 	                        
 	                StringBuffer display = new StringBuffer("");
-	                if (numOfStatements > 0){
-	                	display.append(String.format("Tax Statement(s) for %s\n", searchResults[0].getFullName()));
+	                if (statements.length > 0){
+	                	display.append(String.format("Tax Statement(s) for %s\n", statements[0].getFullName()));
 	                }else{
 	                	display.append(String.format("%s does not have any taxable accounts.", accountName));
 	                }
 	                
-	                //Check if account instaneof GIC/Savings
-	                for (int i = 0; i < searchResults.length; i++){
-	                        if (searchResults[i] instanceof GIC){
-	                                display.append(String.format("\n%d. \n", resultCounter));
-	                                GIC gic = (GIC) searchResults[i];
-	                                display.append (gic.createTaxStatement());
-	                                resultCounter++;
-	                        }
-	                        else if(searchResults[i] instanceof Savings){
-	                        		display.append(String.format("\n %d. \n", resultCounter));
-	                                Savings savings = (Savings) searchResults[i];
-	                                display.append (savings.createTaxStatement());
-	                                resultCounter++;
-	                        }
+	                for (int i = 0; i < statements.length; i++){
+	                        display.append(String.format("\n%d. \n", i + 1));
+	                        display.append(statements[i].toString());
 	                }
 	                
 	                JOptionPane.showMessageDialog(null, display, "Tax Statement", JOptionPane.PLAIN_MESSAGE);
@@ -2,7 +2,7 @@
  * RemoteBankClient application that acts as as a user interface and uses RMI.
  *
  * @author awang05
- * @version 0.4
+ * @version 0.8
  */
 package edu.btp400.w2017.client;
 import java.util.*;
@@ -20,6 +20,7 @@ public class RemoteBankClient {
 
 	private static final double SMALLEST_DOUBLE_VALUE = -1 * Double.MAX_VALUE;
 	private static final double LARGEST_DOUBLE_VALUE = Double.MAX_VALUE;
+	private static final int SEARCH_PAGE_SIZE = 20;
 	private static NumberFormat currencyFormat = NumberFormat.getCurrencyInstance(Locale.CANADA);
 	public static Scanner input = new Scanner(System.in);
 
@@ -261,13 +262,32 @@ public class RemoteBankClient {
 	}
 
 	/**
-	 * Requests the user for the amount to withdraw/deposit.
+	 * Prompts the user to enter the account number of the account to
+	 * deposit to or withdraw from.
+	 *
+	 * @param style				The transaction type
+	 * @return					A string containing the account number
+	 */
+	private static String getTransactionAccount(TransactionType style){
+		String account = "";
+		String transactionType = (style == TransactionType.DEPOSIT) ? "deposit to" : "withdraw from";
+		input.nextLine();
+		do{
+			System.out.println("Please enter the account number to " + transactionType + ": ");
+			account = input.nextLine().trim();
+		}while(account.isEmpty());
+
+		return account;
+	}
+
+	/**
+	 * Requests the user for the amount to withdraw/deposit. Expects the
+	 * previous input line to have been read already.
 	 *
 	 * @param style				The transaction type
 	 * @return					The amount for the transaction
 	 */
 	private static double requestForAmount(TransactionType style){
-		input.nextLine();
 		double amount = 0;
 		String transactionType = "";
 
@@ -298,6 +318,24 @@ public class RemoteBankClient {
 		return amount;
 	}
 
+	/**
+	 * Provides the user with feedback on a deposit or withdrawal.
+	 *
+	 * @param result			The outcome of the transaction
+	 * @param style				The transaction type
+	 */
+	private static void displayTransactionResult(TransactionResult result, TransactionType style){
+		String transactionType = (style == TransactionType.DEPOSIT) ? "Deposit" : "Withdraw";
+		System.out.println("\nTransaction Details");
+		System.out.println("====================");
+		System.out.println(result);
+		if (result.isSuccessful()){
+			System.out.println(transactionType + " completed successfully.\n");
+		}else{
+			System.out.println("Error: " + transactionType.toLowerCase() + " was not successful.\n");
+		}
+	}
+
 	/**
 	 * Returns the account selected for withdraw or deposit.
 	 *
@@ -393,20 +431,23 @@ public class RemoteBankClient {
 	private static void displayAccountsByName(RemoteBank bank) throws RemoteException{
 		input.nextLine();
 		String accountName = "";
-		Account[] searchResults = null;
 		do{
 			System.out.println("Please enter the name of the account holder: ");
 			accountName = input.nextLine().trim();
 		}while(accountName.isEmpty());
 
-		//Search
+		//Search, one page at a time
 		try{
-			searchResults = bank.searchByAccountName(accountName);
+			String pageToken = null;
+			do{
+				AccountPage page = bank.searchByAccountName(accountName, SEARCH_PAGE_SIZE, pageToken);
 
-			//Display the entries
-			for (Account account: searchResults){	// ATTN - Potential nullptr exception
-				displayAccount(account);
-			}
+				//Display the entries
+				for (Account account: page.getAccounts()){
+					displayAccount(account);
+				}
+				pageToken = page.getNextPageToken();
+			}while(pageToken != null && askForNextPage());
 		}catch (NoAccountException e){
 			System.out.println(e);
 		}catch (RemoteException e){
@@ -422,7 +463,6 @@ public class RemoteBankClient {
 	 */
 	private static void displayAccountsByBalance(RemoteBank bank) throws RemoteException{
 		input.nextLine();
-		ArrayList<Account> searchResults = new ArrayList<Account>();
 		double balance = 0;
 
 		//Validate balance
@@ -437,14 +477,20 @@ public class RemoteBankClient {
 			balance = input.nextDouble();
 		 }while(balance < 1);
 
-		 //Search
-		 try{
-			 searchResults = bank.searchAccountByBalance(balance);
+		 input.nextLine();
 
-			 //Display
-			 for (int i = 0; i < searchResults.size(); i++){
-				 displayAccount(searchResults.get(i));
-			 }
+		 //Search, one page at a time
+		 try{
+			 String pageToken = null;
+			 do{
+				 AccountPage page = bank.searchAccountByBalance(balance, SEARCH_PAGE_SIZE, pageToken);
+
+				 //Display
+				 for (Account account : page.getAccounts()){
+					 displayAccount(account);
+				 }
+				 pageToken = page.getNextPageToken();
+			 }while(pageToken != null && askForNextPage());
 		 }catch (NoAccountException e){
 			 System.out.println(e);
 		 }catch (RemoteException e){
@@ -453,71 +499,70 @@ public class RemoteBankClient {
 	}
 
 	/**
-	 * Displays all accounts in the bank.
+	 * Asks the user if the next page of search results should be displayed.
+	 *
+	 * @return			True if the user wants to see more accounts
+	 */
+	private static boolean askForNextPage(){
+		System.out.println("Display more accounts? (y/n): ");
+		return input.nextLine().trim().equalsIgnoreCase("y");
+	}
+
+	/**
+	 * Displays all accounts in the bank. The accounts are pulled from a
+	 * cursor on the server one batch at a time, so the whole bank is never
+	 * sent in a single response.
 	 * @param bank				The bank which accounts are found
 	 */
-	private static void displayAllAccounts(Bank bank){
-		Account[] accounts = bank.getAllAccounts();
-		if (accounts.length < 1){
-			System.out.println("\nThere are currently no accounts in this bank\n");
-		}
-		for(Account account : accounts){
-			displayAccount(account);
+	private static void displayAllAccounts(RemoteBank bank) throws RemoteException{
+		RemoteAccountCursor cursor = bank.openAccountCursor();
+		try{
+			Account[] accounts = cursor.next(SEARCH_PAGE_SIZE);
+			if (accounts.length < 1){
+				System.out.println("\nThere are currently no accounts in this bank\n");
+			}
+			while (accounts.length > 0){
+				for(Account account : accounts){
+					displayAccount(account);
+				}
+				accounts = cursor.next(SEARCH_PAGE_SIZE);
+			}
+		}finally{
+			cursor.close();
 		}
 	}
 
 	/**
-	 * Prompts the user for the name of the account holder.  Then, search
-	 * the bank for the accounts with the matching account holder's name
-	 * and print the accounts.
+	 * Prompts the user for the name of the account holder.  Then, ask
+	 * the bank for the tax statements of the account holder's taxable
+	 * accounts and print them.
 	 *
 	 * @param bank			The bank which holds the accounts
 	 */
 	private static void displayTaxStatement(RemoteBank bank){
 		input.nextLine();
 		String accountName = "";
-		Account[] searchResults = new Account[0];
-		int resultCounter = 1;
+		TaxStatement[] statements = new TaxStatement[0];
 		//Ask for user name
 		do{
 			System.out.println("Please provide account holder name: ");
 			accountName = input.nextLine().trim();
 		}while(accountName.isEmpty());
 
-
-
-		//Get all accounts by name
+		//Get the tax statements worked out by the server
 		try{
-			searchResults = bank.searchByAccountName(accountName);
-			int numOfStatements = 0;
+			statements = bank.getTaxStatements(accountName);
 
-			for (int i = 0; i < searchResults.length; i++){
-				if (searchResults[i] instanceof GIC || searchResults[i] instanceof Savings){
-					numOfStatements++;
-				}
-			}
-
-			if (numOfStatements > 0){
-				System.out.println("\nTax Statement(s) of " + searchResults[0].getFullName() + '\n');
+			if (statements.length > 0){
+				System.out.println("\nTax Statement(s) of " + statements[0].getFullName() + '\n');
 			}else{
-				System.out.printf("\n%s does not have any taxable accounts.\n\n", searchResults[0].getFullName());
+				System.out.printf("\n%s does not have any taxable accounts.\n\n", accountName);
 			}
 
-				//Check if account instaneof GIC/Savings
-				for (int i = 0; i < searchResults.length; i++){
-					if (searchResults[i] instanceof GIC){
-						System.out.println(resultCounter + ".");
-						GIC gic = (GIC) searchResults[i];
-						System.out.println(gic.createTaxStatement());
-						resultCounter++;
-					}
-					else if(searchResults[i] instanceof Savings){
-						System.out.println(resultCounter + ".");
-						Savings saving = (Savings) searchResults[i];
-						System.out.println(saving.createTaxStatement());
-						resultCounter++;
-					}
-				}
+			for (int i = 0; i < statements.length; i++){
+				System.out.println((i + 1) + ".");
+				System.out.println(statements[i]);
+			}
 		}catch (NoAccountException e ){
 			System.out.println(e);
 		}catch (RemoteException e){
@@ -559,10 +604,24 @@ public class RemoteBankClient {
 					account = null;
 					break;
 				case 3:					//Deposit money
-					System.out.println("Deposit money function is currently disabled.\n");
+					String depositAccount = getTransactionAccount(TransactionType.DEPOSIT);
+					amount = requestForAmount(TransactionType.DEPOSIT);
+					try{
+						displayTransactionResult(serverBank.deposit(depositAccount, amount),
+								TransactionType.DEPOSIT);
+					}catch (NoAccountException e){
+						System.out.println(e);
+					}
 					break;
 				case 4:					//Withdraw money
-					System.out.println("Withdraw function is currently disabled.\n");
+					String withdrawAccount = getTransactionAccount(TransactionType.WITHDRAW);
+					amount = requestForAmount(TransactionType.WITHDRAW);
+					try{
+						displayTransactionResult(serverBank.withdraw(withdrawAccount, amount),
+								TransactionType.WITHDRAW);
+					}catch (NoAccountException e){
+						System.out.println(e);
+					}
 					break;
 				case 5:					// Display Accounts
 					int selection = getDisplaySelection();
@@ -571,8 +630,7 @@ public class RemoteBankClient {
 					}else if (selection == 2){
 						displayAccountsByBalance(serverBank);
 					}else if (selection == 3){
-						//displayAllAccounts(seneca);
-						System.out.println("Display all accounts current disabled.\n");
+						displayAllAccounts(serverBank);
 					}
 					break;
 				case 6:					//Display a tax statement
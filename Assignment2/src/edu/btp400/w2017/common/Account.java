@@ -1,6 +1,7 @@
 /**
  * This class consists of the fields of an account, which includes
  * fullName, firstName, lastName, accountNumber, and the account's currentBalance.
+ * The balance is kept as a whole number of cents (see Money).
  *
  * This class has built in methods to retrieve and set the information as
  * noted above. User can only provide full names, not first name or last
@@ -10,34 +11,65 @@
  * to standard will display as an empty string. There are also two overloaded
  * methods implemented in this class: 1) equals(), which is capable of checking
  * if an object passed by the user as argument is the same as the account being
- * referenced. 2) hashCode(), which generates a custom hashCode for each account
- * This method can be used later on to verify if two accounts contain the same
- * information.
+ * referenced. 2) hashCode(), which generates a hashCode for each account.
+ * Both methods work on the account's identity key, which is made of the account
+ * type and the account number. They do not depend on the balance or any other
+ * state that changes over the life of the account, and the hash code is only
+ * computed once.
+ *
+ * An account may be updated by several threads at once once deposits and
+ * withdrawals arrive as remote calls. Every change to an account is made while
+ * holding the account's own lock, so updates to different accounts never wait
+ * on each other. The balance is published in a volatile field after each
+ * change, together with a version number that goes up with every change, so
+ * the balance can be read at any time without taking the lock.
+ *
+ * Accounts are sent between the bank server and its clients in a compact,
+ * versioned binary format (see writeExternal() and readExternal()). Each
+ * account type writes only the fields needed to rebuild it. Values derived
+ * from those fields are recomputed on arrival rather than sent. Accounts
+ * written in an older version of the format can still be read; fields the
+ * older version did not have take their default values.
  *
  * @author Alex Wang
- * @version 3.3
+ * @version 3.9
  */
 package edu.btp400.w2017.common;
-import java.text.*;
-import java.util.*;
-import java.io.Serializable;
-import java.math.BigDecimal;
-
-public class Account implements Serializable{
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class Account implements Externalizable{
 
   /**
 	 *
 	 */
 	private static final long serialVersionUID = -1113605699626469692L;
 
-protected NumberFormat currencyFormat = NumberFormat.getCurrencyInstance(Locale.CANADA);
+  public static final String ACCOUNT_TYPE = "ACC";
+  private static final char IDENTITY_KEY_SEPARATOR = ':';
+  private static final byte WIRE_FORMAT_VERSION = 3;
+  private static final byte OLDEST_WIRE_FORMAT_VERSION = 1;
+
   protected static final double SMALLEST_DOUBLE_VALUE = -1 * Double.MAX_VALUE;
   protected static final double LARGEST_DOUBLE_VALUE = Double.MAX_VALUE;
   private String fullName;
   private String firstName;
   private String lastName;
   private String accountNumber;
-  private BigDecimal currentBalance;
+  private volatile long currentBalanceInCents;   // As stored, before adjustment by the account type
+  private volatile long reportedBalanceInCents;  // As computed by computeBalanceInCents()
+  private volatile long version;
+  private transient String identityKey;
+  private transient byte wireFormatVersionRead;
+  private final transient ReentrantLock lock = new ReentrantLock();
 
   /**
    * An empty constructor that generates an empty account
@@ -95,12 +127,93 @@ protected NumberFormat currencyFormat = NumberFormat.getCurrencyInstance(Locale.
    */
   public String getAccountNumber() { return accountNumber; }
 
+  /**
+   * Retrieves the account type. Each account type overrides this method to
+   * return its own ACCOUNT_TYPE.
+   *
+   * @return    The account type
+   */
+  public String getAccountType() { return ACCOUNT_TYPE; }
+
+  /**
+   * Retrieves the identity key of the account, made of the account type and
+   * the account number. Two accounts with the same identity key are the same
+   * account.
+   *
+   * @return    The identity key of the account
+   */
+  public String getIdentityKey() {
+    String key = this.identityKey;
+    if (key == null) {
+      key = getAccountType() + IDENTITY_KEY_SEPARATOR + getAccountNumber();
+      this.identityKey = key;
+    }
+    return key;
+  }
+
   /**
    * Retrieves the current balance in the account.
    *
    * @return    the current balance of the account
    */
-  public double getBalance() { return this.currentBalance.doubleValue(); }
+  public double getBalance() { return Money.toDollars(getBalanceInCents()); }
+
+  /**
+   * Retrieves the balance of the account in cents, as worked out by
+   * computeBalanceInCents() after the last change to the account. It is read
+   * without locking the account. getBalance() always reports the same amount
+   * in dollars.
+   *
+   * @return    the balance of the account in cents
+   */
+  public long getBalanceInCents() { return this.reportedBalanceInCents; }
+
+  /**
+   * Works out the balance of the account in cents. Account types that derive
+   * their balance from the stored balance override this method.
+   *
+   * @return    the balance of the account in cents
+   */
+  protected long computeBalanceInCents() { return this.currentBalanceInCents; }
+
+  /**
+   * Retrieves the version of the account. The version goes up every time the
+   * balance, or a value derived from it, changes, so a value worked out from
+   * the account can be reused for as long as the version stays the same.
+   *
+   * @return    the version of the account
+   */
+  public long getVersion() { return this.version; }
+
+  /**
+   * Publishes the balance and a new version after the account has changed.
+   * Account types call this method after changing a value the balance is
+   * derived from.
+   */
+  protected final void refreshBalance() {
+    this.reportedBalanceInCents = computeBalanceInCents();
+    this.version++;
+  }
+
+  /**
+   * Takes the account's lock. Every change to the account, and every read
+   * that needs several of its fields to agree, is made while holding it.
+   * The lock is reentrant.
+   */
+  void lock() { this.lock.lock(); }
+
+  /**
+   * Releases the account's lock.
+   */
+  void unlock() { this.lock.unlock(); }
+
+  /**
+   * Retrieves the balance stored in the account in cents, before any
+   * adjustment made by the account type.
+   *
+   * @return    the stored balance of the account in cents
+   */
+  protected long getCurrentBalanceInCents() { return this.currentBalanceInCents; }
 
 /**
  * Stores an account holder's name into the account.
@@ -245,6 +358,7 @@ public String extractFirstName() {
    */
   public void setAccountNumber(String accountNumber) {
     this.accountNumber = accountNumber;
+    this.identityKey = null;
   }
 
   /**
@@ -254,12 +368,52 @@ public String extractFirstName() {
    */
   protected void setCurrentBalance(double balance) {
     if (balance >= 0 && balance < Double.MAX_VALUE) {
-    		this.currentBalance = BigDecimal.valueOf(balance);
+    		setCurrentBalanceInCents(Money.toCents(balance));
     	} else {
-    		this.currentBalance = BigDecimal.valueOf(0);
+    		setCurrentBalanceInCents(0);
     	}
   }
 
+  /**
+   * Modifies the account's current balance in cents. A negative balance is
+   * replaced by 0.
+   *
+   * @param balance         The target balance in the account, in cents
+   */
+  protected void setCurrentBalanceInCents(long balance) {
+    this.currentBalanceInCents = (balance >= 0) ? balance : 0;
+    balanceChanged();
+    refreshBalance();
+  }
+
+  /**
+   * Called every time the account's current balance is modified. Account
+   * types that cache values derived from the balance override this method to
+   * bring them up to date. The base account has nothing to update.
+   * <p>
+   * This method is also called while the account is being constructed, before
+   * the fields of the subclass are set.
+   */
+  protected void balanceChanged() {
+  }
+
+  /**
+   * Adds an amount in cents to the account's current balance. The amount may
+   * be negative; callers are responsible for not taking the balance below 0,
+   * and must hold the account's lock.
+   *
+   * @param amount          The amount to add, in cents
+   * @return                True if the balance was updated, false if the new
+   *                        balance would not fit in a long
+   */
+  protected boolean addToCurrentBalance(long amount) {
+    if (amount > 0 && amount > Long.MAX_VALUE - this.currentBalanceInCents) {
+      return false;
+    }
+    setCurrentBalanceInCents(this.currentBalanceInCents + amount);
+    return true;
+  }
+
   /**
    * Prints account details.
    * <p>
@@ -271,7 +425,7 @@ public String extractFirstName() {
    */
   @Override
 public String toString (){
-    String formattedBalance = currencyFormat.format(this.currentBalance);
+    String formattedBalance = Money.format(this.currentBalanceInCents);
 
     StringBuffer details = new StringBuffer("");
     details.append("Name: " + getFullName() + "\n");
@@ -282,12 +436,11 @@ public String toString (){
   }
 
   /**
-   * Compares each field of two objects to determine if the information they
-   * hold are identical.
+   * Determines if the incoming object is the same account as this account.
    * <p>
-   * If null is passed into the method as argument, the result will be false.
-   * This allows reliable checking of two objects whether or not it is
-   * instantiated.
+   * Two accounts are the same account when they have the same identity key,
+   * that is the same account type and account number. If null is passed
+   * into the method as argument, the result will be false.
    *
    * @param foreignObject    The incoming object that is to be compared
    * @return      true if the two objects are equal and false if it is not
@@ -303,9 +456,7 @@ public boolean equals (Object foreignObject) {
 
       Account userAccount = (Account) foreignObject;
 
-      if ((this.getFullName().equals(userAccount.getFullName())) &&
-          (this.accountNumber == userAccount.accountNumber) &&
-          (this.currentBalance.equals(userAccount.currentBalance))) {
+      if (this.getIdentityKey().equals(userAccount.getIdentityKey())) {
 
           result = true;
       }
@@ -314,46 +465,177 @@ public boolean equals (Object foreignObject) {
   }
 
   /**
-   * Generates a 32 bit hash code for each account.
+   * Generates a 32 bit hash code for each account from its identity key. The
+   * key's hash code is computed once and cached by the key itself.
    *
-   * @return  The account's unique 32-bit hash code
+   * @return  The account's 32-bit hash code
    * @override
    */
   @Override
 public int hashCode() {
-    int hash = 47;
-    hash *= 3 + firstName.hashCode();
-    hash *= 5 + lastName.hashCode();
-    hash /= 2 + accountNumber.hashCode();
-    hash *= 9 + currentBalance.doubleValue();
-    return hash;
+    return getIdentityKey().hashCode();
+  }
+
+  /**
+   * Writes the account in the compact wire format.
+   * <p>
+   * The format starts with a version byte, followed by the full name, the
+   * account number and the current balance in cents. Account types append
+   * their own fields after these.
+   *
+   * @param out             The stream to write the account to
+   * @throws IOException    If the account could not be written
+   */
+  @Override
+  public void writeExternal(ObjectOutput out) throws IOException {
+    lock();
+    try {
+      out.writeByte(WIRE_FORMAT_VERSION);
+      writeNullableString(out, this.fullName);
+      writeNullableString(out, this.accountNumber);
+      out.writeLong(this.currentBalanceInCents);
+    } finally {
+      unlock();
+    }
+  }
+
+  /**
+   * Reads the account from the compact wire format. The first name and last
+   * name are extracted from the full name instead of being read.
+   *
+   * @param in              The stream to read the account from
+   * @throws IOException    If the account could not be read or was written
+   *                        in an unknown version of the format
+   */
+  @Override
+  public void readExternal(ObjectInput in) throws IOException {
+    byte version = in.readByte();
+    if (version < OLDEST_WIRE_FORMAT_VERSION || version > WIRE_FORMAT_VERSION) {
+      throw new InvalidObjectException("Unknown account wire format version " + version);
+    }
+    this.wireFormatVersionRead = version;
+    this.fullName = readNullableString(in);
+    setFirstNameAndLastName();
+    this.accountNumber = readNullableString(in);
+    this.identityKey = null;
+    this.currentBalanceInCents = in.readLong();
+    refreshBalance();
+  }
+
+  /**
+   * Returns the version of the wire format the account was last read in, so
+   * that subclasses can tell which of their fields the stream holds. Only
+   * valid while a subclass is reading the account, after the superclass
+   * has read its part.
+   * <p>
+   * Version 1 is the original format. Version 2 adds the number of months
+   * of interest a GIC has accrued. Version 3 adds the interest a savings
+   * account has had posted this year and its months accrued.
+   *
+   * @return                The version of the wire format read
+   */
+  protected int getWireFormatVersionRead() { return this.wireFormatVersionRead; }
+
+  /**
+   * Writes a string that may be null.
+   *
+   * @param out             The stream to write to
+   * @param value           The string to write
+   * @throws IOException    If the string could not be written
+   */
+  protected static void writeNullableString(ObjectOutput out, String value)
+      throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeUTF(value);
+    }
+  }
+
+  /**
+   * Reads a string written by writeNullableString().
+   *
+   * @param in              The stream to read from
+   * @return                The string, or null
+   * @throws IOException    If the string could not be read
+   */
+  protected static String readNullableString(ObjectInput in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  /**
+   * Captures the state of the account in the compact wire format, so that
+   * it can later be put back with restoreState(). The caller must hold the
+   * account's lock until the state is restored or no longer needed.
+   *
+   * @return                The state of the account
+   */
+  byte[] captureState() {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      ObjectOutputStream out = new ObjectOutputStream(bytes);
+      writeExternal(out);
+      out.close();
+      return bytes.toByteArray();
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not capture the state of account "
+          + getAccountNumber(), e);
+    }
   }
 
   /**
-   * Checks to see if balance is sufficient for withdrawal. If yes, update
-   * account balance.
+   * Puts back a state captured by captureState(), undoing every change made
+   * to the account since. The caller must hold the account's lock.
+   *
+   * @param state           The state captured earlier
+   */
+  void restoreState(byte[] state) {
+    try {
+      readExternal(new ObjectInputStream(new ByteArrayInputStream(state)));
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not restore the state of account "
+          + getAccountNumber(), e);
+    }
+  }
+
+  /**
+   * Checks to see if amount is at least one cent once rounded and balance is
+   * sufficient for withdrawal. If yes, update account balance.
    *
    * @param  amount    The amount to withdraw
    * @return boolean   True if withdraw operation is successful, false otherwise
    */
    public boolean withdraw(double amount){
-    if (amount > 0.0 && amount <= this.currentBalance.doubleValue()){
-      setCurrentBalance(this.currentBalance.doubleValue() - amount);
-      return true;
-    }
-    else {
-      return false;
+    long amountInCents = Money.toCents(amount);
+    lock();
+    try {
+      if (amountInCents > 0 && amountInCents <= this.currentBalanceInCents){
+        return addToCurrentBalance(-amountInCents);
+      }
+      else {
+        return false;
+      }
+    } finally {
+      unlock();
     }
    }
 
    /**
-    * Checks to see if amount is positive. If yes, update account balance.
+    * Checks to see if amount is at least one cent once rounded. If yes,
+    * update account balance.
     *
     * @param  amount    The amount to deposit
+    * @return boolean   True if deposit operation is successful, false otherwise
     */
-    public void deposit(double amount){
-     if (amount > 0 && amount < LARGEST_DOUBLE_VALUE){
-       setCurrentBalance(this.currentBalance.doubleValue() + amount);
+    public boolean deposit(double amount){
+     long amountInCents = Money.toCents(amount);
+     if (amountInCents > 0 && amount < LARGEST_DOUBLE_VALUE){
+       lock();
+       try {
+         return addToCurrentBalance(amountInCents);
+       } finally {
+         unlock();
+       }
      }
+     return false;
     }
 }
@@ -0,0 +1,57 @@
+/**
+ * This class holds one page of accounts returned by a paginated search,
+ * together with the token that fetches the next page.
+ *
+ * Pages are sorted by account number. The token is opaque to the client: it
+ * is passed back unchanged to ask for the page that follows, and is null on
+ * the last page. A page is found by seeking straight to the token in a sorted
+ * index, so fetching any page costs time in proportion to the page, not to
+ * the pages before it. Accounts opened or closed between two requests are
+ * seen or missed according to where they fall relative to the token.
+ *
+ * @author Alex Wang
+ * @version 1.0
+ */
+package edu.btp400.w2017.common;
+import java.io.Serializable;
+
+public final class AccountPage implements Serializable {
+
+  private static final long serialVersionUID = 2807418864553349012L;
+
+  private final Account[] accounts;
+  private final String nextPageToken;
+
+  /**
+   * Creates a page of accounts.
+   *
+   * @param accounts          The accounts on the page
+   * @param nextPageToken     The token of the next page, or null if this is
+   *                          the last page
+   */
+  public AccountPage(Account[] accounts, String nextPageToken) {
+    this.accounts = accounts;
+    this.nextPageToken = nextPageToken;
+  }
+
+  /**
+   * Retrieves the accounts on the page.
+   *
+   * @return    The accounts on the page, sorted by account number
+   */
+  public Account[] getAccounts() { return accounts; }
+
+  /**
+   * Retrieves the token to pass back to fetch the next page.
+   *
+   * @return    The token of the next page, or null if this is the last page
+   */
+  public String getNextPageToken() { return nextPageToken; }
+
+  /**
+   * Reports if there is a page after this one.
+   *
+   * @return    True if there are more accounts to fetch
+   */
+  public boolean hasNextPage() { return nextPageToken != null; }
+}
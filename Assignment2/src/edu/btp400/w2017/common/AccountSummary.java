@@ -0,0 +1,201 @@
+/**
+ * This class holds a compact summary of an account: the account holder's
+ * name, the account number, the account type and the balance.
+ *
+ * Listing screens only show these few values, so summary searches send
+ * summaries instead of whole accounts with their transaction records and
+ * rates. A caller may also ask for only some of the fields. Fields that were
+ * not asked for are left out of the summary and are not sent at all: the
+ * compact wire format (see writeExternal()) starts with a bit mask of the
+ * fields present, followed by their values.
+ *
+ * @author Alex Wang
+ * @version 1.0
+ */
+package edu.btp400.w2017.common;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.EnumSet;
+import java.util.Set;
+
+public final class AccountSummary implements Externalizable {
+
+  private static final long serialVersionUID = 5309716422859710364L;
+
+  private static final byte WIRE_FORMAT_VERSION = 1;
+
+  /**
+   * The values of an account a summary can hold.
+   */
+  public enum Field {
+    NAME, NUMBER, TYPE, BALANCE
+  }
+
+  private EnumSet<Field> fields;
+  private String fullName;
+  private String accountNumber;
+  private String accountType;
+  private long balance;                 // In cents
+
+  /**
+   * Creates an empty summary. Used when a summary is read from a stream.
+   */
+  public AccountSummary() {
+    fields = EnumSet.noneOf(Field.class);
+  }
+
+  /**
+   * Creates a summary of an account holding the fields given.
+   *
+   * @param account           The account to summarize
+   * @param fields            The fields to keep, or null to keep every field
+   */
+  public AccountSummary(Account account, Set<Field> fields) {
+    this.fields = (fields == null || fields.isEmpty())
+        ? EnumSet.allOf(Field.class) : EnumSet.copyOf(fields);
+    if (this.fields.contains(Field.NAME)) {
+      this.fullName = account.getFullName();
+    }
+    if (this.fields.contains(Field.NUMBER)) {
+      this.accountNumber = account.getAccountNumber();
+    }
+    if (this.fields.contains(Field.TYPE)) {
+      this.accountType = account.getAccountType();
+    }
+    if (this.fields.contains(Field.BALANCE)) {
+      this.balance = account.getBalanceInCents();
+    }
+  }
+
+  /**
+   * Reports if the summary holds a field.
+   *
+   * @param field             The field to check
+   * @return                  True if the field was asked for
+   */
+  public boolean hasField(Field field) { return fields.contains(field); }
+
+  /**
+   * Retrieves the account holder's full name.
+   *
+   * @return    The full name, or null if the field was not asked for
+   */
+  public String getFullName() { return fullName; }
+
+  /**
+   * Retrieves the account number.
+   *
+   * @return    The account number, or null if the field was not asked for
+   */
+  public String getAccountNumber() { return accountNumber; }
+
+  /**
+   * Retrieves the account type.
+   *
+   * @return    The account type, or null if the field was not asked for
+   */
+  public String getAccountType() { return accountType; }
+
+  /**
+   * Retrieves the balance of the account.
+   *
+   * @return    The balance, or 0 if the field was not asked for
+   */
+  public double getBalance() { return Money.toDollars(balance); }
+
+  /**
+   * Retrieves the balance of the account in cents.
+   *
+   * @return    The balance in cents, or 0 if the field was not asked for
+   */
+  public long getBalanceInCents() { return balance; }
+
+  /**
+   * Returns the fields held by the summary, one per line.
+   *
+   * @return    The summary in a formatted string
+   */
+  @Override
+  public String toString() {
+    StringBuffer output = new StringBuffer("");
+    if (fields.contains(Field.NAME)) {
+      output.append("Name: " + fullName + "\n");
+    }
+    if (fields.contains(Field.NUMBER)) {
+      output.append("Number: " + accountNumber + "\n");
+    }
+    if (fields.contains(Field.TYPE)) {
+      output.append("Type: " + accountType + "\n");
+    }
+    if (fields.contains(Field.BALANCE)) {
+      output.append("Current Balance: " + Money.format(balance) + "\n");
+    }
+    return output.toString();
+  }
+
+  /**
+   * Writes the summary in its compact wire format: the format version, a
+   * bit mask of the fields held, then the value of each of them.
+   *
+   * @param out             The stream to write the summary to
+   * @throws IOException    If the summary could not be written
+   */
+  @Override
+  public void writeExternal(ObjectOutput out) throws IOException {
+    out.writeByte(WIRE_FORMAT_VERSION);
+    int mask = 0;
+    for (Field field : fields) {
+      mask |= 1 << field.ordinal();
+    }
+    out.writeByte(mask);
+    if (fields.contains(Field.NAME)) {
+      Account.writeNullableString(out, fullName);
+    }
+    if (fields.contains(Field.NUMBER)) {
+      Account.writeNullableString(out, accountNumber);
+    }
+    if (fields.contains(Field.TYPE)) {
+      Account.writeNullableString(out, accountType);
+    }
+    if (fields.contains(Field.BALANCE)) {
+      out.writeLong(balance);
+    }
+  }
+
+  /**
+   * Reads the summary from its compact wire format.
+   *
+   * @param in              The stream to read the summary from
+   * @throws IOException    If the summary could not be read or was written
+   *                        in an unknown version of the format
+   */
+  @Override
+  public void readExternal(ObjectInput in) throws IOException {
+    byte version = in.readByte();
+    if (version != WIRE_FORMAT_VERSION) {
+      throw new InvalidObjectException("Unknown account summary format version " + version);
+    }
+    int mask = in.readByte();
+    fields = EnumSet.noneOf(Field.class);
+    for (Field field : Field.values()) {
+      if ((mask & (1 << field.ordinal())) != 0) {
+        fields.add(field);
+      }
+    }
+    if (fields.contains(Field.NAME)) {
+      fullName = Account.readNullableString(in);
+    }
+    if (fields.contains(Field.NUMBER)) {
+      accountNumber = Account.readNullableString(in);
+    }
+    if (fields.contains(Field.TYPE)) {
+      accountType = Account.readNullableString(in);
+    }
+    if (fields.contains(Field.BALANCE)) {
+      balance = in.readLong();
+    }
+  }
+}
@@ -13,18 +13,68 @@
  * search for accounts that pertain to a specified balance. 4) Remove() which
  * will remove the account with the specified account number.
  *
+ * Accounts are indexed by account number, balance and holder's name (see
+ * BankSnapshot). A bank may be used by many threads at once: searches read
+ * a published snapshot without locking, and changes are made while holding
+ * the locks of the accounts they touch. A bank may be kept in a
+ * WriteAheadLog, which records every change before the bank acknowledges it.
+ *
  * @author Alex Wang
- * @version 2.2
+ * @version 4.2
  */
 package edu.btp400.w2017.common;
-import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class Bank {
     private String name;
-    private ArrayList<Account> accounts;
+
+    /**
+     * The accounts and their indexes as last published. A snapshot is never
+     * changed once published, so a search reads this field once and sees
+     * one point-in-time view of the bank even while accounts are added or
+     * removed. Each new version shares all but the changed entries of every
+     * index with the one before, so a change costs time in proportion to the
+     * logarithm of the number of accounts.
+     */
+    private volatile BankSnapshot snapshot;
+
+    /**
+     * Changes waiting to be published. The writer holding writeLock applies
+     * every change queued so far to one new snapshot, so a burst of
+     * concurrent writes publishes one version instead of one per write.
+     */
+    private final ConcurrentLinkedQueue<PendingChange> pendingChanges =
+        new ConcurrentLinkedQueue<PendingChange>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    /**
+     * The log every change is recorded in, or null if the bank is not
+     * logged. The new state of an account is logged while its lock is held,
+     * and an account is only removed under its lock and while it is still in
+     * the bank, so the states of an account are in the log in the order they
+     * were made and always before its removal. They are never replayed onto
+     * a later account that reuses the account number.
+     */
+    private final WriteAheadLog log;
+
+    /**
+     * The first failure to write the log, or null. Once set, the bank no
+     * longer matches its log and refuses every change.
+     */
+    private volatile IllegalStateException logFailure;
     private static final String DEFAULT_BANK_NAME = "Seneca@York";
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 1000;
 
     /**
      * An empty constructor that sets a bank to safe empty state
@@ -40,7 +90,25 @@ public class Bank {
      */
     public Bank(String bankName) {
       setBankName (bankName);
-      accounts = new ArrayList<Account>();
+      snapshot = new BankSnapshot();
+      log = null;
+    }
+
+    /**
+     * A constructor that takes a bank name and a write-ahead log, and
+     * constructs a bank object holding the accounts recorded in the log.
+     * Every later change to the bank is recorded in the log.
+     *
+     * @param bankName          The name of the bank
+     * @param log               The log to replay and record changes in
+     * @throws IOException      If the log could not be read
+     */
+    public Bank(String bankName, WriteAheadLog log) throws IOException {
+      setBankName (bankName);
+      BankSnapshot next = new BankSnapshot(new BankSnapshot());
+      log.replay(next);
+      snapshot = next;
+      this.log = log;
     }
 
     /**
@@ -66,87 +134,749 @@ public class Bank {
      * Returns an array of Accounts opened in Account[] format.
      * <p>
      * This method will return an array of accounts opened. If there are no
-     * accounts opened, it will return an array of zero length.
+     * accounts opened, it will return an array of zero length. The accounts
+     * are listed in the order they were opened.
      *
      * @return                  An array of accounts opened
      */
     public Account[] getAllAccounts() {
-      Account[] result = new Account[accounts.size()];
-      return accounts.toArray(result);
+      BankSnapshot current = snapshot;
+      return current.accountsByOpening.values().toArray(new Account[current.accountsByOpening.size()]);
+    }
+
+    /**
+     * Returns one page of the accounts opened, sorted by account number.
+     * <p>
+     * The first page is fetched with a null page token. Each page carries the
+     * token of the page that follows it, or null if it is the last one. The
+     * page is read from the sorted account number index starting right after
+     * the token, so any page costs time in proportion to its size. If there
+     * are no accounts opened, the page is empty.
+     *
+     * @param limit             The maximum number of accounts on the page
+     * @param pageToken         The token of the page to fetch, or null for
+     *                          the first page
+     * @return                  The page of accounts
+     */
+    public AccountPage getAccounts(int limit, String pageToken) {
+      return pageOf(snapshot.accountsByNumber, pageToken, limit, null, null);
+    }
+
+    /**
+     * Returns an iterator over the accounts opened, sorted by account number.
+     * <p>
+     * The iterator walks the sorted account number index of the current
+     * snapshot one account at a time. It sees the bank as it was when the
+     * iterator was created and cannot be used to remove accounts.
+     *
+     * @return                  An iterator over the accounts opened
+     */
+    public Iterator<Account> iterateAccounts() {
+      return Collections.unmodifiableCollection(snapshot.accountsByNumber.values()).iterator();
     }
 
     /**
      * Adds an account to the bank.
      * <p>
      * This method will return true if the account is added successfully.
-     * Otherwise, it will return false. It will also check the memory to see
-     * if the new account information already exist on the system.
+     * Otherwise, it will return false. An account is only added if its
+     * account number is not already in use. The check is a single lookup in
+     * the account number index, so no existing account is compared against
+     * the new one. An account without an account number is rejected.
      *
      * @param newAccount      The account object containing new information.
      */
     public boolean addAccount(Account newAccount) {
       boolean result = false;
-      if (newAccount != null && !existAccount(newAccount)){
-        result = accounts.add(newAccount); // Returns true if successful
+      if (newAccount != null && newAccount.getAccountNumber() != null
+          && !snapshot.accountsByNumber.containsKey(newAccount.getAccountNumber())){
+        AccountAddition addition = new AccountAddition(newAccount);
+        commit(addition);
+        result = addition.added;
       }
       return result;
     }
 
+    /**
+     * Removes an account based on the specified accountNumber
+     * <p>
+     * This method will look up the account by the account number provided.
+     * If the account is found, it will remove the account from the accounts
+     * index, and return the deleted account to the user. The account's lock
+     * is held while it is removed, so a deposit or withdrawal in progress on
+     * the account finishes first.
+     *
+     * @param accountNumber    The account number to be removed
+     * @return                 The account to be removed or null if not found.
+     */
+    public Account removeAccount(String accountNumber) {
+      Account account = lockAccount(accountNumber);
+      if (account == null) {
+        return null;
+      }
+      AccountRemoval removal = new AccountRemoval(account);
+      try {
+        publish(removal);
+      } finally {
+        account.unlock();
+      }
+      awaitLogged(removal.logged);
+      return removal.removed;
+    }
 
     /**
-     * Checks to see if the account already exits in memory
+     * Adds a list of accounts to the bank.
+     * <p>
+     * Each account is added under the same rules as addAccount(Account). All
+     * of the accounts are added in a single change to the bank, so the batch
+     * publishes one version of the bank however many accounts it holds, and a
+     * search sees either none or all of the accounts that were added.
      *
-     * @param newAccount      The account object that is being added
-     * @return                True if account already exists. Otherwise, false.
+     * @param newAccounts      The accounts to add
+     * @return                 For each account, in order, true if it was added,
+     *                         or an empty array if no list is given
      */
-    private boolean existAccount (Account newAccount) {
-      for (Account account : accounts) {
-        if (account!= null && account.equals(newAccount)) {
-          return true;
+    public boolean[] addAccounts(List<Account> newAccounts) {
+      if (newAccounts == null) {
+        return new boolean[0];
+      }
+      AccountAdditions additions = new AccountAdditions(newAccounts);
+      if (!newAccounts.isEmpty()) {
+        commit(additions);
+      }
+      return additions.added;
+    }
+
+    /**
+     * Removes the accounts with the specified account numbers.
+     * <p>
+     * All of the accounts are removed in a single change to the bank, so the
+     * batch publishes one version of the bank however many accounts it holds.
+     * The locks of the accounts are taken first, in order of account number,
+     * and held while they are removed. An account removed by someone else
+     * meanwhile is reported as not found.
+     *
+     * @param accountNumbers   The account numbers to be removed
+     * @return                 For each account number, in order, the account
+     *                         removed or null if not found
+     */
+    public Account[] removeAccounts(List<String> accountNumbers) {
+      if (accountNumbers == null) {
+        return new Account[0];
+      }
+      checkLogFailure();
+      BankSnapshot current = snapshot;
+      Account[] accounts = new Account[accountNumbers.size()];
+      TreeMap<String, Account> toLock = new TreeMap<String, Account>();
+      for (int i = 0; i < accounts.length; i++) {
+        String accountNumber = accountNumbers.get(i);
+        if (accountNumber != null) {
+          accounts[i] = current.accountsByNumber.get(accountNumber);
+          if (accounts[i] != null) {
+            toLock.put(accountNumber, accounts[i]);
+          }
+        }
+      }
+      Account[] locked = toLock.values().toArray(new Account[toLock.size()]);
+      AccountRemovals removals = new AccountRemovals(accounts);
+      int held = 0;
+      try {
+        for (; held < locked.length; held++) {
+          locked[held].lock();
+        }
+        if (locked.length > 0) {
+          publish(removals);
+        }
+      } finally {
+        while (held > 0) {
+          locked[--held].unlock();
         }
       }
-      return false;
+      awaitLogged(removals.logged);
+      return removals.removed;
     }
 
     /**
-     * Removes an account based on the specified accountNumber
+     * Returns the account with the specified account number.
      * <p>
-     * This method will search for the account by the account number provided.
-     * If the account is found, it will remove the account from accounts array
-     * list, and return the deleted account to the user.
+     * This method looks the account up in the account number index instead of
+     * walking every account in the bank.
      *
-     * @param accountNumber    The account number to be removed
-     * @return                 The account to be removed or null if not found.
+     * @param accountNumber    The account number being searched
+     * @return                 The account or null if not found.
      */
-    public Account removeAccount(String accountNumber) {
+    public Account getAccount(String accountNumber) {
+      return (accountNumber != null) ? snapshot.accountsByNumber.get(accountNumber) : null;
+    }
+
+    /**
+     * Deposits an amount into the account with the specified account number.
+     * <p>
+     * The deposit is made by the account itself, so each account type applies
+     * its own rules, such as the transaction limit and service charges of a
+     * chequing account. The account is then moved in the balance index to its
+     * new balance.
+     * <p>
+     * The deposit is made while holding the account's lock, once the account
+     * is found to be still in the bank, so a deposit racing a removal either
+     * lands before the removal or fails with NoAccountException. If the bank
+     * is logged, the new state is logged before the lock is released, and the
+     * caller waits for it to be durable after releasing the lock, so callers
+     * waiting together share one disk flush under group commit. A deposit
+     * that cannot be logged is taken back and fails with
+     * IllegalStateException.
+     *
+     * @param accountNumber    The account number of the account
+     * @param amount           The amount to deposit
+     * @return                 The outcome of the deposit and the new balance
+     * @throws                 NoAccountException if no account is found
+     */
+    public TransactionResult deposit(String accountNumber, double amount)
+        throws NoAccountException {
+      Account account = findAndLockAccount(accountNumber);
+      boolean successful;
+      long previousBalance;
+      long newBalance;
+      long logged = 0;
+
+      try {
+        previousBalance = account.getBalanceInCents();
+        byte[][] savedStates = captureStates(account);
+        successful = account.deposit(amount);
+        newBalance = account.getBalanceInCents();
+        if (successful) {
+          logged = logChanges(savedStates, account);
+        }
+      } finally {
+        account.unlock();
+      }
+      if (newBalance != previousBalance) {
+        commit(new BalanceChange(account, previousBalance));
+      }
+      awaitLogged(logged);
+      return new TransactionResult(accountNumber, successful, newBalance);
+    }
+
+    /**
+     * Withdraws an amount from the account with the specified account number.
+     * <p>
+     * The withdrawal is made by the account itself, so each account type
+     * applies its own rules. A GIC refuses every withdrawal. The account is
+     * then moved in the balance index to its new balance. It is locked and
+     * logged as a deposit is.
+     *
+     * @param accountNumber    The account number of the account
+     * @param amount           The amount to withdraw
+     * @return                 The outcome of the withdrawal and the new balance
+     * @throws                 NoAccountException if no account is found
+     */
+    public TransactionResult withdraw(String accountNumber, double amount)
+        throws NoAccountException {
+      Account account = findAndLockAccount(accountNumber);
+      boolean successful;
+      long previousBalance;
+      long newBalance;
+      long logged = 0;
+
+      try {
+        previousBalance = account.getBalanceInCents();
+        byte[][] savedStates = captureStates(account);
+        successful = account.withdraw(amount);
+        newBalance = account.getBalanceInCents();
+        if (successful) {
+          logged = logChanges(savedStates, account);
+        }
+      } finally {
+        account.unlock();
+      }
+      if (newBalance != previousBalance) {
+        commit(new BalanceChange(account, previousBalance));
+      }
+      awaitLogged(logged);
+      return new TransactionResult(accountNumber, successful, newBalance);
+    }
+
+    /**
+     * Moves an amount from one account to another.
+     * <p>
+     * The amount is withdrawn from the first account and deposited into the
+     * second, each under the rules of its own account type: a chequing account
+     * may have run out of transactions and a GIC refuses every withdrawal. If
+     * either step is refused, the first account is put back as it was and
+     * neither balance changes. Both accounts are then moved to their new
+     * balances in the balance index in a single change to the bank.
+     * <p>
+     * The two account locks are always taken in order of account number, so
+     * transfers running the opposite way between the same accounts never
+     * wait on each other in a cycle, and transfers between other accounts do
+     * not wait at all. Once both locks are held, both accounts are checked to
+     * still be in the bank. An account is only removed while its lock is
+     * held, so neither can leave the bank until the transfer is done, and a
+     * transfer that lost the race to a removal looks the accounts up again
+     * and fails with NoAccountException instead of moving money into or out
+     * of an account that is gone.
+     *
+     * @param fromAccountNumber The account number of the account to withdraw from
+     * @param toAccountNumber   The account number of the account to deposit into
+     * @param amount            The amount to move
+     * @return                  The outcome and new balance of the first account,
+     *                          then of the second account
+     * @throws                  NoAccountException if either account is not found
+     */
+    public TransactionResult[] transfer(String fromAccountNumber, String toAccountNumber,
+        double amount) throws NoAccountException {
+      checkLogFailure();
+      TransactionResult[] results = null;
+      long logged = 0;
+      while (results == null) {
+        Account from = findAccount(fromAccountNumber);
+        Account to = findAccount(toAccountNumber);
+        if (from == to) {
+          TransactionResult declined =
+              new TransactionResult(fromAccountNumber, false, from.getBalanceInCents());
+          return new TransactionResult[] { declined, declined };
+        }
+        Account first = (fromAccountNumber.compareTo(toAccountNumber) < 0) ? from : to;
+        Account second = (first == from) ? to : from;
+
+        first.lock();
+        try {
+          second.lock();
+          try {
+            BankSnapshot current = snapshot;
+            if (current.accountsByNumber.get(fromAccountNumber) == from
+                && current.accountsByNumber.get(toAccountNumber) == to) {
+              long fromBalance = from.getBalanceInCents();
+              long toBalance = to.getBalanceInCents();
+              byte[] fromState = from.captureState();
+              byte[] toState = (log != null) ? to.captureState() : null;
+              boolean successful = false;
+
+              if (from.withdraw(amount)) {
+                if (to.deposit(amount)) {
+                  successful = true;
+                } else {
+                  from.restoreState(fromState);
+                }
+              }
+              if (successful) {
+                logged = logChanges(new byte[][] { fromState, toState }, from, to);
+                publish(new BalanceChange(new Account[] { from, to },
+                                          new long[] { fromBalance, toBalance }));
+              }
+              results = new TransactionResult[] {
+                  new TransactionResult(fromAccountNumber, successful, from.getBalanceInCents()),
+                  new TransactionResult(toAccountNumber, successful, to.getBalanceInCents()) };
+            }
+          } finally {
+            second.unlock();
+          }
+        } finally {
+          first.unlock();
+        }
+      }
+      awaitLogged(logged);
+      return results;
+    }
+
+    /**
+     * Applies a list of operations to the bank as one transaction.
+     * <p>
+     * The operations are applied in order. If any of them fails, for example
+     * a withdrawal larger than the balance or a deposit into an account that
+     * does not exist, every account is put back as it was and none of the
+     * operations takes effect. Otherwise the accounts opened, closed and
+     * moved to a new balance are published in a single change to the bank.
+     * <p>
+     * The locks of all the accounts the operations use are taken up front, in
+     * order of account number, so two transactions sharing accounts never
+     * wait on each other in a cycle. A transaction that opens or closes
+     * accounts also holds the bank's write lock, taken after the account
+     * locks, so the account set does not change under it. Such a transaction
+     * first publishes the changes other writers queued before it, so it sees
+     * the accounts they open, and its own outcome is published ahead of any
+     * change queued while it runs, so an account it opens cannot be taken by
+     * an addAccount() for the same number. Balances read without locking may
+     * show a transaction that is still in progress.
+     *
+     * @param operations       The operations to apply
+     * @return                 True if every operation was applied, false if
+     *                         none was
+     */
+    public boolean execute(List<BankOperation> operations) {
+      if (operations == null) {
+        return false;
+      }
+      checkLogFailure();
+      boolean changesAccountSet = BankTransaction.changesAccountSet(operations);
+      boolean applied = false;
+      long logged = 0;
 
-      Account deletedAccount = null;
-      int targetAccountIndex = findIndexOfAccount (accountNumber);
-      if (targetAccountIndex > -1) {
-        deletedAccount = this.accounts.remove(targetAccountIndex);
+      while (!applied) {
+        BankSnapshot current = snapshot;
+        Account[] used = BankTransaction.accountsUsedBy(current, operations)
+            .values().toArray(new Account[0]);
+        int locked = 0;
+        try {
+          for (; locked < used.length; locked++) {
+            used[locked].lock();
+          }
+          if (changesAccountSet) {
+            writeLock.lock();
+            publishPendingChanges(null);
+          }
+          try {
+            BankSnapshot latest = snapshot;
+            if (BankTransaction.seeSameAccounts(operations, current, latest)) {
+              BankTransaction transaction = new BankTransaction(latest);
+              if (!transaction.applyAll(operations)) {
+                return false;
+              }
+              if (transaction.hasChanges()) {
+                if (log != null) {
+                  WriteAheadLog.Record record = new WriteAheadLog.Record();
+                  transaction.logTo(record);
+                  try {
+                    logged = appendToLog(record);
+                  } catch (IllegalStateException e) {
+                    transaction.rollBack();
+                    throw e;
+                  }
+                }
+                if (changesAccountSet) {
+                  commitFirst(new AppliedTransaction(transaction));
+                } else {
+                  publish(new AppliedTransaction(transaction));
+                }
+              }
+              applied = true;
+            }
+          } finally {
+            if (changesAccountSet) {
+              writeLock.unlock();
+            }
+          }
+        } finally {
+          while (locked > 0) {
+            used[--locked].unlock();
+          }
+        }
       }
+      awaitLogged(logged);
+      return true;
+    }
 
-      return deletedAccount;
+    /**
+     * Matures the GIC with the account number, posting the interest still
+     * due for its investment period.
+     * <p>
+     * The result is declined if the account is not a GIC or has already
+     * matured. The account is locked and logged as it is for a deposit.
+     *
+     * @param accountNumber    The account number of the GIC
+     * @return                 The result, with the balance after maturing
+     * @throws                 NoAccountException if no account is found
+     */
+    public TransactionResult mature(String accountNumber) throws NoAccountException {
+      Account account = findAndLockAccount(accountNumber);
+      boolean successful = false;
+      long previousBalance;
+      long newBalance;
+      long logged = 0;
+
+      try {
+        previousBalance = account.getBalanceInCents();
+        if (account instanceof GIC && !((GIC) account).hasMatured()) {
+          byte[][] savedStates = captureStates(account);
+          ((GIC) account).mature();
+          successful = true;
+          logged = logChanges(savedStates, account);
+        }
+        newBalance = account.getBalanceInCents();
+      } finally {
+        account.unlock();
+      }
+      if (newBalance != previousBalance) {
+        commit(new BalanceChange(account, previousBalance));
+      }
+      awaitLogged(logged);
+      return new TransactionResult(accountNumber, successful, newBalance);
     }
 
     /**
-     * Returns the index of the account desired for removal from the account
-     * array in memory. If it is not found, return -1 to user.
+     * Closes the statement period of the Chequing account with the account
+     * number, taking the service charges built up since the last statement.
+     * Charges the current balance does not cover are carried to the next
+     * statement.
+     * <p>
+     * The result is declined if the account is not a Chequing account. The
+     * account is locked and logged as it is for a deposit.
      *
-     * @param accountNumber   The account number being searched
-     * @return                The index number of the account or -1 if not found
+     * @param accountNumber    The account number of the Chequing account
+     * @return                 The result, with the balance after closing
+     * @throws                 NoAccountException if no account is found
      */
-    private int findIndexOfAccount (String accountNumber) {
-      // Returns the index in the array where the specified account number
-      // resides. If account not found, return -1
-      int currentNumOfAccounts = this.accounts.size();
-      for (int i = 0; i < currentNumOfAccounts; i++) {
-        Account accountAtIndexI = accounts.get(i);
-        if (accountAtIndexI.getAccountNumber().equals(accountNumber)){
-          return i;
+    public TransactionResult closeStatement(String accountNumber) throws NoAccountException {
+      Account account = findAndLockAccount(accountNumber);
+      boolean successful = false;
+      long previousBalance;
+      long newBalance;
+      long logged = 0;
+
+      try {
+        previousBalance = account.getBalanceInCents();
+        if (account instanceof Chequing) {
+          byte[][] savedStates = captureStates(account);
+          ((Chequing) account).closeStatement();
+          successful = true;
+          logged = logChanges(savedStates, account);
         }
+        newBalance = account.getBalanceInCents();
+      } finally {
+        account.unlock();
       }
-      return -1;
+      if (newBalance != previousBalance) {
+        commit(new BalanceChange(account, previousBalance));
+      }
+      awaitLogged(logged);
+      return new TransactionResult(accountNumber, successful, newBalance);
+    }
+
+    /**
+     * Moves accounts changed outside of this class, such as by a tax batch,
+     * to their new balances in the balance index. The accounts must have been
+     * changed while holding their locks. Accounts removed from the bank since
+     * are left out of the log.
+     *
+     * @param accounts         The accounts whose balance changed
+     * @param previousBalances The balance, in cents, of each account before
+     *                         the change
+     */
+    void balancesChanged(Account[] accounts, long[] previousBalances) {
+      checkLogFailure();
+      long logged = 0;
+      for (Account account : accounts) {
+        account.lock();
+        try {
+          if (holds(account)) {
+            logged = Math.max(logged, logStates(account));
+          }
+        } finally {
+          account.unlock();
+        }
+      }
+      commit(new BalanceChange(accounts, previousBalances));
+      awaitLogged(logged);
+    }
+
+    /**
+     * Logs and publishes accounts changed outside of this class, such as by
+     * an interest accrual, while the caller still holds their locks, so the
+     * log has their new state before any later change. Unlike
+     * balancesChanged(), it does not wait for the log; the caller passes the
+     * sequence number returned to awaitBalancesLogged() once it has released
+     * the locks. Must be called while holding the locks of the accounts, and
+     * only for accounts still in the bank (see holds()).
+     *
+     * @param accounts         The accounts whose balance changed
+     * @param previousBalances The balance, in cents, of each account before
+     *                         the change
+     * @return                 The sequence number of the log record, or 0 if
+     *                         nothing was logged
+     */
+    long logBalancesChanged(Account[] accounts, long[] previousBalances) {
+      long logged = logStates(accounts);
+      publish(new BalanceChange(accounts, previousBalances));
+      return logged;
+    }
+
+    /**
+     * Waits for the record logged by logBalancesChanged() to be durable.
+     * Must be called after releasing the locks of the accounts.
+     *
+     * @param sequence         The sequence number of the record, or 0 if
+     *                         nothing was logged
+     */
+    void awaitBalancesLogged(long sequence) {
+      awaitLogged(sequence);
+    }
+
+    /**
+     * Reports if an account is in the bank. While the caller holds the
+     * account's lock, the answer cannot change, as an account is only
+     * removed while holding its lock.
+     *
+     * @param account          The account
+     * @return                 True if the bank holds this very account
+     */
+    boolean holds(Account account) {
+      return snapshot.accountsByNumber.get(account.getAccountNumber()) == account;
+    }
+
+    /**
+     * Appends the current state of accounts to the log as one record, if the
+     * bank has a log. Must be called while holding the locks of the accounts.
+     *
+     * @param accounts         The accounts changed
+     * @return                 The sequence number of the record, or 0 if
+     *                         nothing was logged
+     */
+    private long logStates(Account... accounts) {
+      if (log == null) {
+        return 0;
+      }
+      WriteAheadLog.Record record = new WriteAheadLog.Record();
+      for (Account account : accounts) {
+        record.state(account);
+      }
+      return appendToLog(record);
+    }
+
+    /**
+     * Captures the state of accounts about to be changed, so that
+     * logChanges() can put them back if the change cannot be logged. Must be
+     * called while holding the locks of the accounts.
+     *
+     * @param accounts         The accounts about to be changed
+     * @return                 Their states, or null if the bank has no log
+     */
+    private byte[][] captureStates(Account... accounts) {
+      if (log == null) {
+        return null;
+      }
+      byte[][] states = new byte[accounts.length][];
+      for (int i = 0; i < accounts.length; i++) {
+        states[i] = accounts[i].captureState();
+      }
+      return states;
+    }
+
+    /**
+     * Logs the new state of changed accounts, as logStates() does. If the log
+     * cannot be written, the accounts are put back in the states captured
+     * before the change, so the failed change leaves them, and their place
+     * in the balance index, as they were. Must be called while holding the
+     * locks of the accounts.
+     *
+     * @param savedStates      The states captured before the change, or null
+     *                         if the bank has no log
+     * @param accounts         The accounts changed
+     * @return                 The sequence number of the record, or 0 if
+     *                         nothing was logged
+     * @throws IllegalStateException if the log could not be written
+     */
+    private long logChanges(byte[][] savedStates, Account... accounts) {
+      try {
+        return logStates(accounts);
+      } catch (IllegalStateException e) {
+        for (int i = 0; i < accounts.length; i++) {
+          accounts[i].restoreState(savedStates[i]);
+        }
+        throw e;
+      }
+    }
+
+    /**
+     * Appends a record to the log. If the log cannot be written, the failure
+     * is kept and every later change to the bank fails with it.
+     *
+     * @param record           The record to append
+     * @return                 The sequence number of the record, or 0 if
+     *                         nothing was logged
+     * @throws IllegalStateException if the log could not be written now or
+     *                         before
+     */
+    private long appendToLog(WriteAheadLog.Record record) {
+      checkLogFailure();
+      try {
+        return log.append(record);
+      } catch (IllegalStateException e) {
+        if (logFailure == null) {
+          logFailure = e;
+        }
+        throw e;
+      }
+    }
+
+    /**
+     * Fails if writing the log has failed before, as the bank no longer
+     * matches its log and must not be changed any further.
+     *
+     * @throws IllegalStateException if the log has failed
+     */
+    private void checkLogFailure() {
+      IllegalStateException failure = logFailure;
+      if (failure != null) {
+        throw new IllegalStateException("Bank " + name + " stopped after its log failed",
+            failure);
+      }
+    }
+
+    /**
+     * Waits for a logged record to be durable. Must be called after releasing
+     * every lock, so that other callers can log meanwhile and share the flush.
+     *
+     * @param sequence         The sequence number of the record, or 0 if
+     *                         nothing was logged
+     */
+    private void awaitLogged(long sequence) {
+      if (sequence > 0) {
+        log.awaitDurable(sequence);
+      }
+    }
+
+    /**
+     * Returns the account with the specified account number.
+     *
+     * @param accountNumber    The account number being searched
+     * @return                 The account
+     * @throws                 NoAccountException if no account is found
+     */
+    private Account findAccount(String accountNumber) throws NoAccountException {
+      Account account = getAccount(accountNumber);
+      if (account == null) {
+        throw new NoAccountException();
+      }
+      return account;
+    }
+
+    /**
+     * Returns the account with the specified account number, holding its
+     * lock. The account is checked to still be in the bank once the lock is
+     * held; an account removed while waiting for the lock is looked up again.
+     * No account can be removed while its lock is held, so the account stays
+     * in the bank until the caller releases the lock.
+     *
+     * @param accountNumber    The account number being searched
+     * @return                 The locked account or null if not found
+     */
+    private Account lockAccount(String accountNumber) {
+      checkLogFailure();
+      Account account;
+      while ((account = getAccount(accountNumber)) != null) {
+        account.lock();
+        if (snapshot.accountsByNumber.get(accountNumber) == account) {
+          return account;
+        }
+        account.unlock();
+      }
+      return null;
+    }
+
+    /**
+     * Returns the account with the specified account number, holding its
+     * lock, as lockAccount() does.
+     *
+     * @param accountNumber    The account number being searched
+     * @return                 The locked account
+     * @throws                 NoAccountException if no account is found
+     */
+    private Account findAndLockAccount(String accountNumber) throws NoAccountException {
+      Account account = lockAccount(accountNumber);
+      if (account == null) {
+        throw new NoAccountException();
+      }
+      return account;
     }
 
     /**
@@ -155,6 +885,10 @@ public class Bank {
      * This method will return an account array containing accounts with the
      * user specified balance. If no account is found, return an empty account
      * array.
+     * <p>
+     * The requested balance is rounded to the nearest cent and the matching
+     * accounts are read from the balance index, which holds every account
+     * under its balance in cents.
      *
      * @param balance           The balance to search for in accounts
      * @return                  An array of accounts that match the balance
@@ -162,38 +896,10 @@ public class Bank {
      */
     public ArrayList<Account> search(double balance) throws NoAccountException {
       ArrayList<Account> searchResults = new ArrayList<Account>();
+      Map<String, Account> matches = snapshot.accountsByBalance.get(Money.toCents(balance));
 
-	BigDecimal userRequestBalance = new BigDecimal(balance);
-	userRequestBalance = userRequestBalance.setScale(2, RoundingMode.HALF_UP);
-
-	
-	for (Account account : accounts) {
-    	  double accBalance = account.getBalance();
-    	  
-    	  
-    	if (account instanceof Savings){
-    		/* Attn: Savings account balance will be subjected to loss of precision when converting from BigDecimal to double.
-    		 * 		 The solution is to convert all savings balance back into BigDecimal and round it to the nearest hundreds.
-    		 * 		 This increases precision significantly. However, precision beyond 2 decimal place is to be expected and is
-    		 * 		 considered reasonable for our purposes.
-    		 *  
-    		 * 		 The true solution to this problem is use BigDecimal for all currency comparisons and
-    		 * 		 operations to ensure no loss of precision.
-    		 */
-    		
-    		BigDecimal roundedAccBalance = new BigDecimal (accBalance);
-    		roundedAccBalance = roundedAccBalance.setScale(2, RoundingMode.HALF_UP);
-    		
-    		if (roundedAccBalance.equals(userRequestBalance)){
-    			searchResults.add(account);
-    		}
-    		
-    	}else{
-    		if (accBalance == balance) {
-    	          searchResults.add(account);
-    	     }
-    	}
-        
+      if (matches != null) {
+        searchResults.addAll(matches.values());
       }
 
       if (searchResults.isEmpty()){
@@ -203,12 +909,96 @@ public class Bank {
       return searchResults;
     }
 
+    /**
+     * Return all accounts with a balance between the minimum and maximum
+     * balance specified by the user.
+     * <p>
+     * Balances are compared after rounding to the nearest cent and both ends
+     * of the range are inclusive. The accounts are returned in ascending
+     * order of balance.
+     *
+     * @param minBalance        The lowest balance to search for
+     * @param maxBalance        The highest balance to search for
+     * @return                  An array of accounts within the balance range
+     * @throws					NoAccountException if no accounts found
+     */
+    public ArrayList<Account> searchByBalanceRange(double minBalance, double maxBalance)
+        throws NoAccountException {
+      ArrayList<Account> searchResults = new ArrayList<Account>();
+      long minCents = Money.toCents(minBalance);
+      long maxCents = Money.toCents(maxBalance);
+
+      if (minCents <= maxCents) {
+        for (Map<String, Account> candidates :
+             snapshot.accountsByBalance.subValues(minCents, true, maxCents, true)) {
+          searchResults.addAll(candidates.values());
+        }
+      }
+
+      if (searchResults.isEmpty()){
+    	  throw new NoAccountException();
+      }
+
+      return searchResults;
+    }
+
+    /**
+     * Return one page of the accounts with the balance specified by the user.
+     * <p>
+     * The accounts are sorted by account number. The page is read from the
+     * balance index group of the requested balance, rounded to the nearest
+     * cent, starting right after the page token, so any page costs time in
+     * proportion to its size.
+     *
+     * @param balance           The balance to search for in accounts
+     * @param limit             The maximum number of accounts on the page
+     * @param pageToken         The token of the page to fetch, or null for
+     *                          the first page
+     * @return                  The page of accounts that match the balance
+     * @throws					NoAccountException if no accounts found
+     */
+    public AccountPage search(double balance, int limit, String pageToken)
+        throws NoAccountException {
+      PersistentSortedMap<String, Account> matches = snapshot.accountsByBalance.get(Money.toCents(balance));
+      if (matches == null) {
+        if (pageToken == null) {
+          throw new NoAccountException();
+        }
+        return new AccountPage(new Account[0], null);
+      }
+      return firstPageNotEmpty(pageOf(matches, pageToken, limit, null, null), pageToken);
+    }
+
+    /**
+     * Returns an iterator over the accounts with the balance specified by the
+     * user, sorted by account number.
+     * <p>
+     * The iterator walks the balance index group of the requested balance,
+     * rounded to the nearest cent, in the current snapshot. If no account has
+     * the balance, the iterator is empty.
+     *
+     * @param balance           The balance to search for in accounts
+     * @return                  An iterator over the accounts that match the balance
+     */
+    public Iterator<Account> iterateByBalance(double balance) {
+      PersistentSortedMap<String, Account> matches = snapshot.accountsByBalance.get(Money.toCents(balance));
+      if (matches == null) {
+        return Collections.<Account>emptyIterator();
+      }
+      return Collections.unmodifiableCollection(matches.values()).iterator();
+    }
+
     /**
      * Return all accounts containing the account name specified by the user.
      * <p>
      * This method will return an account array containing accounts with the user
      * specified account name. If no account is found, return an empty account
      * array.
+     * <p>
+     * For names of at least three characters, only the accounts that contain
+     * every trigram of the name are checked. They are found by intersecting
+     * the trigram posting lists, starting from the shortest one. Shorter
+     * names have no trigram to look up and are checked against every account.
      *
      * @param accountName		The name of the account to search for
      * @return					An array of accounts that match accountName
@@ -216,11 +1006,354 @@ public class Bank {
      */
     public Account[] searchByAccountName(String accountName) throws NoAccountException{
     	ArrayList<Account> searchResults = new ArrayList<Account>();
-    	for(Account account : accounts){
-    		if (account.getFullName().contains(accountName)){
-    			searchResults.add(account);
+    	BankSnapshot current = snapshot;
+
+    	if (accountName.length() < BankSnapshot.TRIGRAM_LENGTH) {
+    		for(Account account : current.accountsByOpening.values()){
+    			if (account.getFullName().contains(accountName)){
+    				searchResults.add(account);
+    			}
+    		}
+    	}else{
+    		ArrayList<PersistentSortedMap<String, Account>> postings = findNamePostings(current, accountName);
+    		if (!postings.isEmpty()){
+    			for (Account account : shortestPosting(postings).values()){
+    				if (inAllPostings(account, postings)
+    						&& account.getFullName().contains(accountName)){
+    					searchResults.add(account);
+    				}
+    			}
+    		}
+    	}
+
+    	if (searchResults.size() > 0){
+    		return searchResults.toArray(new Account[searchResults.size()]);
+    	}else{
+    		throw new NoAccountException();
+    	}
+    }
+
+    /**
+     * Return one page of the accounts containing the account name specified
+     * by the user.
+     * <p>
+     * The accounts are sorted by account number. For names of at least three
+     * characters, the page is read from the shortest trigram posting list of
+     * the name starting right after the page token, and each account on it is
+     * checked against the other posting lists and the full name. Shorter
+     * names are checked against the sorted account number index instead. The
+     * walk stops as soon as the page is full, so a page of a common name costs
+     * time in proportion to the page, not to the number of matches.
+     *
+     * @param accountName		The name of the account to search for
+     * @param limit				The maximum number of accounts on the page
+     * @param pageToken			The token of the page to fetch, or null for
+     *							the first page
+     * @return					The page of accounts that match accountName
+     * @throws 					NoAccountException if no account is found
+     */
+    public AccountPage searchByAccountName(String accountName, int limit, String pageToken)
+    		throws NoAccountException{
+    	BankSnapshot current = snapshot;
+    	AccountPage page;
+
+    	if (accountName.length() < BankSnapshot.TRIGRAM_LENGTH) {
+    		page = pageOf(current.accountsByNumber, pageToken, limit, accountName,
+    				new ArrayList<PersistentSortedMap<String, Account>>());
+    	}else{
+    		ArrayList<PersistentSortedMap<String, Account>> postings = findNamePostings(current, accountName);
+    		if (postings.isEmpty()){
+    			page = new AccountPage(new Account[0], null);
+    		}else{
+    			page = pageOf(shortestPosting(postings), pageToken, limit, accountName, postings);
+    		}
+    	}
+    	return firstPageNotEmpty(page, pageToken);
+    }
+
+    /**
+     * Returns an iterator over the accounts containing the account name
+     * specified by the user, sorted by account number.
+     * <p>
+     * The iterator walks the same index as the paged search, in the current
+     * snapshot, and checks each account only when the next match is asked
+     * for. If no account matches, the iterator is empty.
+     *
+     * @param accountName		The name of the account to search for
+     * @return					An iterator over the accounts that match accountName
+     */
+    public Iterator<Account> iterateByAccountName(String accountName) {
+    	BankSnapshot current = snapshot;
+
+    	if (accountName.length() < BankSnapshot.TRIGRAM_LENGTH) {
+    		return new NameMatches(current.accountsByNumber.values().iterator(), accountName,
+    				new ArrayList<PersistentSortedMap<String, Account>>());
+    	}
+    	ArrayList<PersistentSortedMap<String, Account>> postings = findNamePostings(current, accountName);
+    	if (postings.isEmpty()){
+    		return Collections.<Account>emptyIterator();
+    	}
+    	return new NameMatches(shortestPosting(postings).values().iterator(), accountName, postings);
+    }
+
+    /**
+     * Return summaries of the accounts containing the account name specified
+     * by the user, sorted by account number.
+     * <p>
+     * Only the fields asked for are kept in each summary. The matching
+     * accounts are summarized as the name index is walked, without first
+     * collecting the accounts themselves.
+     *
+     * @param accountName		The name of the account to search for
+     * @param fields			The fields to keep, or null to keep every field
+     * @return					The summaries of the accounts that match accountName
+     * @throws 					NoAccountException if no account is found
+     */
+    public AccountSummary[] summarizeByAccountName(String accountName,
+    		Set<AccountSummary.Field> fields) throws NoAccountException{
+    	return summarize(iterateByAccountName(accountName), fields);
+    }
+
+    /**
+     * Return summaries of the accounts with the balance specified by the
+     * user, sorted by account number.
+     *
+     * @param balance			The balance to search for in accounts
+     * @param fields			The fields to keep, or null to keep every field
+     * @return					The summaries of the accounts that match the balance
+     * @throws 					NoAccountException if no account is found
+     */
+    public AccountSummary[] summarizeByBalance(double balance,
+    		Set<AccountSummary.Field> fields) throws NoAccountException{
+    	return summarize(iterateByBalance(balance), fields);
+    }
+
+    /**
+     * Return the tax statements of the taxable accounts containing the
+     * account holder's name specified by the user, sorted by account number.
+     * <p>
+     * The accounts are found as in searchByAccountName(). Accounts that are
+     * not taxable are skipped. Each taxable account hands out the statement
+     * it last produced unless it has changed since, so the tax figures are
+     * only worked out again for accounts that changed.
+     *
+     * @param holderName		The name of the account holder
+     * @return					The tax statements, empty if no account found is taxable
+     * @throws 					NoAccountException if no account is found
+     */
+    public TaxStatement[] getTaxStatements(String holderName) throws NoAccountException{
+    	ArrayList<TaxStatement> statements = new ArrayList<TaxStatement>();
+    	boolean found = false;
+
+    	Iterator<Account> accounts = iterateByAccountName(holderName);
+    	while (accounts.hasNext()){
+    		Account account = accounts.next();
+    		found = true;
+    		if (account instanceof Taxable){
+    			statements.add(((Taxable) account).getTaxStatement());
+    		}
+    	}
+
+    	if (!found){
+    		throw new NoAccountException();
+    	}
+    	return statements.toArray(new TaxStatement[statements.size()]);
+    }
+
+    /**
+     * Summarizes every account of an iterator.
+     *
+     * @param accounts			The accounts to summarize
+     * @param fields			The fields to keep, or null to keep every field
+     * @return					The summaries of the accounts
+     * @throws 					NoAccountException if there is no account
+     */
+    private static AccountSummary[] summarize(Iterator<Account> accounts,
+    		Set<AccountSummary.Field> fields) throws NoAccountException{
+    	ArrayList<AccountSummary> summaries = new ArrayList<AccountSummary>();
+    	while (accounts.hasNext()){
+    		summaries.add(new AccountSummary(accounts.next(), fields));
+    	}
+
+    	if (summaries.size() > 0){
+    		return summaries.toArray(new AccountSummary[summaries.size()]);
+    	}else{
+    		throw new NoAccountException();
+    	}
+    }
+
+    /**
+     * Returns the trigram posting lists for every trigram of the account
+     * name. If any trigram is not indexed, no account can contain the name
+     * and an empty list is returned.
+     *
+     * @param current			The snapshot being searched
+     * @param accountName		The name being searched, at least three characters long
+     * @return					The posting list of each distinct trigram of the name
+     */
+    private static ArrayList<PersistentSortedMap<String, Account>> findNamePostings(BankSnapshot current,
+    		String accountName) {
+    	ArrayList<PersistentSortedMap<String, Account>> postings =
+    			new ArrayList<PersistentSortedMap<String, Account>>();
+    	for (String trigram : BankSnapshot.trigramsOf(accountName)){
+    		PersistentSortedMap<String, Account> posting = current.accountsByNameTrigram.get(trigram);
+    		if (posting == null){
+    			postings.clear();
+    			break;
+    		}
+    		postings.add(posting);
+    	}
+    	return postings;
+    }
+
+    /**
+     * Reports if the account is listed in every one of the posting lists.
+     *
+     * @param account			The account to look for
+     * @param postings			The posting lists to check
+     * @return					True if every posting list holds the account
+     */
+    private static boolean inAllPostings(Account account,
+    		ArrayList<PersistentSortedMap<String, Account>> postings) {
+    	for (PersistentSortedMap<String, Account> posting : postings){
+    		if (!posting.containsKey(account.getAccountNumber())){
+    			return false;
+    		}
+    	}
+    	return true;
+    }
+
+    /**
+     * Returns the posting list with the fewest accounts.
+     *
+     * @param postings			The posting lists to choose from, at least one
+     * @return					The shortest posting list
+     */
+    private static PersistentSortedMap<String, Account> shortestPosting(
+    		ArrayList<PersistentSortedMap<String, Account>> postings) {
+    	PersistentSortedMap<String, Account> shortestPosting = postings.get(0);
+    	for (PersistentSortedMap<String, Account> posting : postings){
+    		if (posting.size() < shortestPosting.size()){
+    			shortestPosting = posting;
+    		}
+    	}
+    	return shortestPosting;
+    }
+
+    /**
+     * Walks an index sorted by account number from the first account after
+     * the page token and collects accounts until the page is full. One more
+     * matching account is looked for to tell if there is a next page. A limit
+     * below one gives a page of the default size, and no page holds more than
+     * the maximum page size.
+     *
+     * @param candidates		The index to walk, keyed by account number
+     * @param pageToken			The account number the previous page ended
+     *							with, or null for the first page
+     * @param limit				The maximum number of accounts on the page
+     * @param accountName		The name the accounts must contain, or null to
+     *							take every account
+     * @param postings			The posting lists the accounts must be in, or
+     *							null to take every account
+     * @return					The page of accounts
+     */
+    private static AccountPage pageOf(PersistentSortedMap<String, Account> candidates, String pageToken,
+    		int limit, String accountName, ArrayList<PersistentSortedMap<String, Account>> postings) {
+    	int pageSize = (limit < 1) ? DEFAULT_PAGE_SIZE : Math.min(limit, MAX_PAGE_SIZE);
+    	Iterable<Account> remaining =
+    			(pageToken == null) ? candidates.values() : candidates.tailValues(pageToken, false);
+    	ArrayList<Account> pageResults = new ArrayList<Account>();
+    	String nextPageToken = null;
+
+    	for (Account account : remaining){
+    		if (accountName != null && !(inAllPostings(account, postings)
+    				&& account.getFullName().contains(accountName))){
+    			continue;
+    		}
+    		if (pageResults.size() == pageSize){
+    			nextPageToken = pageResults.get(pageSize - 1).getAccountNumber();
+    			break;
+    		}
+    		pageResults.add(account);
+    	}
+    	return new AccountPage(pageResults.toArray(new Account[pageResults.size()]),
+    			nextPageToken);
+    }
+
+    /**
+     * Checks that the first page of a search found at least one account.
+     * Later pages may be empty if the accounts after the token were removed
+     * since the previous page was fetched.
+     *
+     * @param page				The page found
+     * @param pageToken			The token the page was fetched with
+     * @return					The page
+     * @throws 					NoAccountException if the first page is empty
+     */
+    private static AccountPage firstPageNotEmpty(AccountPage page, String pageToken)
+    		throws NoAccountException{
+    	if (pageToken == null && page.getAccounts().length == 0){
+    		throw new NoAccountException();
+    	}
+    	return page;
+    }
+
+    /**
+     * Return the accounts whose holder's last name starts with the prefix
+     * specified by the user.
+     * <p>
+     * The accounts are returned sorted by last name, then first name, then
+     * account number. The search seeks straight to the prefix in the last
+     * name index and stops after limit accounts, so it does not visit any
+     * account outside the result.
+     *
+     * @param prefix			The beginning of the last name
+     * @param limit				The maximum number of accounts to return
+     * @return					An array of accounts whose last name starts with prefix
+     * @throws 					NoAccountException if no account is found
+     */
+    public Account[] searchByLastNamePrefix(String prefix, int limit) throws NoAccountException{
+    	return searchByNamePrefix(snapshot.accountsByLastName, prefix, limit);
+    }
+
+    /**
+     * Return the accounts whose holder's first name starts with the prefix
+     * specified by the user.
+     * <p>
+     * The accounts are returned sorted by first name, then last name, then
+     * account number, and at most limit accounts are returned.
+     *
+     * @param prefix			The beginning of the first name
+     * @param limit				The maximum number of accounts to return
+     * @return					An array of accounts whose first name starts with prefix
+     * @throws 					NoAccountException if no account is found
+     */
+    public Account[] searchByFirstNamePrefix(String prefix, int limit) throws NoAccountException{
+    	return searchByNamePrefix(snapshot.accountsByFirstName, prefix, limit);
+    }
+
+    /**
+     * Walks a sorted name index from the first key starting with the prefix
+     * and collects accounts until a key no longer starts with the prefix or
+     * the limit is reached.
+     *
+     * @param nameIndex			The sorted name index to search
+     * @param prefix			The beginning of the name
+     * @param limit				The maximum number of accounts to return
+     * @return					An array of accounts whose name starts with prefix
+     * @throws 					NoAccountException if no account is found
+     */
+    private static Account[] searchByNamePrefix(PersistentSortedMap<String, Account> nameIndex,
+    		String prefix, int limit) throws NoAccountException{
+    	ArrayList<Account> searchResults = new ArrayList<Account>();
+
+    	for (Map.Entry<String, Account> entry : nameIndex.tailEntries(prefix, true)){
+    		if (searchResults.size() >= limit || !entry.getKey().startsWith(prefix)){
+    			break;
     		}
+    		searchResults.add(entry.getValue());
     	}
+
     	if (searchResults.size() > 0){
     		return searchResults.toArray(new Account[searchResults.size()]);
     	}else{
@@ -232,8 +1365,8 @@ public class Bank {
      * Reports if the incoming foreign object is the same Bank object
      * as the current bank object.
      * <p>
-     * This method will return true if the two bank objects are identical and
-     * false otherwise.
+     * This method will return true if the two banks have the same name and
+     * hold equal accounts under the same account numbers, and false otherwise.
      *
      * @param foreignObject     The incoming object to be checked
      * @return                  True if both objects match or false otherwise
@@ -246,15 +1379,16 @@ public class Bank {
 
       if (foreignObject instanceof Bank) {
         Bank otherBank = (Bank) foreignObject;
+        BankSnapshot thisAccounts = this.snapshot;
+        BankSnapshot otherAccounts = otherBank.snapshot;
         int numOfMismatch = 0;
 
-        if (this.name.toLowerCase().equals(otherBank.name.toLowerCase()))
+        if (this.name.toLowerCase().equals(otherBank.name.toLowerCase())
+            && thisAccounts.accountsByNumber.size() == otherAccounts.accountsByNumber.size())
              {
-              for (int i = 0; i < this.accounts.size(); i++) {
-                Account thisBankAccountAtIndexI = this.accounts.get(i);
-                Account otherBankAccountAtIndexI = otherBank.accounts.get(i);
-                if (thisBankAccountAtIndexI.hashCode() !=
-                    otherBankAccountAtIndexI.hashCode()) {
+              for (Account thisBankAccount : thisAccounts.accountsByOpening.values()) {
+                Account otherBankAccount = otherAccounts.accountsByNumber.get(thisBankAccount.getAccountNumber());
+                if (!thisBankAccount.equals(otherBankAccount)) {
                       numOfMismatch++;
                 }
               }
@@ -277,7 +1411,7 @@ public class Bank {
 	public String toString() {
       StringBuffer output = new StringBuffer("");
       output.append(writeToStringheader());
-      output.append(writeAccountsDetails());
+      output.append(writeAccountsDetails(snapshot));
       return output.toString();
     }
 
@@ -303,21 +1437,22 @@ public class Bank {
     /**
      * Sends account details of a bank to toString method
      *
+     * @param current       The snapshot of the accounts to list
      * @return              Each account's information in the bank object
      */
-    private String writeAccountsDetails() {
+    private String writeAccountsDetails(BankSnapshot current) {
       // Returns the account details to toString()
 
       StringBuffer accountDetails = new StringBuffer("");
-      int currentNumberOfAccounts = this.accounts.size();
+      int i = 0;
 
-      for (int i = 0; i < currentNumberOfAccounts; i++) {
-        Account accountAtIndexI = accounts.get(i);
+      for (Account accountAtIndexI : current.accountsByOpening.values()) {
         if (accountAtIndexI != null) {
           accountDetails.append("Listing Number: " + (i + 1) + '\n');
           accountDetails.append(accountAtIndexI.toString());
-          accountDetails.append(addNewLineIfNotLastAccount(i));
+          accountDetails.append(addNewLineIfNotLastAccount(i, current.accountsByNumber.size()));
         }
+        i++;
       }
       accountDetails.append("*********************************\n");
       return accountDetails.toString();
@@ -333,11 +1468,12 @@ public class Bank {
      * asterisks (*) will follow right after to complete the look of the
      * interface.
      *
+     * @param i                      The index of the account printed
+     * @param currentNumOfAccounts     The number of accounts being listed
      * @return              A new line character if the account printed was
      *                      not the last account, otherwise an empty string
      */
-    private String addNewLineIfNotLastAccount(int i) {
-      int currentNumOfAccounts = this.accounts.size();
+    private String addNewLineIfNotLastAccount(int i, int currentNumOfAccounts) {
       return ((i + 1) < currentNumOfAccounts? "\n" : "");
     }
 
@@ -346,6 +1482,372 @@ public class Bank {
      * @return	Number of accounts
      */
     public int getNumberOfAccounts(){
-    	return accounts.size();
+    	return snapshot.accountsByNumber.size();
+    }
+
+    /**
+     * Queues a change and makes sure it is published before returning.
+     * <p>
+     * If no other writer holds the write lock, the caller publishes its own
+     * change together with any others queued meanwhile. Otherwise the caller
+     * waits for the lock, by which time the writer holding it has usually
+     * published the change already as part of its batch.
+     *
+     * @param change             The change to publish
+     * @throws IllegalStateException if the change could not be logged, or
+     *                           the log has failed before
+     */
+    private void commit(PendingChange change) {
+      publish(change);
+      awaitLogged(change.logged);
+    }
+
+    /**
+     * Queues a change and makes sure it is published before returning, as
+     * commit() does, but does not wait for the log. Callers holding account
+     * locks use it, then wait with awaitLogged() once they have released
+     * them.
+     *
+     * @param change             The change to publish
+     * @throws IllegalStateException if the change could not be logged, or
+     *                           the log has failed before
+     */
+    private void publish(PendingChange change) {
+      checkLogFailure();
+      pendingChanges.add(change);
+      writeLock.lock();
+      try {
+        if (!change.applied) {
+          publishPendingChanges(null);
+        }
+      } finally {
+        writeLock.unlock();
+      }
+      checkPublished(change);
+    }
+
+    /**
+     * Publishes a change ahead of every change still queued, on the snapshot
+     * the caller has seen. Must be called while holding the write lock, and
+     * does not wait for the log.
+     *
+     * @param change             The change to publish
+     * @throws IllegalStateException if the change could not be logged, or
+     *                           the log has failed before
+     */
+    private void commitFirst(PendingChange change) {
+      checkLogFailure();
+      publishPendingChanges(change);
+      checkPublished(change);
+    }
+
+    /**
+     * Fails if a change was not published because the log failed.
+     *
+     * @param change             The change
+     * @throws IllegalStateException if the change could not be logged
+     */
+    private void checkPublished(PendingChange change) {
+      if (change.failure != null) {
+        throw new IllegalStateException("Could not log a change to bank " + name,
+            change.failure);
+      }
+    }
+
+    /**
+     * Applies a change, if one is given, then every queued change to the next
+     * version of the current snapshot and publishes it. Must be called while
+     * holding the write lock.
+     * <p>
+     * If a change cannot be logged, none of the changes polled is published:
+     * each is marked with the failure, so the thread that queued it fails
+     * instead of taking it for published, and the bank refuses every later
+     * change.
+     *
+     * @param first              The change to apply before the queued ones,
+     *                           or null
+     */
+    private void publishPendingChanges(PendingChange first) {
+      BankSnapshot next = new BankSnapshot(snapshot);
+      ArrayList<PendingChange> polled = new ArrayList<PendingChange>();
+      PendingChange change = (first != null) ? first : pendingChanges.poll();
+      for (; change != null; change = pendingChanges.poll()) {
+        polled.add(change);
+        try {
+          change.applyTo(next);
+          if (log != null) {
+            WriteAheadLog.Record record = new WriteAheadLog.Record();
+            change.logTo(record);
+            change.logged = appendToLog(record);
+          }
+        } catch (IllegalStateException e) {
+          failAll(polled, e);
+          return;
+        }
+      }
+      for (PendingChange published : polled) {
+        published.applied = true;
+      }
+      snapshot = next;
+    }
+
+    /**
+     * Fails every change polled by a publish that could not log, and every
+     * change queued since, as none of them will be published.
+     *
+     * @param polled             The changes polled
+     * @param failure            The failure
+     */
+    private void failAll(ArrayList<PendingChange> polled, IllegalStateException failure) {
+      if (logFailure == null) {
+        logFailure = failure;
+      }
+      PendingChange change;
+      while ((change = pendingChanges.poll()) != null) {
+        polled.add(change);
+      }
+      for (PendingChange failed : polled) {
+        failed.failure = failure;
+        failed.applied = true;
+      }
+    }
+
+    /**
+     * Iterates over the candidate accounts of a name search, returning only
+     * those in every posting list whose full name contains the name. The next
+     * match is looked for when it is asked for, not before.
+     */
+    private static final class NameMatches implements Iterator<Account> {
+      private final Iterator<Account> candidates;
+      private final String accountName;
+      private final ArrayList<PersistentSortedMap<String, Account>> postings;
+      private Account nextMatch;
+
+      NameMatches(Iterator<Account> candidates, String accountName,
+          ArrayList<PersistentSortedMap<String, Account>> postings) {
+        this.candidates = candidates;
+        this.accountName = accountName;
+        this.postings = postings;
+      }
+
+      @Override
+      public boolean hasNext() {
+        while (nextMatch == null && candidates.hasNext()) {
+          Account account = candidates.next();
+          if (inAllPostings(account, postings)
+              && account.getFullName().contains(accountName)) {
+            nextMatch = account;
+          }
+        }
+        return nextMatch != null;
+      }
+
+      @Override
+      public Account next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        Account match = nextMatch;
+        nextMatch = null;
+        return match;
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    }
+
+    /**
+     * A change to the account set waiting to be published. Its result is
+     * written by the writer that applies it, while holding the write lock,
+     * and read by the thread that queued it after taking the same lock.
+     */
+    private abstract static class PendingChange {
+      boolean applied;
+      long logged;
+      IllegalStateException failure;
+
+      /**
+       * Applies the change to the next version of the snapshot.
+       *
+       * @param next             The snapshot being built
+       */
+      abstract void applyTo(BankSnapshot next);
+
+      /**
+       * Adds the accounts opened and closed by the change, once applied, to
+       * a log record. Changes of account balances are logged by the writer
+       * that made them, while holding the account locks.
+       *
+       * @param record           The record being built
+       */
+      void logTo(WriteAheadLog.Record record) {
+      }
+    }
+
+    /**
+     * Adds an account to the bank.
+     */
+    private static final class AccountAddition extends PendingChange {
+      final Account account;
+      boolean added;
+
+      AccountAddition(Account account) {
+        this.account = account;
+      }
+
+      @Override
+      void applyTo(BankSnapshot next) {
+        added = next.add(account);
+      }
+
+      @Override
+      void logTo(WriteAheadLog.Record record) {
+        if (added) {
+          record.add(account);
+        }
+      }
+    }
+
+    /**
+     * Adds a list of accounts to the bank.
+     */
+    private static final class AccountAdditions extends PendingChange {
+      final List<Account> accounts;
+      final boolean[] added;
+
+      AccountAdditions(List<Account> accounts) {
+        this.accounts = accounts;
+        this.added = new boolean[accounts.size()];
+      }
+
+      @Override
+      void applyTo(BankSnapshot next) {
+        for (int i = 0; i < added.length; i++) {
+          Account account = accounts.get(i);
+          added[i] = account != null && account.getAccountNumber() != null
+              && next.add(account);
+        }
+      }
+
+      @Override
+      void logTo(WriteAheadLog.Record record) {
+        for (int i = 0; i < added.length; i++) {
+          if (added[i]) {
+            record.add(accounts.get(i));
+          }
+        }
+      }
+    }
+
+    /**
+     * Removes a list of accounts from the bank.
+     */
+    private static final class AccountRemovals extends PendingChange {
+      final Account[] accounts;
+      final Account[] removed;
+
+      AccountRemovals(Account[] accounts) {
+        this.accounts = accounts;
+        this.removed = new Account[accounts.length];
+      }
+
+      @Override
+      void applyTo(BankSnapshot next) {
+        for (int i = 0; i < removed.length; i++) {
+          removed[i] = removeIfHeld(next, accounts[i]);
+        }
+      }
+
+      @Override
+      void logTo(WriteAheadLog.Record record) {
+        for (Account account : removed) {
+          if (account != null) {
+            record.remove(account.getAccountNumber());
+          }
+        }
+      }
+    }
+
+    /**
+     * Publishes the outcome of a transaction.
+     */
+    private static final class AppliedTransaction extends PendingChange {
+      final BankTransaction transaction;
+
+      AppliedTransaction(BankTransaction transaction) {
+        this.transaction = transaction;
+      }
+
+      @Override
+      void applyTo(BankSnapshot next) {
+        transaction.publishTo(next);
+      }
+    }
+
+    /**
+     * Moves accounts in the balance index after their balances changed.
+     */
+    private static final class BalanceChange extends PendingChange {
+      final Account[] accounts;
+      final long[] previousBalances;
+
+      BalanceChange(Account account, long previousBalance) {
+        this(new Account[] { account }, new long[] { previousBalance });
+      }
+
+      BalanceChange(Account[] accounts, long[] previousBalances) {
+        this.accounts = accounts;
+        this.previousBalances = previousBalances;
+      }
+
+      @Override
+      void applyTo(BankSnapshot next) {
+        for (int i = 0; i < accounts.length; i++) {
+          next.rebalance(accounts[i], previousBalances[i]);
+        }
+      }
+    }
+
+    /**
+     * Removes an account from the bank.
+     */
+    private static final class AccountRemoval extends PendingChange {
+      final Account account;
+      Account removed;
+
+      AccountRemoval(Account account) {
+        this.account = account;
+      }
+
+      @Override
+      void applyTo(BankSnapshot next) {
+        removed = removeIfHeld(next, account);
+      }
+
+      @Override
+      void logTo(WriteAheadLog.Record record) {
+        if (removed != null) {
+          record.remove(removed.getAccountNumber());
+        }
+      }
+    }
+
+    /**
+     * Removes an account from a snapshot being built, if the snapshot still
+     * holds that very account under its account number. The caller holds the
+     * account's lock, so no other removal can take it out first.
+     *
+     * @param next             The snapshot being built
+     * @param account          The account to remove, or null
+     * @return                 The account removed, or null if not held
+     */
+    private static Account removeIfHeld(BankSnapshot next, Account account) {
+      if (account == null
+          || next.accountsByNumber.get(account.getAccountNumber()) != account) {
+        return null;
+      }
+      return next.remove(account.getAccountNumber());
     }
 }
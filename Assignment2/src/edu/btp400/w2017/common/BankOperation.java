@@ -0,0 +1,164 @@
+/**
+ * This class describes one operation on a bank: opening an account, closing
+ * an account, a deposit, a withdrawal, or a transfer between two accounts.
+ *
+ * Operations are created with the static methods open(), close(), deposit(),
+ * withdraw() and transfer(). A list of them is sent to the bank server in a
+ * single call and applied as one transaction (see Bank.execute()), so a
+ * workflow such as closing one account and moving its balance into another
+ * either happens completely or not at all.
+ *
+ * @author Alex Wang
+ * @version 1.0
+ */
+package edu.btp400.w2017.common;
+import java.io.Serializable;
+
+public final class BankOperation implements Serializable {
+
+  private static final long serialVersionUID = -6242771913040857115L;
+
+  /**
+   * The kinds of operation that can be applied to a bank.
+   */
+  public enum Type {
+    OPEN, CLOSE, DEPOSIT, WITHDRAW, TRANSFER
+  }
+
+  private final Type type;
+  private final Account account;
+  private final String accountNumber;
+  private final String targetAccountNumber;
+  private final double amount;
+
+  /**
+   * Creates an operation. Operations are created through the static methods
+   * of this class.
+   *
+   * @param type                  The kind of operation
+   * @param account               The account to open, or null
+   * @param accountNumber         The account the operation applies to
+   * @param targetAccountNumber   The account receiving a transfer, or null
+   * @param amount                The amount of money moved, or 0
+   */
+  private BankOperation(Type type, Account account, String accountNumber,
+      String targetAccountNumber, double amount) {
+    this.type = type;
+    this.account = account;
+    this.accountNumber = accountNumber;
+    this.targetAccountNumber = targetAccountNumber;
+    this.amount = amount;
+  }
+
+  /**
+   * Creates an operation that opens an account.
+   *
+   * @param account           The account to open
+   * @return                  The operation
+   */
+  public static BankOperation open(Account account) {
+    return new BankOperation(Type.OPEN, account,
+        (account != null) ? account.getAccountNumber() : null, null, 0);
+  }
+
+  /**
+   * Creates an operation that closes an account.
+   *
+   * @param accountNumber     The account number of the account to close
+   * @return                  The operation
+   */
+  public static BankOperation close(String accountNumber) {
+    return new BankOperation(Type.CLOSE, null, accountNumber, null, 0);
+  }
+
+  /**
+   * Creates an operation that deposits money into an account.
+   *
+   * @param accountNumber     The account number of the account
+   * @param amount            The amount to deposit
+   * @return                  The operation
+   */
+  public static BankOperation deposit(String accountNumber, double amount) {
+    return new BankOperation(Type.DEPOSIT, null, accountNumber, null, amount);
+  }
+
+  /**
+   * Creates an operation that withdraws money from an account.
+   *
+   * @param accountNumber     The account number of the account
+   * @param amount            The amount to withdraw
+   * @return                  The operation
+   */
+  public static BankOperation withdraw(String accountNumber, double amount) {
+    return new BankOperation(Type.WITHDRAW, null, accountNumber, null, amount);
+  }
+
+  /**
+   * Creates an operation that moves money from one account to another. The
+   * money is withdrawn from the first account and deposited into the second,
+   * each under the rules of its own account type.
+   *
+   * @param fromAccountNumber The account number of the account to withdraw from
+   * @param toAccountNumber   The account number of the account to deposit into
+   * @param amount            The amount to move
+   * @return                  The operation
+   */
+  public static BankOperation transfer(String fromAccountNumber, String toAccountNumber,
+      double amount) {
+    return new BankOperation(Type.TRANSFER, null, fromAccountNumber, toAccountNumber, amount);
+  }
+
+  /**
+   * Retrieves the kind of operation.
+   *
+   * @return    The kind of operation
+   */
+  public Type getType() { return type; }
+
+  /**
+   * Retrieves the account opened by an OPEN operation.
+   *
+   * @return    The account to open, or null for other operations
+   */
+  public Account getAccount() { return account; }
+
+  /**
+   * Retrieves the account number of the account the operation applies to.
+   * For a transfer, this is the account the money is withdrawn from.
+   *
+   * @return    The account number
+   */
+  public String getAccountNumber() { return accountNumber; }
+
+  /**
+   * Retrieves the account number of the account receiving a transfer.
+   *
+   * @return    The account number, or null for other operations
+   */
+  public String getTargetAccountNumber() { return targetAccountNumber; }
+
+  /**
+   * Retrieves the amount of money moved by the operation.
+   *
+   * @return    The amount, or 0 for OPEN and CLOSE operations
+   */
+  public double getAmount() { return amount; }
+
+  /**
+   * Returns a one line description of the operation.
+   *
+   * @return    The operation in a formatted string
+   */
+  @Override
+  public String toString() {
+    StringBuffer output = new StringBuffer(type.toString());
+    output.append(" " + accountNumber);
+    if (targetAccountNumber != null) {
+      output.append(" -> " + targetAccountNumber);
+    }
+    if (type != Type.OPEN && type != Type.CLOSE) {
+      output.append(" " + amount);
+    }
+    return output.toString();
+  }
+}
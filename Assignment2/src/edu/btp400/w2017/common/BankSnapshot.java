@@ -0,0 +1,263 @@
+/**
+ * This class holds one version of the account set of a Bank together with
+ * the indexes built over it: the account number index, the opening order
+ * index, which keeps the order accounts were opened in, the balance index,
+ * the name trigram index and the last name and first name indexes. Balance
+ * groups and trigram posting lists are sorted by account number, so any of
+ * them can be read a page at a time from a given account number on.
+ *
+ * A snapshot is never changed once the bank has published it, so any number
+ * of threads may read it without locking and each of them sees the same
+ * point-in-time view of the bank. A writer makes the next version from the
+ * current one, applies its changes to it, and publishes it. Every index is a
+ * PersistentSortedMap, so the new version shares the whole of every index
+ * with the previous one except the entries on the paths to the keys it
+ * changed. Adding, removing or rebalancing an account costs time in
+ * proportion to the logarithm of the number of accounts, however many
+ * accounts the bank holds.
+ *
+ * @author Alex Wang
+ * @version 1.2
+ */
+package edu.btp400.w2017.common;
+import java.util.HashSet;
+
+final class BankSnapshot {
+
+  /**
+   * Length of the character sequences held in the name trigram index.
+   */
+  static final int TRIGRAM_LENGTH = 3;
+
+  private static final char NAME_KEY_SEPARATOR = '\u0000';
+
+  PersistentSortedMap<String, Account> accountsByNumber;
+  PersistentSortedMap<Long, Account> accountsByOpening;
+  PersistentSortedMap<Long, PersistentSortedMap<String, Account>> accountsByBalance;
+  PersistentSortedMap<String, PersistentSortedMap<String, Account>> accountsByNameTrigram;
+  PersistentSortedMap<String, Account> accountsByLastName;
+  PersistentSortedMap<String, Account> accountsByFirstName;
+
+  /**
+   * The key of each account in the opening order index.
+   */
+  private PersistentSortedMap<String, Long> openings;
+
+  /**
+   * The opening order key of the next account added.
+   */
+  private long nextOpening;
+
+  /**
+   * Creates an empty snapshot.
+   */
+  BankSnapshot() {
+    accountsByNumber = PersistentSortedMap.empty();
+    accountsByOpening = PersistentSortedMap.empty();
+    accountsByBalance = PersistentSortedMap.empty();
+    accountsByNameTrigram = PersistentSortedMap.empty();
+    accountsByLastName = PersistentSortedMap.empty();
+    accountsByFirstName = PersistentSortedMap.empty();
+    openings = PersistentSortedMap.empty();
+  }
+
+  /**
+   * Creates the next version of a published snapshot. The new version can be
+   * changed until it is published, and changing it leaves the previous
+   * version as it was.
+   *
+   * @param previous          The snapshot to start from
+   */
+  BankSnapshot(BankSnapshot previous) {
+    accountsByNumber = previous.accountsByNumber;
+    accountsByOpening = previous.accountsByOpening;
+    accountsByBalance = previous.accountsByBalance;
+    accountsByNameTrigram = previous.accountsByNameTrigram;
+    accountsByLastName = previous.accountsByLastName;
+    accountsByFirstName = previous.accountsByFirstName;
+    openings = previous.openings;
+    nextOpening = previous.nextOpening;
+  }
+
+  /**
+   * Adds an account to this version and to all of its indexes, unless its
+   * account number is already in use.
+   *
+   * @param account           The account to add
+   * @return                  True if the account was added
+   */
+  boolean add(Account account) {
+    String accountNumber = account.getAccountNumber();
+    if (accountsByNumber.containsKey(accountNumber)) {
+      return false;
+    }
+    Long opening = Long.valueOf(nextOpening++);
+    accountsByNumber = accountsByNumber.plus(accountNumber, account);
+    accountsByOpening = accountsByOpening.plus(opening, account);
+    openings = openings.plus(accountNumber, opening);
+    indexBalance(account);
+    indexName(account);
+    indexNamePrefixes(account);
+    return true;
+  }
+
+  /**
+   * Removes the account with the account number from this version and from
+   * all of its indexes.
+   *
+   * @param accountNumber     The account number to remove
+   * @return                  The removed account or null if not found
+   */
+  Account remove(String accountNumber) {
+    Account account = accountsByNumber.get(accountNumber);
+    if (account == null) {
+      return null;
+    }
+    accountsByNumber = accountsByNumber.minus(accountNumber);
+    accountsByOpening = accountsByOpening.minus(openings.get(accountNumber));
+    openings = openings.minus(accountNumber);
+    unindexBalance(account, account.getBalanceInCents());
+    unindexName(account);
+    unindexNamePrefixes(account);
+    return account;
+  }
+
+  /**
+   * Moves an account in the balance index from the balance it was indexed
+   * under to its current balance. An account that is no longer in this
+   * version is only taken out of the index.
+   * <p>
+   * Every balance change of an account held by the bank is followed by a
+   * call to this method, so even when several changes are applied out of
+   * order the account ends up indexed under its latest balance only.
+   *
+   * @param account           The account whose balance changed
+   * @param previousBalance   The balance, in cents, before the change
+   */
+  void rebalance(Account account, long previousBalance) {
+    unindexBalance(account, previousBalance);
+    if (accountsByNumber.get(account.getAccountNumber()) == account) {
+      indexBalance(account);
+    }
+  }
+
+  /**
+   * Adds an account to the balance index under its current balance.
+   *
+   * @param account           The account to index
+   */
+  private void indexBalance(Account account) {
+    Long balanceKey = Long.valueOf(account.getBalanceInCents());
+    PersistentSortedMap<String, Account> sameBalance = accountsByBalance.get(balanceKey);
+    if (sameBalance == null) {
+      sameBalance = PersistentSortedMap.empty();
+    }
+    accountsByBalance = accountsByBalance.plus(balanceKey,
+        sameBalance.plus(account.getAccountNumber(), account));
+  }
+
+  /**
+   * Removes an account from the balance index, if it is indexed under the
+   * balance given.
+   *
+   * @param account           The account to remove from the index
+   * @param balanceKey        The balance, in cents, the account is indexed under
+   */
+  private void unindexBalance(Account account, long balanceKey) {
+    Long key = Long.valueOf(balanceKey);
+    PersistentSortedMap<String, Account> sameBalance = accountsByBalance.get(key);
+    if (sameBalance == null || sameBalance.get(account.getAccountNumber()) != account) {
+      return;
+    }
+    sameBalance = sameBalance.minus(account.getAccountNumber());
+    accountsByBalance = sameBalance.isEmpty() ? accountsByBalance.minus(key)
+        : accountsByBalance.plus(key, sameBalance);
+  }
+
+  /**
+   * Adds an account to the posting list of every trigram of its full name.
+   *
+   * @param account           The account to index
+   */
+  private void indexName(Account account) {
+    for (String trigram : trigramsOf(account.getFullName())) {
+      PersistentSortedMap<String, Account> posting = accountsByNameTrigram.get(trigram);
+      if (posting == null) {
+        posting = PersistentSortedMap.empty();
+      }
+      accountsByNameTrigram = accountsByNameTrigram.plus(trigram,
+          posting.plus(account.getAccountNumber(), account));
+    }
+  }
+
+  /**
+   * Removes an account from the posting list of every trigram of its full
+   * name, dropping posting lists that become empty.
+   *
+   * @param account           The account to remove from the index
+   */
+  private void unindexName(Account account) {
+    for (String trigram : trigramsOf(account.getFullName())) {
+      PersistentSortedMap<String, Account> posting = accountsByNameTrigram.get(trigram);
+      if (posting == null) {
+        continue;
+      }
+      posting = posting.minus(account.getAccountNumber());
+      accountsByNameTrigram = posting.isEmpty() ? accountsByNameTrigram.minus(trigram)
+          : accountsByNameTrigram.plus(trigram, posting);
+    }
+  }
+
+  /**
+   * Adds an account to the last name and first name indexes.
+   *
+   * @param account           The account to index
+   */
+  private void indexNamePrefixes(Account account) {
+    accountsByLastName = accountsByLastName.plus(
+        nameKey(account.getLastName(), account.getFirstName(), account), account);
+    accountsByFirstName = accountsByFirstName.plus(
+        nameKey(account.getFirstName(), account.getLastName(), account), account);
+  }
+
+  /**
+   * Removes an account from the last name and first name indexes.
+   *
+   * @param account           The account to remove from the indexes
+   */
+  private void unindexNamePrefixes(Account account) {
+    accountsByLastName = accountsByLastName.minus(
+        nameKey(account.getLastName(), account.getFirstName(), account));
+    accountsByFirstName = accountsByFirstName.minus(
+        nameKey(account.getFirstName(), account.getLastName(), account));
+  }
+
+  /**
+   * Returns the distinct trigrams found in a piece of text.
+   *
+   * @param text              The text to split into trigrams
+   * @return                  The set of trigrams in the text
+   */
+  static HashSet<String> trigramsOf(String text) {
+    HashSet<String> trigrams = new HashSet<String>();
+    for (int i = 0; i + TRIGRAM_LENGTH <= text.length(); i++) {
+      trigrams.add(text.substring(i, i + TRIGRAM_LENGTH));
+    }
+    return trigrams;
+  }
+
+  /**
+   * Builds the sorted name index key for an account. The key starts with
+   * the leading name so that prefix searches find it, and ends with the
+   * account number so that every account has a key of its own.
+   *
+   * @param leadingName       The name the index is sorted by
+   * @param trailingName      The name used to break ties
+   * @param account           The account being indexed
+   * @return                  The name index key
+   */
+  private static String nameKey(String leadingName, String trailingName, Account account) {
+    return leadingName + NAME_KEY_SEPARATOR + trailingName
+        + NAME_KEY_SEPARATOR + account.getAccountNumber();
+  }
+}
@@ -0,0 +1,317 @@
+/**
+ * This class applies a list of bank operations as one transaction on behalf
+ * of Bank.execute().
+ *
+ * The transaction works on a view of the bank made of a published snapshot
+ * plus the accounts it has opened and minus the accounts it has closed. The
+ * snapshot itself is never changed. Before an account in the bank is changed
+ * for the first time, its state and balance are recorded, so that a failed
+ * transaction can put every account back as it was, and a successful one can
+ * tell the bank which accounts to move in the balance index.
+ *
+ * The caller must hold the lock of every account the transaction uses for
+ * as long as the transaction is in progress.
+ *
+ * @author Alex Wang
+ * @version 1.2
+ */
+package edu.btp400.w2017.common;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+final class BankTransaction {
+
+  private final BankSnapshot base;
+  private final LinkedHashMap<String, Account> opened = new LinkedHashMap<String, Account>();
+  private final LinkedHashSet<String> closed = new LinkedHashSet<String>();
+  private final IdentityHashMap<Account, byte[]> savedStates = new IdentityHashMap<Account, byte[]>();
+  private final IdentityHashMap<Account, Long> previousBalances = new IdentityHashMap<Account, Long>();
+
+  /**
+   * Creates a transaction on a published snapshot of the bank.
+   *
+   * @param base              The snapshot the transaction starts from
+   */
+  BankTransaction(BankSnapshot base) {
+    this.base = base;
+  }
+
+  /**
+   * Returns every account the operations use, sorted by account number,
+   * which is the order their locks must be taken in. Accounts to be opened
+   * are included, as are accounts of the snapshot the operations refer to.
+   *
+   * @param snapshot          The snapshot to find existing accounts in
+   * @param operations        The operations of the transaction
+   * @return                  The accounts used, keyed by account number
+   */
+  static TreeMap<String, Account> accountsUsedBy(BankSnapshot snapshot,
+      List<BankOperation> operations) {
+    TreeMap<String, Account> used = new TreeMap<String, Account>();
+    for (BankOperation operation : operations) {
+      if (operation == null) {
+        continue;
+      }
+      if (operation.getType() == BankOperation.Type.OPEN) {
+        Account account = operation.getAccount();
+        if (account != null && account.getAccountNumber() != null
+            && !used.containsKey(account.getAccountNumber())) {
+          used.put(account.getAccountNumber(), account);
+        }
+      } else {
+        addExistingAccount(used, snapshot, operation.getAccountNumber());
+        addExistingAccount(used, snapshot, operation.getTargetAccountNumber());
+      }
+    }
+    return used;
+  }
+
+  /**
+   * Adds the account with the account number to the accounts used, if the
+   * snapshot holds it and it is not already there.
+   *
+   * @param used              The accounts used, keyed by account number
+   * @param snapshot          The snapshot to find the account in
+   * @param accountNumber     The account number, or null
+   */
+  private static void addExistingAccount(TreeMap<String, Account> used,
+      BankSnapshot snapshot, String accountNumber) {
+    if (accountNumber != null && !used.containsKey(accountNumber)) {
+      Account account = snapshot.accountsByNumber.get(accountNumber);
+      if (account != null) {
+        used.put(accountNumber, account);
+      }
+    }
+  }
+
+  /**
+   * Reports if two snapshots hold the same accounts under every account
+   * number the operations refer to, so that applying the operations to
+   * either of them has the same outcome.
+   *
+   * @param operations        The operations of the transaction
+   * @param earlier           The snapshot the accounts used were found in
+   * @param later             The snapshot the transaction is about to use
+   * @return                  True if the operations see the same accounts
+   */
+  static boolean seeSameAccounts(List<BankOperation> operations,
+      BankSnapshot earlier, BankSnapshot later) {
+    if (earlier == later) {
+      return true;
+    }
+    for (BankOperation operation : operations) {
+      if (operation != null
+          && (!sameAccount(earlier, later, operation.getAccountNumber())
+              || !sameAccount(earlier, later, operation.getTargetAccountNumber()))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Reports if two snapshots hold the same account under an account number.
+   *
+   * @param earlier           The first snapshot
+   * @param later             The second snapshot
+   * @param accountNumber     The account number, or null
+   * @return                  True if both hold the same account, or neither
+   *                          holds one
+   */
+  private static boolean sameAccount(BankSnapshot earlier, BankSnapshot later,
+      String accountNumber) {
+    return accountNumber == null
+        || earlier.accountsByNumber.get(accountNumber) == later.accountsByNumber.get(accountNumber);
+  }
+
+  /**
+   * Applies the operations in order. If one of them fails, every account
+   * changed so far is put back as it was and the remaining operations are
+   * not applied.
+   *
+   * @param operations        The operations of the transaction
+   * @return                  True if every operation was applied
+   */
+  boolean applyAll(List<BankOperation> operations) {
+    for (BankOperation operation : operations) {
+      if (operation == null || !apply(operation)) {
+        rollBack();
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Applies one operation.
+   *
+   * @param operation         The operation to apply
+   * @return                  True if the operation was applied
+   */
+  private boolean apply(BankOperation operation) {
+    switch (operation.getType()) {
+    case OPEN:
+      return open(operation.getAccount());
+    case CLOSE:
+      return close(operation.getAccountNumber());
+    case DEPOSIT:
+      Account depositAccount = find(operation.getAccountNumber());
+      return depositAccount != null
+          && prepare(depositAccount).deposit(operation.getAmount());
+    case WITHDRAW:
+      Account withdrawAccount = find(operation.getAccountNumber());
+      return withdrawAccount != null
+          && prepare(withdrawAccount).withdraw(operation.getAmount());
+    case TRANSFER:
+      Account from = find(operation.getAccountNumber());
+      Account to = find(operation.getTargetAccountNumber());
+      return from != null && to != null && from != to
+          && prepare(from).withdraw(operation.getAmount())
+          && prepare(to).deposit(operation.getAmount());
+    default:
+      return false;
+    }
+  }
+
+  /**
+   * Opens an account, unless its account number is already in use.
+   *
+   * @param account           The account to open
+   * @return                  True if the account was opened
+   */
+  private boolean open(Account account) {
+    if (account == null || account.getAccountNumber() == null
+        || find(account.getAccountNumber()) != null) {
+      return false;
+    }
+    opened.put(account.getAccountNumber(), account);
+    return true;
+  }
+
+  /**
+   * Closes an account.
+   *
+   * @param accountNumber     The account number of the account to close
+   * @return                  True if the account was found and closed
+   */
+  private boolean close(String accountNumber) {
+    if (find(accountNumber) == null) {
+      return false;
+    }
+    if (opened.remove(accountNumber) == null) {
+      closed.add(accountNumber);
+    }
+    return true;
+  }
+
+  /**
+   * Returns the account with the account number as the transaction sees it.
+   *
+   * @param accountNumber     The account number, or null
+   * @return                  The account or null if not found
+   */
+  private Account find(String accountNumber) {
+    if (accountNumber == null || closed.contains(accountNumber)) {
+      return null;
+    }
+    Account account = opened.get(accountNumber);
+    return (account != null) ? account : base.accountsByNumber.get(accountNumber);
+  }
+
+  /**
+   * Records the state and balance of an account of the bank before the
+   * transaction changes it for the first time. Accounts opened by the
+   * transaction are not recorded, as they are simply dropped on failure.
+   *
+   * @param account           The account about to change
+   * @return                  The account
+   */
+  private Account prepare(Account account) {
+    if (!opened.containsValue(account) && !savedStates.containsKey(account)) {
+      savedStates.put(account, account.captureState());
+      previousBalances.put(account, account.getBalanceInCents());
+    }
+    return account;
+  }
+
+  /**
+   * Puts every account changed by the transaction back as it was.
+   */
+  void rollBack() {
+    for (Map.Entry<Account, byte[]> saved : savedStates.entrySet()) {
+      saved.getKey().restoreState(saved.getValue());
+    }
+    savedStates.clear();
+    previousBalances.clear();
+    opened.clear();
+    closed.clear();
+  }
+
+  /**
+   * Reports if the transaction changed anything in the bank.
+   *
+   * @return                  True if the bank must publish the transaction
+   */
+  boolean hasChanges() {
+    return !opened.isEmpty() || !closed.isEmpty() || !previousBalances.isEmpty();
+  }
+
+  /**
+   * Reports if the transaction opens or closes accounts.
+   *
+   * @param operations        The operations of the transaction
+   * @return                  True if any operation opens or closes an account
+   */
+  static boolean changesAccountSet(List<BankOperation> operations) {
+    for (BankOperation operation : operations) {
+      if (operation != null && (operation.getType() == BankOperation.Type.OPEN
+          || operation.getType() == BankOperation.Type.CLOSE)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Adds the outcome of the transaction to a log record, in the order it is
+   * published: the new state of the changed accounts, then the accounts
+   * closed and the accounts opened. Must be called while the account locks
+   * are held.
+   *
+   * @param record            The record being built
+   */
+  void logTo(WriteAheadLog.Record record) {
+    for (Account account : previousBalances.keySet()) {
+      record.state(account);
+    }
+    for (String accountNumber : closed) {
+      record.remove(accountNumber);
+    }
+    for (Account account : opened.values()) {
+      record.add(account);
+    }
+  }
+
+  /**
+   * Applies the outcome of the transaction to the next version of the bank:
+   * moves the changed accounts in the balance index, then removes the closed
+   * accounts and adds the opened ones.
+   *
+   * @param next              The snapshot being built
+   */
+  void publishTo(BankSnapshot next) {
+    for (Map.Entry<Account, Long> changed : previousBalances.entrySet()) {
+      next.rebalance(changed.getKey(), changed.getValue());
+    }
+    for (String accountNumber : closed) {
+      next.remove(accountNumber);
+    }
+    for (Account account : opened.values()) {
+      next.add(account);
+    }
+  }
+}
@@ -2,11 +2,19 @@
 / * This class emulates a chequing bank account by extending the Account base class.
  * The chequing account type is not taxable.
  *
+ * Service charges build up with each transaction until the statement period
+ * is closed (see closeStatement()), which takes them from the current balance
+ * and starts a new allowance of transactions.
+ *
  * @author awang05
- * @version 0.7
+ * @version 1.0
  */
 
 package edu.btp400.w2017.common;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.io.Serializable;
 import java.math.BigDecimal;
 
@@ -17,16 +25,12 @@ public class Chequing extends Account implements Serializable {
 	private static final long serialVersionUID = 8056657011706478157L;
 
 	public static final String ACCOUNT_TYPE = "CHQ";
-	private BigDecimal serviceChargePerTransaction;
-	private BigDecimal totalServiceCharges;
+	private long serviceChargePerTransaction;		// In cents
+	private long totalServiceCharges;				// In cents
 	private int numberOfTransactionsAllowed;
-	private double[] transactions;
+	private long[] transactions;					// In cents
 	private int numberOfTransactionsUsed;
 
-	// For internal hashCode() generation only
-	private int bogusNumberOfTransactionsAllowed;
-	private double bogusServiceChargePerTransaction;
-
 	public enum Transaction {
 		DEPOSIT, WITHDRAW
 	}
@@ -58,7 +62,7 @@ public class Chequing extends Account implements Serializable {
 		setTotalServiceCharge(0);
 		setNumberOfTransactionsAllowed(numberOfTransactionsAllowed);
 
-		transactions = new double[this.numberOfTransactionsAllowed];
+		transactions = new long[this.numberOfTransactionsAllowed];
 	}
 
 	/**
@@ -68,10 +72,9 @@ public class Chequing extends Account implements Serializable {
 	 */
 	private void setServiceChargePerTransaction(double serviceCharge){
 		if (serviceChargeIsValid(serviceCharge)){
-			this.serviceChargePerTransaction = BigDecimal.valueOf(serviceCharge);
+			this.serviceChargePerTransaction = Money.toCents(serviceCharge);
 		}else{
-			this.serviceChargePerTransaction = BigDecimal.valueOf(0.25);
-			this.setBogusServiceChargePerTransaction(serviceCharge);
+			this.serviceChargePerTransaction = Money.toCents(0.25);
 		}
 	}
 
@@ -89,30 +92,12 @@ public class Chequing extends Account implements Serializable {
 		return false;
 	}
 
-	/**
-	 * Sets the bogus service charge per transaction based on the provided
-	 * value.If the value is out of range, set the bogus value to -1. If the
-	 * value is within range, but is 0 or less, set value to (serviceCharge +2).
-	 * If the value is not bogus, set bogus service charge per transaction to 0.
-	 *
-	 * @param serviceCharge
-	 */
-	private void setBogusServiceChargePerTransaction(double serviceCharge){
-		if (serviceCharge < SMALLEST_DOUBLE_VALUE || serviceCharge > LARGEST_DOUBLE_VALUE){
-			this.bogusServiceChargePerTransaction = -2;
-		}else if (serviceCharge > SMALLEST_DOUBLE_VALUE && serviceCharge <= 0){
-			this.bogusServiceChargePerTransaction = serviceCharge + 2.5;
-		}else{
-			this.bogusServiceChargePerTransaction = 0;
-		}
-	}
-
 	/**
 	 * Returns the service charge per transaction amount.
 	 * @return	Service charge per transaction.
 	 */
 	public double getServiceChargePerTransaction(){
-		return this.serviceChargePerTransaction.doubleValue();
+		return Money.toDollars(this.serviceChargePerTransaction);
 	}
 
 	/**
@@ -126,7 +111,6 @@ public class Chequing extends Account implements Serializable {
 		}
 		else{
 			this.numberOfTransactionsAllowed = 3;
-			this.setBogusNumberOfTransactionsAllowed(numberOfTransactions);
 		}
 	}
 
@@ -140,24 +124,6 @@ public class Chequing extends Account implements Serializable {
 		return (numberOfTransactions > 0 && numberOfTransactions < Integer.MAX_VALUE);
 	}
 
-	/**
-	 * Sets bogus number of transactions allowed based on the value provided.
-	 * If the value is out of Integer range, set it to the value of -1.
-	 * If the value is within Integer range, set value to (bogus value + 2).
-	 * If the value is a legitimate value, set the bogus value to a default of 0.
-	 *
-	 * @param numberOfTransactions
-	 */
-	private void setBogusNumberOfTransactionsAllowed(int numberOfTransactions){
-		if (numberOfTransactions < Integer.MIN_VALUE || numberOfTransactions > Integer.MAX_VALUE){
-			this.bogusNumberOfTransactionsAllowed = -1;
-		}else if (numberOfTransactions > Integer.MIN_VALUE && numberOfTransactions < 1){
-			this.bogusNumberOfTransactionsAllowed = numberOfTransactions + 2;
-		}else{
-			this.bogusNumberOfTransactionsAllowed = 0;
-		}
-	}
-
 	/**
 	 * Validates if the transaction can be made successfully.
 	 * If transaction is successful, store the amount to the
@@ -165,15 +131,22 @@ public class Chequing extends Account implements Serializable {
 	 * successful
 	 *
 	 * @param	amount		The deposit amount
+	 * @return	True if deposit is successful. False otherwise.
 	 * @override
 	 */
 	@Override
-	public void deposit (double amount){
-		if (transactionIsValid(amount, Transaction.DEPOSIT)){
-			storeAmountToArray(amount);
-			updateBalance();
+	public boolean deposit (double amount){
+		lock();
+		try {
+			if (transactionIsValid(amount, Transaction.DEPOSIT)){
+				storeAmountToArray(Money.toCents(amount));
+				updateBalance();
+				return true;
+			}
+			return false;
+		} finally {
+			unlock();
 		}
-
 	}
 
 	/**
@@ -188,20 +161,25 @@ public class Chequing extends Account implements Serializable {
 	 */
 	@Override
 	public boolean withdraw(double amount){
-		if (transactionIsValid(amount, Transaction.WITHDRAW)){
-			storeAmountToArray(-amount);
-			updateBalance();
-			return true;
+		lock();
+		try {
+			if (transactionIsValid(amount, Transaction.WITHDRAW)){
+				storeAmountToArray(-Money.toCents(amount));
+				updateBalance();
+				return true;
+			}
+			return false;
+		} finally {
+			unlock();
 		}
-		return false;
 	}
 
 	/**
 	 * Checks to see if an transaction is possible. If possible, store
 	 * the amount to transaction[]. Otherwise do nothing.
-	 * @param amount
+	 * @param amount	The transaction amount in cents
 	 */
-	private void storeAmountToArray(double amount){
+	private void storeAmountToArray(long amount){
 		if (transactionsNotMaxed()){
 			transactions[this.numberOfTransactionsUsed++] = amount;
 		}
@@ -219,14 +197,15 @@ public class Chequing extends Account implements Serializable {
 	}
 
 	/**
-	 * Updates total service charge
+	 * Updates total service charge, then applies the last transaction
+	 * to the balance, which publishes the new final balance.
 	 *
 	 */
 	private void updateBalance(){
-		double amount = transactions[this.numberOfTransactionsUsed - 1];
-		this.setCurrentBalance(super.getBalance() + amount);
-		setTotalServiceCharge(this.totalServiceCharges.doubleValue() +
-								  this.serviceChargePerTransaction.doubleValue());
+		long amount = transactions[this.numberOfTransactionsUsed - 1];
+		setTotalServiceCharge(this.totalServiceCharges +
+								  this.serviceChargePerTransaction);
+		this.addToCurrentBalance(amount);
 	}
 
 	/**
@@ -236,8 +215,9 @@ public class Chequing extends Account implements Serializable {
 	 * @return True, if transactions were successful.
 	 */
 	private boolean transactionIsValid(double amount, Transaction type ){
-		double finalAmount = (type == Transaction.WITHDRAW)?
-				preprocessAmount(-amount):preprocessAmount(amount);
+		long amountInCents = Money.toCents(amount);
+		long finalAmount = (type == Transaction.WITHDRAW)?
+				preprocessAmount(-amountInCents):preprocessAmount(amountInCents);
 
 		return (amount >= 0 && transactionsNotMaxed() && finalAmount >= 0);
 	}
@@ -246,14 +226,14 @@ public class Chequing extends Account implements Serializable {
 	 * Simulates processing the transaction on the current balance.
 	 * Returns the simulated amount.
 	 *
-	 * @param amount
-	 * @return	The resulting balance after applying a transaction.
+	 * @param amount	The transaction amount in cents
+	 * @return	The resulting balance in cents after applying a transaction.
 	 */
-	private double preprocessAmount(double amount){
-		if (amount < SMALLEST_DOUBLE_VALUE || amount > LARGEST_DOUBLE_VALUE){
+	private long preprocessAmount(long amount){
+		if (amount > Long.MAX_VALUE - getCurrentBalanceInCents()){
 			return -1;
 		}else {
-			return (super.getBalance() + amount);
+			return (getCurrentBalanceInCents() + amount);
 		}
 	}
 
@@ -261,112 +241,123 @@ public class Chequing extends Account implements Serializable {
 	 * Sets the total service charge. If an out of range service charge
 	 * is provided, set the total service charge to 0 as default.
 	 *
-	 * @param serviceCharge
+	 * @param serviceCharge		The total service charge in cents
 	 */
-	private void setTotalServiceCharge(double serviceCharge){
-		if (serviceCharge >= 0 && serviceCharge < LARGEST_DOUBLE_VALUE){
-			this.totalServiceCharges = BigDecimal.valueOf(serviceCharge);
+	private void setTotalServiceCharge(long serviceCharge){
+		if (serviceCharge >= 0){
+			this.totalServiceCharges = serviceCharge;
 		}else{
-			this.totalServiceCharges = BigDecimal.valueOf(0);
+			this.totalServiceCharges = 0;
 		}
-
-		//Setup decimal formatting
-		this.totalServiceCharges.setScale(2, BigDecimal.ROUND_HALF_UP);
 	}
 
 	/**
-	 * Returns the final balance after deducting total service charges.
-	 *
-	 * @return	Final balance
-	 * @Override
+	 * Closes the statement period: takes the service charges built up
+	 * since the last statement from the current balance and starts a new
+	 * allowance of transactions. Only what the current balance covers is
+	 * taken; the rest stays in the total service charges and is owed on
+	 * the next statement. The final balance is not changed, as it
+	 * already had the charges deducted. The caller must hold the
+	 * account's lock.
 	 *
+	 * @return	The service charges taken in cents
 	 */
-	@Override
-	public double getBalance(){
-		BigDecimal currentBalance = new BigDecimal(super.getBalance());
-		currentBalance = currentBalance.subtract(this.totalServiceCharges);
-		return (currentBalance.doubleValue());
+	long closeStatement(){
+		long charged = Math.min(this.totalServiceCharges, getCurrentBalanceInCents());
+		this.totalServiceCharges -= charged;
+		this.numberOfTransactionsUsed = 0;
+		setCurrentBalanceInCents(getCurrentBalanceInCents() - charged);
+		return charged;
 	}
 
 	/**
-	 * Validates if the incoming object is the same Chequing
-	 * account as the current account. Return true, if it is
-	 * the same. Otherwise, return false.
+	 * Works out the final balance in cents after deducting total service charges.
+	 *
+	 * @return	Final balance in cents
+	 * @Override
 	 *
-	 * @return	True, if both accounts are identical
 	 */
 	@Override
-	public boolean equals(Object foreignObject){
-		if (foreignObject instanceof Chequing){
-			Chequing chequingAccount = (Chequing) foreignObject;
-
-			return (this.hashCode() == chequingAccount.hashCode());
-		}
-
-		return false;
+	protected long computeBalanceInCents(){
+		return getCurrentBalanceInCents() - this.totalServiceCharges;
 	}
 
 	/**
-	 * Returns a unique generated hash code for each
-	 * Chequing account.
-	 *
-	 * @return	Chequing account hash code
+	 * Returns the number of transactions used at the moment.
+	 * @return	Number of transactions used
 	 */
-	@Override
-	public int hashCode(){
-		int hash = 63;
-		hash += super.hashCode();
-		hash *= this.getServiceChargePerTransactionHashCode();
-		hash += this.getNumberOfTransactionsAllowedHashCode();
-		return hash;
+	public int getNumberOfTransactionUsed(){
+		return this.numberOfTransactionsUsed;
 	}
 
 	/**
-	 * Detects if there a bogus service charge was provided. If true,
-	 * return a special generated value. If false, return the valid
-	 * service charge per transaction as hashCode.
-	 *
-	 * @return	Number of transaction hash code
+	 * Returns the max number of transactions allowed.
+	 * @return	Max number of transactions
 	 */
-	private double getServiceChargePerTransactionHashCode(){
-		// Bogus service charge is present
-		if (this.bogusServiceChargePerTransaction != 0){
-			return (this.bogusServiceChargePerTransaction + 2.25) * -0.6;
-		}else{
-			return this.serviceChargePerTransaction.doubleValue();
-		}
+	public int getNumberOfTransactionsAllowed(){
+		return this.numberOfTransactionsAllowed;
 	}
 
 	/**
-	 * Detects if there a bogus number of transactions were provided. If true,
-	 * return a special generated value. If false, return the valid
-	 * number allowed transactions as hashCode.
+	 * Returns the account type.
 	 *
-	 * @return	Number of transaction hash code
+	 * @return	The account type
+	 * @override
 	 */
-	private double getNumberOfTransactionsAllowedHashCode(){
-		// Bogus number of transactions are present
-		if (this.bogusNumberOfTransactionsAllowed != 0){
-			return (this.bogusNumberOfTransactionsAllowed - 1) * -0.85;
-		}else{
-			return this.numberOfTransactionsAllowed;
-		}
+	@Override
+	public String getAccountType(){
+		return ACCOUNT_TYPE;
 	}
 
 	/**
-	 * Returns the number of transactions used at the moment.
-	 * @return	Number of transactions used
+	 * Writes the account in the compact wire format. Only the
+	 * transactions used so far are written.
+	 *
+	 * @param out				The stream to write the account to
+	 * @throws IOException		If the account could not be written
+	 * @override
 	 */
-	public int getNumberOfTransactionUsed(){
-		return this.numberOfTransactionsUsed;
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException{
+		lock();
+		try {
+			super.writeExternal(out);
+			out.writeLong(this.serviceChargePerTransaction);
+			out.writeLong(this.totalServiceCharges);
+			out.writeInt(this.numberOfTransactionsAllowed);
+			out.writeInt(this.numberOfTransactionsUsed);
+			for (int i = 0; i < this.numberOfTransactionsUsed; i++){
+				out.writeLong(this.transactions[i]);
+			}
+		} finally {
+			unlock();
+		}
 	}
 
 	/**
-	 * Returns the max number of transactions allowed.
-	 * @return	Max number of transactions
+	 * Reads the account from the compact wire format.
+	 *
+	 * @param in				The stream to read the account from
+	 * @throws IOException		If the account could not be read
+	 * @override
 	 */
-	public int getNumberOfTransactionsAllowed(){
-		return this.numberOfTransactionsAllowed;
+	@Override
+	public void readExternal(ObjectInput in) throws IOException{
+		super.readExternal(in);
+		this.serviceChargePerTransaction = in.readLong();
+		this.totalServiceCharges = in.readLong();
+		this.numberOfTransactionsAllowed = in.readInt();
+		this.numberOfTransactionsUsed = in.readInt();
+		if (!numberOfTransactionsIsValid(this.numberOfTransactionsAllowed)
+				|| this.numberOfTransactionsUsed < 0
+				|| this.numberOfTransactionsUsed > this.numberOfTransactionsAllowed){
+			throw new InvalidObjectException("Invalid number of transactions");
+		}
+		this.transactions = new long[this.numberOfTransactionsAllowed];
+		for (int i = 0; i < this.numberOfTransactionsUsed; i++){
+			this.transactions[i] = in.readLong();
+		}
+		refreshBalance();
 	}
 
 	/**
@@ -384,25 +375,30 @@ public class Chequing extends Account implements Serializable {
 	 */
 	@Override
 	public String toString(){
-		// Formatting currency
-		String serviceChargePerTransaction = currencyFormat.format(this.serviceChargePerTransaction.doubleValue());
-		String totalServiceCharges = currencyFormat.format(this.totalServiceCharges.doubleValue());
-		String finalBalance = currencyFormat.format(this.getBalance());
-
-		String listOfTransactions = getTransactionsList();
-
-		StringBuffer output = new StringBuffer("");
-		output.append(super.toString());
-		output.append("Type: " + ACCOUNT_TYPE + "\n");
-		output.append("Service Charge: " + serviceChargePerTransaction + "\n");
-		output.append("Total Service Charges: " + totalServiceCharges + "\n");
-		output.append("Number of Transactions Allowed: " +
-						this.numberOfTransactionsAllowed + "\n");
-		output.append(listOfTransactions);
-
-
-		output.append("Final Balance: " + finalBalance + "\n");
-		return output.toString();
+		lock();
+		try {
+			// Formatting currency
+			String serviceChargePerTransaction = Money.format(this.serviceChargePerTransaction);
+			String totalServiceCharges = Money.format(this.totalServiceCharges);
+			String finalBalance = Money.format(this.getBalanceInCents());
+
+			String listOfTransactions = getTransactionsList();
+
+			StringBuffer output = new StringBuffer("");
+			output.append(super.toString());
+			output.append("Type: " + ACCOUNT_TYPE + "\n");
+			output.append("Service Charge: " + serviceChargePerTransaction + "\n");
+			output.append("Total Service Charges: " + totalServiceCharges + "\n");
+			output.append("Number of Transactions Allowed: " +
+							this.numberOfTransactionsAllowed + "\n");
+			output.append(listOfTransactions);
+
+
+			output.append("Final Balance: " + finalBalance + "\n");
+			return output.toString();
+		} finally {
+			unlock();
+		}
 	}
 
 	/**
@@ -437,15 +433,12 @@ public class Chequing extends Account implements Serializable {
 
 	/**
 	 * Formats an amount to use two decimal places.
-	 * @param amount	The amount to convert
+	 * @param amount	The amount to convert, in cents
 	 * @return			The converted amount to two decimal places
 	 */
-	private String formatAmount(double amount){
+	private String formatAmount(long amount){
 		StringBuffer output = new StringBuffer("");
-		BigDecimal formattedAmount = new BigDecimal(amount);
-
-		//Formatting amount
-		formattedAmount = formattedAmount.setScale(2, BigDecimal.ROUND_HALF_UP);
+		BigDecimal formattedAmount = BigDecimal.valueOf(amount, 2);
 
 		// Formatting output
 		if (amount > 0) {
@@ -1,17 +1,34 @@
 /**
  * This class emulates a GIC account by extending the account class.
  * The GIC account is taxable and implements the following methods
- * from taxable interface: calculateTax, getTaxAmount(), and
- * createTaxStatement().
+ * from taxable interface: calculateTax, getTaxAmount(),
+ * createTaxStatement(), and getTaxStatement().
+ *
+ * The balance at maturity, the interest income and the amount of tax are
+ * computed once whenever the balance, the interest rate, the investment
+ * period or the tax rate changes.
+ *
+ * Interest can also be posted to the balance month by month (see
+ * InterestBearing), compounding at the annual rate. The months already
+ * posted are counted, and the balance at maturity is projected from the
+ * current balance over the months that remain only, so posted interest is
+ * never counted twice. The growth factor applied to the balance
+ * comes from a table shared by all GIC accounts, which holds the factor of
+ * every investment period for each distinct annual interest rate in use.
  *
  * @author awang05
- * @version 0.2
+ * @version 0.9
  */
 package edu.btp400.w2017.common;
 import java.math.BigDecimal;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
 
-public class GIC extends Account implements Taxable, Serializable {
+public class GIC extends Account implements Taxable, InterestBearing, Serializable {
 	/**
 	 *
 	 */
@@ -19,15 +36,19 @@ public class GIC extends Account implements Taxable, Serializable {
 
 	public static final String ACCOUNT_TYPE = "GIC";
 	private static final int defaultTaxRate = 15;
+	private static final int MAX_INVESTMENT_PERIOD = 119;
+	private static final ConcurrentHashMap<Double, double[]> growthFactors =
+			new ConcurrentHashMap<Double, double[]>();
+	private static final int MONTHS_PER_YEAR = 12;
 	private int investmentPeriod;
+	private int monthsAccrued;
 	private double annualInterestRate;
 	private int taxRate;
-	private double taxAmount;
-	private BigDecimal interestIncome;
-
-	// For internal hash code generation only
-	private double bogusAnnualInterestRate;
-	private int bogusInvestmentPeriod;
+	private double maturityFactor;
+	private volatile long balanceAtMaturity;	// In cents
+	private volatile long taxAmount;			// In cents
+	private volatile long interestIncome;		// In cents
+	private transient volatile TaxStatement taxStatement;
 
 	/**
 	 * Default constructor initializes to default values.
@@ -54,8 +75,8 @@ public class GIC extends Account implements Taxable, Serializable {
 			this.investmentPeriod = investmentPeriod;
 		}else{
 			this.investmentPeriod = 1;
-			setBogusInvestmentPeriod(investmentPeriod);
 		}
+		updateDerivedValues();
 	}
 
 	/**
@@ -65,37 +86,7 @@ public class GIC extends Account implements Taxable, Serializable {
 	 * @return	True if the investment period is valid, false otherwise.
 	 */
 	private boolean investmentPeriodIsValid(int investmentPeriod){
-		return (investmentPeriod > 0) && (investmentPeriod < 120);
-	}
-
-	/**
-	 * Sets the bogus investment period, based on provided value
-	 * for hashCode processing. If the investment period causes
-	 * an overflow/underflow, set the bogus period to -1. If the value
-	 * is within Integer range but negative, set the bogus period to
-	 * (bogus period - 2). If the value is within Integer range but
-	 * higher than spec range, divide the bogus period by 2. If the
-	 * value provided is within valid range, set the bogus period
-	 * to default to 0.
-	 *
-	 * @param investmentPeriod
-	 */
-	private void setBogusInvestmentPeriod(int investmentPeriod){
-		if (investmentPeriod < Integer.MIN_VALUE ||
-			investmentPeriod > Integer.MAX_VALUE){
-			this.bogusInvestmentPeriod = -1;
-		}
-		else if (investmentPeriod > Integer.MIN_VALUE &&
-				  investmentPeriod < 1){
-			this.bogusInvestmentPeriod = investmentPeriod - 2;
-		}
-		else if (investmentPeriod > 120 &&
-				 investmentPeriod < Integer.MAX_VALUE){
-			this.bogusInvestmentPeriod = investmentPeriod / 2;
-		}
-		else{
-			this.bogusInvestmentPeriod = 0;
-		}
+		return (investmentPeriod > 0) && (investmentPeriod <= MAX_INVESTMENT_PERIOD);
 	}
 
 	/**
@@ -107,8 +98,8 @@ public class GIC extends Account implements Taxable, Serializable {
 			this.annualInterestRate = interestRate;
 		}else{
 			this.annualInterestRate = 1.25;
-			setBogusAnnualInterestRate(interestRate);
 		}
+		updateDerivedValues();
 	}
 
 	/**
@@ -121,32 +112,6 @@ public class GIC extends Account implements Taxable, Serializable {
 		return (interestRate > 0 && interestRate <= 100);
 	}
 
-	/**
-	 * Sets the bogus annual interest rate to the value
-	 * provided for hashCode generation purposes.
-	 * If the rate is out of range of Double, set value to -5.
-	 * If value is within range but is 0 or less, set bogus
-	 * annual interest rate to (bogus interest rate + 1).
-	 * If the bogus interest rate is a valid interest rate,
-	 * set bogus annual interest rate to 0 as default.
-	 *
-	 * @param interestRate	The interest rate in question
-	 */
-	private void setBogusAnnualInterestRate(double interestRate){
-		if (interestRate < SMALLEST_DOUBLE_VALUE ||
-			interestRate > LARGEST_DOUBLE_VALUE){
-			this.bogusAnnualInterestRate = -1;
-		}
-		else if (interestRate > SMALLEST_DOUBLE_VALUE &&
-				  interestRate <= 0){
-			this.bogusAnnualInterestRate = interestRate +
-										(LARGEST_DOUBLE_VALUE / 4);
-		}
-		else{
-			this.bogusAnnualInterestRate = 0;
-		}
-	}
-
 	/**
 	 * Sets the tax rate, if tax rate is valid.
 	 *
@@ -173,37 +138,137 @@ public class GIC extends Account implements Taxable, Serializable {
 	}
 
 	/**
-	 * Calculate the amount of interest income based
-	 * on maturity
+	 * Recomputes the balance at maturity, the interest income based
+	 * on maturity and the amount of tax. Called whenever the balance,
+	 * the interest rate, the investment period or the tax rate changes.
 	 */
-	private void calculateInterestIncome(){
-		double balanceAtMaturity = this.getBalance();
+	private void updateDerivedValues(){
+		int monthsRemaining = Math.max(this.investmentPeriod * MONTHS_PER_YEAR
+											- this.monthsAccrued, 0);
+		this.maturityFactor = growthFactor(this.annualInterestRate,
+											monthsRemaining / MONTHS_PER_YEAR);
+		if (monthsRemaining % MONTHS_PER_YEAR != 0){
+			this.maturityFactor *= Math.pow(1 + (this.annualInterestRate / 100),
+					(double) (monthsRemaining % MONTHS_PER_YEAR) / MONTHS_PER_YEAR);
+		}
+		this.balanceAtMaturity = Math.round(getCurrentBalanceInCents()
+											* this.maturityFactor);
+		this.interestIncome = this.balanceAtMaturity - getCurrentBalanceInCents();
+		this.taxAmount = Money.percentOf(this.interestIncome, this.taxRate);
+	}
 
-		BigDecimal interestIncome = new BigDecimal(balanceAtMaturity);
-		BigDecimal startingBalanceBigDecimal = new BigDecimal(super.getBalance());
+	/**
+	 * Returns the factor a balance grows by when invested at the annual
+	 * interest rate for the investment period. The factors of every period
+	 * are computed together the first time an interest rate is seen and
+	 * are then shared by all GIC accounts with that rate.
+	 *
+	 * @param annualInterestRate	The annual interest rate in percent
+	 * @param investmentPeriod		The investment period in years
+	 * @return	The growth factor
+	 */
+	private static double growthFactor(double annualInterestRate, int investmentPeriod){
+		double[] factors = growthFactors.get(annualInterestRate);
+		if (factors == null){
+			factors = new double[MAX_INVESTMENT_PERIOD + 1];
+			for (int period = 0; period < factors.length; period++){
+				factors[period] = Math.pow(1 + (annualInterestRate / 100), period);
+			}
+			double[] sharedFactors = growthFactors.putIfAbsent(annualInterestRate, factors);
+			if (sharedFactors != null){
+				factors = sharedFactors;
+			}
+		}
+		return factors[investmentPeriod];
+	}
 
-		interestIncome = interestIncome.subtract(startingBalanceBigDecimal);
+	/**
+	 * Brings the balance at maturity, interest income and amount
+	 * of tax up to date with the new balance.
+	 *
+	 * @override
+	 */
+	@Override
+	protected void balanceChanged(){
+		updateDerivedValues();
+	}
 
-		this.interestIncome = interestIncome;
+	/**
+	 * Works out the balance at maturity, rounded to the nearest cent
+	 * @return	Balance at maturity in cents
+	 */
+	@Override
+	protected long computeBalanceInCents(){
+		return this.balanceAtMaturity;
 	}
 
 	/**
-	 * Calculates the balance at maturity
-	 * @return	Balance at maturity
+	 * Posts one month of interest to the current balance, compounding
+	 * at the annual interest rate, until the investment period is over.
+	 * The caller must hold the account's lock.
+	 *
+	 * @return	The interest posted in cents
 	 */
 	@Override
-	public double getBalance(){
+	public long postMonthlyInterest(){
+		if (this.monthsAccrued >= this.investmentPeriod * MONTHS_PER_YEAR){
+			return 0;
+		}
+		long interest = Math.round(getCurrentBalanceInCents()
+				* (Math.pow(1 + (this.annualInterestRate / 100), 1.0 / MONTHS_PER_YEAR) - 1));
+		this.monthsAccrued++;
+		if (!addToCurrentBalance(interest)){
+			this.monthsAccrued--;
+			return 0;
+		}
+		return interest;
+	}
 
-		BigDecimal startingBalance = new BigDecimal(super.getBalance());
-		BigDecimal interest = new BigDecimal(Math.pow(1
-							+ (this.annualInterestRate / 100),
-								this.investmentPeriod));
+	/**
+	 * Matures the GIC: posts whatever interest is still due for the
+	 * investment period, so the current balance becomes the balance at
+	 * maturity. A GIC that has already matured is left as it is. The
+	 * caller must hold the account's lock.
+	 *
+	 * @return	The interest posted in cents
+	 */
+	long mature(){
+		if (this.monthsAccrued >= this.investmentPeriod * MONTHS_PER_YEAR){
+			return 0;
+		}
+		long interest = this.balanceAtMaturity - getCurrentBalanceInCents();
+		this.monthsAccrued = this.investmentPeriod * MONTHS_PER_YEAR;
+		addToCurrentBalance(interest);
+		return interest;
+	}
 
-		startingBalance = startingBalance.multiply(interest);
+	/**
+	 * Reports if the investment period is over and all of its interest
+	 * has been posted.
+	 *
+	 * @return	True if the GIC has matured
+	 */
+	public boolean hasMatured(){
+		return getMonthsToMaturity() == 0;
+	}
 
-		startingBalance = startingBalance.setScale(2, BigDecimal.ROUND_HALF_UP);
+	/**
+	 * Returns the number of months of the investment period still to run.
+	 *
+	 * @return	The months left until maturity, or 0 once matured
+	 */
+	public int getMonthsToMaturity(){
+		return Math.max(this.investmentPeriod * MONTHS_PER_YEAR - this.monthsAccrued, 0);
+	}
 
-		return startingBalance.doubleValue();
+	/**
+	 * Returns the number of months of interest posted so far.
+	 *
+	 * @return	The months accrued
+	 */
+	@Override
+	public int getMonthsAccrued(){
+		return this.monthsAccrued;
 	}
 
 	/**
@@ -212,14 +277,19 @@ public class GIC extends Account implements Taxable, Serializable {
 	 */
 	@Override
 	public String createTaxStatement() {
-		String interestIncome = currencyFormat.format(this.getInterestIncome());
-
-		StringBuffer output = new StringBuffer("");
-		output.append("Tax rate: " + this.getTaxRate() + "%\n");
-		output.append("Account number: " + this.getAccountNumber() + "\n");
-		output.append("Interest income: " + interestIncome + "\n");
-		output.append("Amount of tax: $" + this.getTaxAmount() + "\n");
-		return output.toString();
+		lock();
+		try {
+			String interestIncome = Money.format(this.interestIncome);
+
+			StringBuffer output = new StringBuffer("");
+			output.append("Tax rate: " + this.getTaxRate() + "%\n");
+			output.append("Account number: " + this.getAccountNumber() + "\n");
+			output.append("Interest income: " + interestIncome + "\n");
+			output.append("Amount of tax: $" + this.getTaxAmount() + "\n");
+			return output.toString();
+		} finally {
+			unlock();
+		}
 	}
 
 	/**
@@ -228,8 +298,7 @@ public class GIC extends Account implements Taxable, Serializable {
 	 * @return	Interest income
 	 */
 	public double getInterestIncome(){
-		calculateInterestIncome();
-		return this.interestIncome.doubleValue();
+		return Money.toDollars(this.interestIncome);
 	}
 
 	/**
@@ -238,8 +307,7 @@ public class GIC extends Account implements Taxable, Serializable {
 	 */
 	@Override
 	public double getTaxAmount() {
-		calculateTax(this.taxRate);
-		return this.taxAmount;
+		return Money.toDollars(this.taxAmount);
 	}
 
 	/**
@@ -249,17 +317,37 @@ public class GIC extends Account implements Taxable, Serializable {
 	 */
 	@Override
 	public void calculateTax(int taxRate) {
-		setTaxRate(taxRate);
-		calculateInterestIncome();
-
-		//Decimal Formatting
-		BigDecimal taxRateBigDecimal = new BigDecimal((double) this.taxRate / 100);
-		BigDecimal tax = this.interestIncome;
-		tax = tax.multiply(taxRateBigDecimal);
-
-		tax = tax.setScale(2, BigDecimal.ROUND_HALF_UP);
+		lock();
+		try {
+			setTaxRate(taxRate);
+			updateDerivedValues();
+			refreshBalance();
+		} finally {
+			unlock();
+		}
+	}
 
-		this.taxAmount = tax.doubleValue();
+	/**
+	 * Returns the tax statement of the account as a compact record.
+	 * The statement is kept and handed out again until the account
+	 * changes, which is noticed by comparing account versions.
+	 *
+	 * @return	The tax statement
+	 */
+	@Override
+	public TaxStatement getTaxStatement(){
+		TaxStatement statement = this.taxStatement;
+		if (statement == null || statement.getAccountVersion() != getVersion()){
+			lock();
+			try {
+				statement = new TaxStatement(this, this.taxRate, this.interestIncome,
+						this.taxAmount, getVersion());
+				this.taxStatement = statement;
+			} finally {
+				unlock();
+			}
+		}
+		return statement;
 	}
 
 	/**
@@ -270,6 +358,54 @@ public class GIC extends Account implements Taxable, Serializable {
 		return this.taxRate;
 	}
 
+	/**
+	 * Writes the account in the compact wire format. The values
+	 * at maturity are not written; they are derived again when
+	 * the account is read.
+	 *
+	 * @param out				The stream to write the account to
+	 * @throws IOException		If the account could not be written
+	 * @override
+	 */
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException{
+		lock();
+		try {
+			super.writeExternal(out);
+			out.writeInt(this.investmentPeriod);
+			out.writeDouble(this.annualInterestRate);
+			out.writeInt(this.taxRate);
+			out.writeInt(this.monthsAccrued);
+		} finally {
+			unlock();
+		}
+	}
+
+	/**
+	 * Reads the account from the compact wire format.
+	 *
+	 * @param in				The stream to read the account from
+	 * @throws IOException		If the account could not be read
+	 * @override
+	 */
+	@Override
+	public void readExternal(ObjectInput in) throws IOException{
+		super.readExternal(in);
+		this.investmentPeriod = in.readInt();
+		this.annualInterestRate = in.readDouble();
+		this.taxRate = in.readInt();
+		// Version 1 predates monthly accrual, so no interest has been posted
+		this.monthsAccrued = (getWireFormatVersionRead() >= 2) ? in.readInt() : 0;
+		if (!investmentPeriodIsValid(this.investmentPeriod)){
+			throw new InvalidObjectException("Invalid investment period");
+		}
+		if (this.monthsAccrued < 0){
+			throw new InvalidObjectException("Invalid number of months accrued");
+		}
+		updateDerivedValues();
+		refreshBalance();
+	}
+
 	/**
 	 * Returns a string containing details of
 	 * the GIC account.
@@ -284,26 +420,41 @@ public class GIC extends Account implements Taxable, Serializable {
 	 */
 	@Override
 	public String toString(){
-		StringBuffer output = new StringBuffer("");
-		String balanceAtMaturity = currencyFormat.format(getBalance());
-		BigDecimal interestIncome = new BigDecimal(getInterestIncome())
-									.setScale(2, BigDecimal.ROUND_HALF_UP);
-		BigDecimal annualInterestRate = new BigDecimal(this.annualInterestRate).setScale(2, BigDecimal.ROUND_HALF_UP);
-
-		output.append(super.toString());
-		output.append("Type: " + ACCOUNT_TYPE + "\n");
-		output.append("Annual interest Rate: " + annualInterestRate + "%\n");
-		output.append(getPeriodOfInvestmentString());
-		output.append("Interest income at Maturity: " + interestIncome + "\n");
-		output.append("Balance at Maturity: " + balanceAtMaturity + "\n");
-
-		return output.toString();
+		lock();
+		try {
+			StringBuffer output = new StringBuffer("");
+			String balanceAtMaturity = Money.format(this.balanceAtMaturity);
+			BigDecimal interestIncome = BigDecimal.valueOf(this.interestIncome, 2);
+			BigDecimal annualInterestRate = new BigDecimal(this.annualInterestRate).setScale(2, BigDecimal.ROUND_HALF_UP);
+
+			output.append(super.toString());
+			output.append("Type: " + ACCOUNT_TYPE + "\n");
+			output.append("Annual interest Rate: " + annualInterestRate + "%\n");
+			output.append(getPeriodOfInvestmentString());
+			output.append("Interest income at Maturity: " + interestIncome + "\n");
+			output.append("Balance at Maturity: " + balanceAtMaturity + "\n");
+
+			return output.toString();
+		} finally {
+			unlock();
+		}
 	}
 
 	public int getPeriodOfInvestment(){
 		return this.investmentPeriod;
 	}
 
+	/**
+	 * Returns the account type.
+	 *
+	 * @return	The account type
+	 * @override
+	 */
+	@Override
+	public String getAccountType(){
+		return ACCOUNT_TYPE;
+	}
+
 	/**
 	 * Generates the appropriate string for toString() when
 	 * printing period of investment
@@ -323,13 +474,21 @@ public class GIC extends Account implements Taxable, Serializable {
 
 	/**
 	 * Deposits the user specified amount, if the amount is valid.
+	 * @return	True if the deposit is successful
 	 * @override
 	 */
 	@Override
-	public void deposit(double amount){
-		if (transactionIsValid(amount)) {
-			super.setCurrentBalance(super.getBalance() + amount);
+	public boolean deposit(double amount){
+		long amountInCents = Money.toCents(amount);
+		if (amountInCents > 0 && transactionIsValid(amount)) {
+			lock();
+			try {
+				return addToCurrentBalance(amountInCents);
+			} finally {
+				unlock();
+			}
 		}
+		return false;
 	}
 
 	/**
@@ -352,82 +511,6 @@ public class GIC extends Account implements Taxable, Serializable {
 		return false;
 	}
 
-	/**
-	 * Returns true if the incoming object is the same as
-	 * the current GIC account, false otherwise.
-	 *
-	 * @param	foreignObject	The incoming object to be
-	 * 							inspected
-	 *
-	 * @return	True, if foreignObject is the same as this
-	 * 			account. Otherwise return false.
-	 */
-	@Override
-	public boolean equals(Object foreignObject){
-		if (foreignObject instanceof GIC){
-			GIC account = (GIC) foreignObject;
-			return (this.hashCode() == account.hashCode());
-		}
-		return false;
-	}
-
-	/**
-	 * Generates ad returns a unique GIC hash code
-	 *
-	 * @return	A 32bit unique hash code
-	 * @override
-	 */
-	@Override
-	public int hashCode(){
-		int hash = 18;
-		hash *= 10 + super.hashCode();
-		hash *= getPeriodOfInvestmentHashCode();
-		hash += getAnnualInterestRateHashCode();
-		return hash;
-	}
-
-	/**
-	 * Generates the periods of investment hash
-	 * code.
-	 *
-	 * <p>
-	 * If a bogus investment period was provided,
-	 * use the bogus rate to generate the hash
-	 * code. Otherwise, use the valid period of
-	 * investment.
-	 *
-	 * @return
-	 */
-	private int getPeriodOfInvestmentHashCode(){
-		if (this.bogusInvestmentPeriod != 0){
-			return this.bogusInvestmentPeriod;
-		}
-		else{
-			return getPeriodOfInvestment();
-		}
-	}
-
-	/**
-	 * Generates Annual interest rate hash code
-	 * for hashCode()
-	 *
-	 * <p>
-	 * If a bogus annual interest rate was provided,
-	 * use the bogus rate to generate the hash
-	 * code. Otherwise, use the valid annual
-	 * interest rate.
-	 *
-	 * @return	Annual interest rate hash code
-	 */
-	private double getAnnualInterestRateHashCode(){
-		if (this.bogusAnnualInterestRate != 0){
-			return this.bogusAnnualInterestRate;
-		}
-		else{
-			return this.annualInterestRate * 10000;
-		}
-	}
-
 	/**
 	 * Returns the annual interest rate.
 	 * @return	The annual interest rate
@@ -0,0 +1,494 @@
+/**
+ * This class runs the month-end interest accrual of a bank: it posts one
+ * month of interest to the current balance of every interest-bearing
+ * account.
+ *
+ * The accounts are split into a fixed number of partitions by the hash of
+ * their account number, and the partitions are worked on in parallel on a
+ * fork-join pool. A partition is posted in small batches of accounts, each
+ * under a short critical section: the locks of the batch are taken in account
+ * number order, the interest is posted, and the locks are released before the
+ * balance index is brought up to date. The journal is never written while
+ * account locks are held. Searches read the published snapshot and never
+ * wait for the accrual, and only the accounts of the batch being posted are
+ * held up.
+ *
+ * The journal is a text file that starts with the period and the number of
+ * partitions. Before a partition is posted, a line per account records the
+ * months of interest it had accrued, and these lines are forced to disk.
+ * Once the partition is posted, a line per account posted and a line
+ * marking the partition done are added:
+ * <pre>
+ * period 2017-01 partitions 64
+ * months 12 D1234 3
+ * post 12 D1234 7500
+ * done 12 1 7500
+ * </pre>
+ * A run that resumes a journal first writes a resume line. Running the
+ * accrual again for the same period with the same journal skips the
+ * partitions already done, and in a partition that was cut short it skips
+ * the accounts that accrued a month since their months line was written, so
+ * an interrupted accrual resumes from where it stopped and no account is
+ * paid twice. The postings of a partition are durable in the bank's log, and
+ * every line of the journal is forced to disk, before the partition is
+ * marked done.
+ *
+ * @author Alex Wang
+ * @version 1.2
+ */
+package edu.btp400.w2017.common;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public final class InterestAccrual {
+
+  private static final int DEFAULT_PARTITIONS = 64;
+  private static final int BATCH_SIZE = 32;
+  private static final long PROGRESS_INTERVAL = 1000;     // In milliseconds
+
+  private final Bank bank;
+  private final File journalFile;
+  private final String period;
+  private final int partitions;
+  private final int parallelism;
+
+  private FileOutputStream journalStream;
+  private Writer journal;
+  private HashMap<String, Integer> monthsBefore;
+  private PrintStream progress;
+  private long started;
+  private final AtomicLong lastReport = new AtomicLong();
+  private final AtomicInteger partitionsDone = new AtomicInteger();
+  private final AtomicInteger accountsPosted = new AtomicInteger();
+  private final AtomicLong interestPosted = new AtomicLong();
+
+  /**
+   * Creates an accrual with the default number of partitions that uses
+   * every processor but one.
+   *
+   * @param bank              The bank whose accounts earn interest
+   * @param journalFile       The journal of the period
+   * @param period            The period being accrued, such as "2017-01"
+   */
+  public InterestAccrual(Bank bank, File journalFile, String period) {
+    this(bank, journalFile, period, DEFAULT_PARTITIONS,
+        Runtime.getRuntime().availableProcessors() - 1);
+  }
+
+  /**
+   * Creates an accrual. When an existing journal is resumed, the number of
+   * partitions recorded in it is used instead of the one given.
+   *
+   * @param bank              The bank whose accounts earn interest
+   * @param journalFile       The journal of the period
+   * @param period            The period being accrued, such as "2017-01"
+   * @param partitions        The number of partitions, at least one
+   * @param parallelism       The number of worker threads, at least one
+   */
+  public InterestAccrual(Bank bank, File journalFile, String period, int partitions,
+      int parallelism) {
+    this.bank = bank;
+    this.journalFile = journalFile;
+    this.period = period;
+    this.partitions = Math.max(partitions, 1);
+    this.parallelism = Math.max(parallelism, 1);
+  }
+
+  /**
+   * Runs the accrual, skipping the partitions the journal shows as done.
+   *
+   * @param progress          The stream to report progress to, or null
+   * @return                  The interest posted by this run, in cents
+   * @throws IOException      If the journal could not be read or written, or
+   *                          belongs to another period
+   */
+  public long run(PrintStream progress) throws IOException {
+    HashSet<Integer> done = new HashSet<Integer>();
+    monthsBefore = new HashMap<String, Integer>();
+    int partitionCount = readJournal(done, monthsBefore);
+
+    ArrayList<ArrayList<Account>> pending = partition(partitionCount, done);
+    this.progress = progress;
+    this.started = System.currentTimeMillis();
+    this.lastReport.set(started);
+
+    journalStream = new FileOutputStream(journalFile, true);
+    journal = new BufferedWriter(new OutputStreamWriter(journalStream, "UTF-8"));
+    ForkJoinPool pool = new ForkJoinPool(parallelism,
+        new LowPriorityWorkers("interest-accrual"), null, false);
+    try {
+      if (journalFile.length() == 0) {
+        journal.write("period " + period + " partitions " + partitionCount + "\n");
+      } else {
+        // Ends any record left cut short, so it is not joined to the next one
+        journal.write(journalEndsWithLine() ? "resume\n" : "\nresume\n");
+      }
+      journal.flush();
+      ArrayList<PartitionPosting> tasks = new ArrayList<PartitionPosting>();
+      for (int i = 0; i < pending.size(); i++) {
+        if (pending.get(i) != null) {
+          tasks.add(new PartitionPosting(i, pending.get(i)));
+        }
+      }
+      pool.invoke(new AllPartitions(tasks));
+    } catch (JournalException e) {
+      throw e.getCause();
+    } finally {
+      pool.shutdown();
+      journal.close();
+    }
+
+    if (progress != null) {
+      progress.println(report("Interest accrual for " + period + " done"));
+    }
+    return interestPosted.get();
+  }
+
+  /**
+   * Reads the journal, if there is one, and collects the partitions done and
+   * the months each account had accrued before its partition was first
+   * posted. A partition is only taken as done if its done line is whole and
+   * its total matches the post lines of its record, so a record cut short by
+   * a crash is not taken for a finished one.
+   *
+   * @param done              The set to add the partitions done to
+   * @param monthsBefore      The map to add the months of each account to
+   * @return                  The number of partitions of the period
+   * @throws IOException      If the journal could not be read or belongs to
+   *                          another period
+   */
+  private int readJournal(HashSet<Integer> done, HashMap<String, Integer> monthsBefore)
+      throws IOException {
+    if (!journalFile.exists() || journalFile.length() == 0) {
+      return partitions;
+    }
+    BufferedReader in = new BufferedReader(new InputStreamReader(
+        new FileInputStream(journalFile), "UTF-8"));
+    try {
+      String[] header = in.readLine().split(" ");
+      if (header.length != 4 || !header[0].equals("period") || !header[1].equals(period)) {
+        throw new IOException("Journal " + journalFile + " is not for period " + period);
+      }
+      int partitionCount = Integer.parseInt(header[3]);
+      int recordPartition = -1;
+      long recordTotal = 0;
+      String line;
+      while ((line = in.readLine()) != null) {
+        String[] fields = line.split(" ");
+        try {
+          if (fields.length == 4 && fields[0].equals("post")) {
+            int partition = Integer.parseInt(fields[1]);
+            if (partition != recordPartition) {
+              recordPartition = partition;
+              recordTotal = 0;
+            }
+            recordTotal += Long.parseLong(fields[3]);
+            continue;
+          }
+          if (fields.length == 4 && fields[0].equals("done")) {
+            int partition = Integer.parseInt(fields[1]);
+            long total = (partition == recordPartition) ? recordTotal : 0;
+            if (Long.parseLong(fields[3]) == total) {
+              done.add(partition);
+            }
+          }
+          if (fields.length == 4 && fields[0].equals("months")) {
+            // A later run rewrites the months it read, so the first line wins
+            Integer months = Integer.valueOf(fields[3]);
+            if (!monthsBefore.containsKey(fields[2])) {
+              monthsBefore.put(fields[2], months);
+            }
+          }
+        } catch (NumberFormatException e) {
+          // A line cut short by a crash; the record it belongs to is not done
+        }
+        recordPartition = -1;
+        recordTotal = 0;
+      }
+      return partitionCount;
+    } catch (NumberFormatException e) {
+      throw new IOException("Journal " + journalFile + " has a damaged header");
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Reports if the journal ends with a whole line.
+   *
+   * @return                  True if the last character is a line break
+   * @throws IOException      If the journal could not be read
+   */
+  private boolean journalEndsWithLine() throws IOException {
+    RandomAccessFile file = new RandomAccessFile(journalFile, "r");
+    try {
+      file.seek(file.length() - 1);
+      return file.read() == '\n';
+    } finally {
+      file.close();
+    }
+  }
+
+  /**
+   * Splits the interest-bearing accounts of the current snapshot into
+   * partitions by the hash of their account number. Each partition keeps
+   * the account number order of the snapshot.
+   *
+   * @param partitionCount    The number of partitions
+   * @param done              The partitions to leave out
+   * @return                  The accounts of each partition, or null for the
+   *                          partitions left out
+   */
+  private ArrayList<ArrayList<Account>> partition(int partitionCount, HashSet<Integer> done) {
+    ArrayList<ArrayList<Account>> pending = new ArrayList<ArrayList<Account>>(partitionCount);
+    for (int i = 0; i < partitionCount; i++) {
+      pending.add(done.contains(i) ? null : new ArrayList<Account>());
+    }
+    Iterator<Account> accounts = bank.iterateAccounts();
+    while (accounts.hasNext()) {
+      Account account = accounts.next();
+      if (account instanceof InterestBearing) {
+        ArrayList<Account> partition = pending.get(partitionOf(account, partitionCount));
+        if (partition != null) {
+          partition.add(account);
+        }
+      }
+    }
+    return pending;
+  }
+
+  /**
+   * Returns the partition an account belongs to. String hash codes are the
+   * same on every run, so an account always falls in the same partition.
+   *
+   * @param account           The account
+   * @param partitionCount    The number of partitions
+   * @return                  The partition of the account
+   */
+  static int partitionOf(Account account, int partitionCount) {
+    return (account.getAccountNumber().hashCode() & Integer.MAX_VALUE) % partitionCount;
+  }
+
+  /**
+   * Builds a progress line with the elapsed time and throughput.
+   *
+   * @param message           The start of the line
+   * @return                  The progress line
+   */
+  private String report(String message) {
+    long elapsed = System.currentTimeMillis() - started;
+    long perSecond = (elapsed > 0) ? accountsPosted.get() * 1000L / elapsed : accountsPosted.get();
+    return message + ": " + partitionsDone.get() + " partitions, " + accountsPosted.get()
+        + " accounts, " + Money.format(interestPosted.get()) + " posted in " + elapsed
+        + " ms (" + perSecond + " accounts/s)";
+  }
+
+  /**
+   * Posts the interest of one partition and records it in the journal. The
+   * months each account has accrued are recorded first, then the accounts
+   * are posted batch by batch, and then the postings and the done line are
+   * written.
+   *
+   * @param partition         The partition number
+   * @param accounts          The accounts of the partition, in account number order
+   * @throws IOException      If the journal could not be written. If it fails
+   *                          before any posting, nothing is posted; after, the
+   *                          postings stand and a resumed run will not repeat them
+   */
+  private void post(int partition, ArrayList<Account> accounts) throws IOException {
+    int count = accounts.size();
+    int[] months = new int[count];
+    StringBuilder record = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      Account account = accounts.get(i);
+      Integer recorded = monthsBefore.get(account.getAccountNumber());
+      if (recorded != null) {
+        months[i] = recorded.intValue();
+      } else {
+        account.lock();
+        try {
+          months[i] = ((InterestBearing) account).getMonthsAccrued();
+        } finally {
+          account.unlock();
+        }
+      }
+      record.append("months " + partition + " " + account.getAccountNumber() + " "
+          + months[i] + "\n");
+    }
+    writeJournal(record);
+
+    record.setLength(0);
+    long total = 0;
+    for (int from = 0; from < count; from += BATCH_SIZE) {
+      total += postBatch(partition, accounts, months, from, Math.min(from + BATCH_SIZE, count),
+          record);
+    }
+    record.append("done " + partition + " " + count + " " + total + "\n");
+    writeJournal(record);
+
+    partitionsDone.incrementAndGet();
+    accountsPosted.addAndGet(count);
+    interestPosted.addAndGet(total);
+
+    long now = System.currentTimeMillis();
+    long last = lastReport.get();
+    if (progress != null && now - last >= PROGRESS_INTERVAL
+        && lastReport.compareAndSet(last, now)) {
+      progress.println(report("Interest accrual for " + period));
+    }
+  }
+
+  /**
+   * Posts the interest of a batch of the accounts of a partition while
+   * holding their locks. The new state of the accounts posted is logged and
+   * the balance index brought up to date before the locks are released, and
+   * the log is made durable after, so a partition is never marked done in
+   * the journal before its postings are in the bank's log. An account that
+   * accrued a month since its months were recorded was posted by an earlier
+   * run and is skipped, as is an account removed from the bank.
+   *
+   * @param partition         The partition number
+   * @param accounts          The accounts of the partition, in account number order
+   * @param months            The months each account had accrued before posting
+   * @param from              The first account of the batch
+   * @param to                The account after the last one of the batch
+   * @param record            The record to add a post line per account posted to
+   * @return                  The interest posted, in cents
+   */
+  private long postBatch(int partition, ArrayList<Account> accounts, int[] months, int from,
+      int to, StringBuilder record) {
+    ArrayList<Account> changed = new ArrayList<Account>();
+    long[] previousBalances = new long[to - from];
+    long total = 0;
+    long logged = 0;
+    int locked = from;
+
+    try {
+      for (; locked < to; locked++) {
+        accounts.get(locked).lock();
+      }
+      for (int i = from; i < to; i++) {
+        Account account = accounts.get(i);
+        InterestBearing interestBearing = (InterestBearing) account;
+        if (interestBearing.getMonthsAccrued() != months[i] || !bank.holds(account)) {
+          continue;
+        }
+        long balance = account.getBalanceInCents();
+        long posted = interestBearing.postMonthlyInterest();
+        if (posted != 0) {
+          record.append("post " + partition + " " + account.getAccountNumber() + " " + posted
+              + "\n");
+          total += posted;
+        }
+        // The months accrued are part of the state logged, even with no interest
+        if (interestBearing.getMonthsAccrued() != months[i]) {
+          previousBalances[changed.size()] = balance;
+          changed.add(account);
+        }
+      }
+      if (!changed.isEmpty()) {
+        long[] balances = new long[changed.size()];
+        System.arraycopy(previousBalances, 0, balances, 0, balances.length);
+        logged = bank.logBalancesChanged(changed.toArray(new Account[changed.size()]), balances);
+      }
+    } finally {
+      while (locked > from) {
+        accounts.get(--locked).unlock();
+      }
+    }
+    bank.awaitBalancesLogged(logged);
+    return total;
+  }
+
+  /**
+   * Appends lines to the journal and forces them to disk.
+   *
+   * @param lines             The lines to append
+   * @throws IOException      If the journal could not be written
+   */
+  private void writeJournal(CharSequence lines) throws IOException {
+    synchronized (journal) {
+      journal.append(lines);
+      journal.flush();
+      journalStream.getFD().sync();
+    }
+  }
+
+  /**
+   * Posts every pending partition, each as a task of its own.
+   */
+  private final class AllPartitions extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ArrayList<PartitionPosting> tasks;
+
+    AllPartitions(ArrayList<PartitionPosting> tasks) {
+      this.tasks = tasks;
+    }
+
+    @Override
+    protected void compute() {
+      invokeAll(tasks);
+    }
+  }
+
+  /**
+   * Posts the interest of one partition.
+   */
+  private final class PartitionPosting extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int partition;
+    private final ArrayList<Account> accounts;
+
+    PartitionPosting(int partition, ArrayList<Account> accounts) {
+      this.partition = partition;
+      this.accounts = accounts;
+    }
+
+    @Override
+    protected void compute() {
+      try {
+        post(partition, accounts);
+      } catch (IOException e) {
+        throw new JournalException(e);
+      }
+    }
+  }
+
+  /**
+   * Carries a journal write failure out of the fork-join pool.
+   */
+  private static final class JournalException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    JournalException(IOException cause) {
+      super(cause);
+    }
+
+    @Override
+    public IOException getCause() {
+      return (IOException) super.getCause();
+    }
+  }
+}
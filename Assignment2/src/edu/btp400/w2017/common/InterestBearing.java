@@ -0,0 +1,17 @@
+/**
+ * An interface for bank accounts that earn interest which can be posted to
+ * their balance month by month (see InterestAccrual).
+ *
+ * Both methods must be called while holding the account's lock.
+ * The months accrued only ever grow, so comparing them before and after
+ * tells if a month of interest was posted.
+ *
+ * @author Alex Wang
+ * @version 0.2
+ */
+package edu.btp400.w2017.common;
+
+interface InterestBearing {
+	long postMonthlyInterest();
+	int getMonthsAccrued();
+}
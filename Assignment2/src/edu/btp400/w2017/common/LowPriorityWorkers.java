@@ -0,0 +1,35 @@
+/**
+ * This class creates the worker threads of the fork-join pools used by the
+ * bank's batch jobs. The workers are named after the job and run at low
+ * priority, so that online requests are served first when processors are
+ * busy.
+ *
+ * @author Alex Wang
+ * @version 1.0
+ */
+package edu.btp400.w2017.common;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+final class LowPriorityWorkers implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+
+  private final String name;
+
+  /**
+   * Creates the factory of a batch job's workers.
+   *
+   * @param name              The name of the job, used to name the workers
+   */
+  LowPriorityWorkers(String name) {
+    this.name = name;
+  }
+
+  @Override
+  public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+    ForkJoinWorkerThread worker =
+        ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+    worker.setName(name + "-" + worker.getPoolIndex());
+    worker.setPriority(Thread.MIN_PRIORITY);
+    return worker;
+  }
+}
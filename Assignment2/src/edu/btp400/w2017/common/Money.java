@@ -0,0 +1,101 @@
+/**
+ * This class holds the helper methods for amounts of money that are stored
+ * as a whole number of cents in a long.
+ *
+ * Accounts keep every balance, charge, income and tax amount in cents so that
+ * arithmetic and comparisons happen on primitives, are exact, and do not
+ * allocate. Amounts only become doubles at the edges of the application,
+ * where users enter them or read them back.
+ *
+ * @author Alex Wang
+ * @version 1.1
+ */
+package edu.btp400.w2017.common;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.NumberFormat;
+import java.util.Locale;
+
+public final class Money {
+
+  /**
+   * Number of cents in one dollar.
+   */
+  public static final long CENTS_PER_DOLLAR = 100;
+
+  /**
+   * Amounts at or above this many dollars are beyond the cent precision of a
+   * double, so they are converted without decimal rounding.
+   */
+  private static final double MAX_EXACT_DOLLARS = 1e13;
+
+  /**
+   * Currency formatter for each thread. NumberFormat is not thread safe, and
+   * keeping one per thread avoids creating a formatter for every account.
+   */
+  private static final ThreadLocal<NumberFormat> currencyFormat =
+      new ThreadLocal<NumberFormat>() {
+        @Override
+        protected NumberFormat initialValue() {
+          return NumberFormat.getCurrencyInstance(Locale.CANADA);
+        }
+      };
+
+  /**
+   * Money only provides static helpers and is never instantiated.
+   */
+  private Money() {
+  }
+
+  /**
+   * Converts an amount in dollars to cents, rounding half up (away from zero)
+   * to the nearest cent.
+   * <p>
+   * The amount is rounded as the decimal it is written as, so 1.005 becomes
+   * 101 cents even though the nearest double is slightly below 1.005. An
+   * amount that is not a number becomes 0 cents.
+   *
+   * @param amount      The amount in dollars
+   * @return            The amount in cents
+   */
+  public static long toCents(double amount) {
+    if (Double.isNaN(amount) || Double.isInfinite(amount)
+        || Math.abs(amount) >= MAX_EXACT_DOLLARS) {
+      return Math.round(amount * CENTS_PER_DOLLAR);
+    }
+    return BigDecimal.valueOf(amount).setScale(2, RoundingMode.HALF_UP)
+        .unscaledValue().longValue();
+  }
+
+  /**
+   * Converts an amount in cents to dollars.
+   *
+   * @param cents       The amount in cents
+   * @return            The amount in dollars
+   */
+  public static double toDollars(long cents) {
+    return (double) cents / CENTS_PER_DOLLAR;
+  }
+
+  /**
+   * Applies a percentage rate to an amount in cents and rounds the result
+   * half up to the nearest cent.
+   *
+   * @param cents       The amount in cents
+   * @param rate        The rate in percent
+   * @return            rate percent of the amount, in cents
+   */
+  public static long percentOf(long cents, double rate) {
+    return Math.round(cents * rate / 100);
+  }
+
+  /**
+   * Formats an amount in cents as Canadian currency, e.g. $1,234.56.
+   *
+   * @param cents       The amount in cents
+   * @return            The formatted amount
+   */
+  public static String format(long cents) {
+    return currencyFormat.get().format(toDollars(cents));
+  }
+}
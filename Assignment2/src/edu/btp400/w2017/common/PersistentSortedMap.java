@@ -0,0 +1,411 @@
+/**
+ * This class is an immutable sorted map. Adding or removing a key returns a
+ * new map instead of changing this one, and the new map shares every entry
+ * it did not change with the old one.
+ *
+ * The entries are kept in a balanced (AVL) binary search tree whose nodes
+ * are never changed once made. Adding or removing a key copies only the
+ * nodes on the path from the root to that key, so it costs time and memory
+ * in proportion to the logarithm of the size of the map, and every earlier
+ * version of the map stays valid and unchanged. A map may be read by any
+ * number of threads without locking.
+ *
+ * The Map methods that change a map throw UnsupportedOperationException.
+ *
+ * @author Alex Wang
+ * @version 1.0
+ */
+package edu.btp400.w2017.common;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+final class PersistentSortedMap<K extends Comparable<? super K>, V> extends AbstractMap<K, V> {
+
+  private static final PersistentSortedMap<?, ?> EMPTY = new PersistentSortedMap<String, Object>(null);
+
+  private final Node<K, V> root;
+
+  private PersistentSortedMap(Node<K, V> root) {
+    this.root = root;
+  }
+
+  /**
+   * Returns the empty map.
+   *
+   * @return                  A map with no entries
+   */
+  @SuppressWarnings("unchecked")
+  static <K extends Comparable<? super K>, V> PersistentSortedMap<K, V> empty() {
+    // The empty map holds no keys or values, so it serves any type
+    return (PersistentSortedMap<K, V>) EMPTY;
+  }
+
+  /**
+   * Returns a map holding the entries of this one and the key mapped to the
+   * value, replacing any value the key had.
+   *
+   * @param key               The key, not null
+   * @param value             The value
+   * @return                  The new map, or this map if the key already
+   *                          had the same value
+   */
+  PersistentSortedMap<K, V> plus(K key, V value) {
+    Node<K, V> newRoot = put(root, key, value);
+    return (newRoot == root) ? this : new PersistentSortedMap<K, V>(newRoot);
+  }
+
+  /**
+   * Returns a map holding the entries of this one except the key.
+   *
+   * @param key               The key to leave out
+   * @return                  The new map, or this map if it does not hold
+   *                          the key
+   */
+  PersistentSortedMap<K, V> minus(K key) {
+    Node<K, V> newRoot = remove(root, key);
+    if (newRoot == root) {
+      return this;
+    }
+    return (newRoot == null) ? PersistentSortedMap.<K, V>empty()
+        : new PersistentSortedMap<K, V>(newRoot);
+  }
+
+  @Override
+  public V get(Object key) {
+    Node<K, V> node = find(key);
+    return (node != null) ? node.value : null;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return find(key) != null;
+  }
+
+  @Override
+  public int size() {
+    return size(root);
+  }
+
+  @Override
+  public Set<Map.Entry<K, V>> entrySet() {
+    return new AbstractSet<Map.Entry<K, V>>() {
+      @Override
+      public Iterator<Map.Entry<K, V>> iterator() {
+        return new Entries<K, V>(root, null, false, null, false);
+      }
+
+      @Override
+      public int size() {
+        return PersistentSortedMap.this.size();
+      }
+    };
+  }
+
+  /**
+   * Returns the entries whose keys lie in a range, in key order.
+   *
+   * @param fromKey           The low end of the range, or null for no low end
+   * @param fromInclusive     True if the low end is in the range
+   * @param toKey             The high end of the range, or null for no high end
+   * @param toInclusive       True if the high end is in the range
+   * @return                  The entries in the range
+   */
+  Iterable<Map.Entry<K, V>> entriesBetween(final K fromKey, final boolean fromInclusive,
+      final K toKey, final boolean toInclusive) {
+    return new Iterable<Map.Entry<K, V>>() {
+      @Override
+      public Iterator<Map.Entry<K, V>> iterator() {
+        return new Entries<K, V>(root, fromKey, fromInclusive, toKey, toInclusive);
+      }
+    };
+  }
+
+  /**
+   * Returns the entries whose keys are greater than, or equal to if
+   * inclusive, a key, in key order. Finding the first of them takes time in
+   * proportion to the logarithm of the size of the map.
+   *
+   * @param fromKey           The low end of the range
+   * @param inclusive         True if the low end is in the range
+   * @return                  The entries from the key on
+   */
+  Iterable<Map.Entry<K, V>> tailEntries(K fromKey, boolean inclusive) {
+    return entriesBetween(fromKey, inclusive, null, false);
+  }
+
+  /**
+   * Returns the values of the keys greater than, or equal to if inclusive,
+   * a key, in key order.
+   *
+   * @param fromKey           The low end of the range
+   * @param inclusive         True if the low end is in the range
+   * @return                  The values from the key on
+   */
+  Iterable<V> tailValues(K fromKey, boolean inclusive) {
+    return valuesOf(tailEntries(fromKey, inclusive));
+  }
+
+  /**
+   * Returns the values of the keys in a range, in key order.
+   *
+   * @param fromKey           The low end of the range
+   * @param fromInclusive     True if the low end is in the range
+   * @param toKey             The high end of the range
+   * @param toInclusive       True if the high end is in the range
+   * @return                  The values in the range
+   */
+  Iterable<V> subValues(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+    return valuesOf(entriesBetween(fromKey, fromInclusive, toKey, toInclusive));
+  }
+
+  /**
+   * Returns the values of some entries.
+   *
+   * @param entries           The entries
+   * @return                  Their values, in the same order
+   */
+  private static <K, V> Iterable<V> valuesOf(final Iterable<Map.Entry<K, V>> entries) {
+    return new Iterable<V>() {
+      @Override
+      public Iterator<V> iterator() {
+        final Iterator<Map.Entry<K, V>> iterator = entries.iterator();
+        return new Iterator<V>() {
+          @Override
+          public boolean hasNext() {
+            return iterator.hasNext();
+          }
+
+          @Override
+          public V next() {
+            return iterator.next().getValue();
+          }
+        };
+      }
+    };
+  }
+
+  /**
+   * Finds the node of a key.
+   *
+   * @param key               The key
+   * @return                  The node or null if the key is not in the map
+   */
+  private Node<K, V> find(Object key) {
+    if (key == null) {
+      return null;
+    }
+    @SuppressWarnings("unchecked")
+    K sortedKey = (K) key;  // A key of another type fails in compareTo
+    Node<K, V> node = root;
+    while (node != null) {
+      int comparison = sortedKey.compareTo(node.key);
+      if (comparison == 0) {
+        return node;
+      }
+      node = (comparison < 0) ? node.left : node.right;
+    }
+    return null;
+  }
+
+  /**
+   * Returns a tree holding the nodes of a tree and the key mapped to the
+   * value. Only the nodes on the path to the key are copied.
+   */
+  private static <K extends Comparable<? super K>, V> Node<K, V> put(Node<K, V> node,
+      K key, V value) {
+    if (node == null) {
+      return new Node<K, V>(key, value, null, null);
+    }
+    int comparison = key.compareTo(node.key);
+    if (comparison < 0) {
+      Node<K, V> left = put(node.left, key, value);
+      return (left == node.left) ? node : balance(node.key, node.value, left, node.right);
+    }
+    if (comparison > 0) {
+      Node<K, V> right = put(node.right, key, value);
+      return (right == node.right) ? node : balance(node.key, node.value, node.left, right);
+    }
+    return (node.value == value) ? node : new Node<K, V>(key, value, node.left, node.right);
+  }
+
+  /**
+   * Returns a tree holding the nodes of a tree except the key. Only the
+   * nodes on the path to the key and to its successor are copied.
+   */
+  private static <K extends Comparable<? super K>, V> Node<K, V> remove(Node<K, V> node,
+      K key) {
+    if (node == null) {
+      return null;
+    }
+    int comparison = key.compareTo(node.key);
+    if (comparison < 0) {
+      Node<K, V> left = remove(node.left, key);
+      return (left == node.left) ? node : balance(node.key, node.value, left, node.right);
+    }
+    if (comparison > 0) {
+      Node<K, V> right = remove(node.right, key);
+      return (right == node.right) ? node : balance(node.key, node.value, node.left, right);
+    }
+    if (node.left == null) {
+      return node.right;
+    }
+    if (node.right == null) {
+      return node.left;
+    }
+    Node<K, V> successor = node.right;
+    while (successor.left != null) {
+      successor = successor.left;
+    }
+    return balance(successor.key, successor.value, node.left,
+        remove(node.right, successor.key));
+  }
+
+  /**
+   * Makes a node over two subtrees whose heights differ by at most two,
+   * rotating it so that they differ by at most one.
+   */
+  private static <K, V> Node<K, V> balance(K key, V value, Node<K, V> left, Node<K, V> right) {
+    int leftHeight = height(left);
+    int rightHeight = height(right);
+    if (leftHeight > rightHeight + 1) {
+      if (height(left.left) >= height(left.right)) {
+        return new Node<K, V>(left.key, left.value, left.left,
+            new Node<K, V>(key, value, left.right, right));
+      }
+      Node<K, V> middle = left.right;
+      return new Node<K, V>(middle.key, middle.value,
+          new Node<K, V>(left.key, left.value, left.left, middle.left),
+          new Node<K, V>(key, value, middle.right, right));
+    }
+    if (rightHeight > leftHeight + 1) {
+      if (height(right.right) >= height(right.left)) {
+        return new Node<K, V>(right.key, right.value,
+            new Node<K, V>(key, value, left, right.left), right.right);
+      }
+      Node<K, V> middle = right.left;
+      return new Node<K, V>(middle.key, middle.value,
+          new Node<K, V>(key, value, left, middle.left),
+          new Node<K, V>(right.key, right.value, middle.right, right.right));
+    }
+    return new Node<K, V>(key, value, left, right);
+  }
+
+  private static int height(Node<?, ?> node) {
+    return (node != null) ? node.height : 0;
+  }
+
+  private static int size(Node<?, ?> node) {
+    return (node != null) ? node.size : 0;
+  }
+
+  /**
+   * A node of the tree. Nodes are never changed once made.
+   */
+  private static final class Node<K, V> implements Map.Entry<K, V> {
+    final K key;
+    final V value;
+    final Node<K, V> left;
+    final Node<K, V> right;
+    final int height;
+    final int size;
+
+    Node(K key, V value, Node<K, V> left, Node<K, V> right) {
+      this.key = key;
+      this.value = value;
+      this.left = left;
+      this.right = right;
+      this.height = Math.max(height(left), height(right)) + 1;
+      this.size = size(left) + size(right) + 1;
+    }
+
+    @Override
+    public K getKey() {
+      return key;
+    }
+
+    @Override
+    public V getValue() {
+      return value;
+    }
+
+    @Override
+    public V setValue(V value) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof Map.Entry)) {
+        return false;
+      }
+      Map.Entry<?, ?> entry = (Map.Entry<?, ?>) other;
+      return key.equals(entry.getKey())
+          && (value == null ? entry.getValue() == null : value.equals(entry.getValue()));
+    }
+
+    @Override
+    public int hashCode() {
+      return key.hashCode() ^ (value == null ? 0 : value.hashCode());
+    }
+
+    @Override
+    public String toString() {
+      return key + "=" + value;
+    }
+  }
+
+  /**
+   * Walks the nodes whose keys lie in a range, in key order. The path to the
+   * next node is kept on a stack, so the walk needs no parent links.
+   */
+  private static final class Entries<K extends Comparable<? super K>, V>
+      implements Iterator<Map.Entry<K, V>> {
+    private final ArrayDeque<Node<K, V>> path = new ArrayDeque<Node<K, V>>();
+    private final K toKey;
+    private final boolean toInclusive;
+
+    Entries(Node<K, V> root, K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+      this.toKey = toKey;
+      this.toInclusive = toInclusive;
+      Node<K, V> node = root;
+      while (node != null) {
+        int comparison = (fromKey == null) ? 1 : node.key.compareTo(fromKey);
+        if (comparison > 0 || (comparison == 0 && fromInclusive)) {
+          path.push(node);
+          node = node.left;
+        } else {
+          node = node.right;
+        }
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (path.isEmpty()) {
+        return false;
+      }
+      if (toKey == null) {
+        return true;
+      }
+      int comparison = path.peek().key.compareTo(toKey);
+      return comparison < 0 || (comparison == 0 && toInclusive);
+    }
+
+    @Override
+    public Map.Entry<K, V> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      Node<K, V> node = path.pop();
+      for (Node<K, V> child = node.right; child != null; child = child.left) {
+        path.push(child);
+      }
+      return node;
+    }
+  }
+}
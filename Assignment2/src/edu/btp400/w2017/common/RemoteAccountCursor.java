@@ -0,0 +1,27 @@
+/**
+ * Remote Method Invocation interface for a cursor over the accounts found
+ * by a bank search.
+ *
+ * <p>
+ * A cursor is opened on the server by one of the openAccountCursor methods of
+ * RemoteBank. The client pulls the accounts in batches with next(int) while the
+ * server walks its index one account at a time, so neither side holds the
+ * whole result. The client should call close() when it is done. A cursor left
+ * idle for too long is closed by the server, after which its methods throw
+ * java.rmi.NoSuchObjectException.
+ *
+ * <p>
+ * The methods declared by this interface are: next(int batchSize), close().
+ *
+ * @author Alex Wang
+ */
+
+package edu.btp400.w2017.common;
+import java.rmi.*;
+
+public interface RemoteAccountCursor extends Remote {
+
+	public Account[] next(int batchSize) throws RemoteException;
+
+	public void close() throws RemoteException;
+}
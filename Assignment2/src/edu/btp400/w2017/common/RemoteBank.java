@@ -3,7 +3,20 @@
  *
  * <p>
  * The methods declared by this interface are: addAccount(Account account), deleteAccount(string accountNumber),
- * searchAccountByBalance(double balance), searchAccountByName(string accountName).
+ * searchAccountByBalance(double balance), searchAccountByName(string accountName),
+ * getAccount(String accountNumber), searchAccountsByBalanceRange(double minBalance, double maxBalance),
+ * searchByLastNamePrefix(String prefix, int limit), deposit(String accountNumber, double amount),
+ * withdraw(String accountNumber, double amount), addAccounts(List<Account> accounts),
+ * deleteAccounts(List<String> accountNumbers), execute(List<BankOperation> operations),
+ * transfer(String fromAccountNumber, String toAccountNumber, double amount),
+ * getAccounts(int limit, String pageToken),
+ * searchByAccountName(String accountName, int limit, String pageToken),
+ * searchAccountByBalance(double balance, int limit, String pageToken),
+ * openAccountCursor(), openAccountCursorByName(String accountName),
+ * openAccountCursorByBalance(double balance),
+ * searchSummariesByAccountName(String accountName, Set<AccountSummary.Field> fields),
+ * searchSummariesByBalance(double balance, Set<AccountSummary.Field> fields),
+ * getTaxStatements(String holderName).
  *
  * @author Alex Wang
  */
@@ -11,6 +24,8 @@
 package edu.btp400.w2017.common;
 import java.rmi.*;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 
 public interface RemoteBank extends Remote {
 
@@ -21,4 +36,40 @@ public interface RemoteBank extends Remote {
 	public ArrayList<Account> searchAccountByBalance(double balance) throws RemoteException, NoAccountException;
 
 	public Account[] searchByAccountName (String accountName) throws RemoteException, NoAccountException;
+
+	public Account getAccount(String accountNumber) throws RemoteException, NoAccountException;
+
+	public ArrayList<Account> searchAccountsByBalanceRange(double minBalance, double maxBalance) throws RemoteException, NoAccountException;
+
+	public Account[] searchByLastNamePrefix(String prefix, int limit) throws RemoteException, NoAccountException;
+
+	public TransactionResult deposit(String accountNumber, double amount) throws RemoteException, NoAccountException;
+
+	public TransactionResult withdraw(String accountNumber, double amount) throws RemoteException, NoAccountException;
+
+	public boolean[] addAccounts(List<Account> accounts) throws RemoteException;
+
+	public Account[] deleteAccounts(List<String> accountNumbers) throws RemoteException;
+
+	public boolean execute(List<BankOperation> operations) throws RemoteException;
+
+	public TransactionResult[] transfer(String fromAccountNumber, String toAccountNumber, double amount) throws RemoteException, NoAccountException;
+
+	public AccountPage getAccounts(int limit, String pageToken) throws RemoteException;
+
+	public AccountPage searchByAccountName(String accountName, int limit, String pageToken) throws RemoteException, NoAccountException;
+
+	public AccountPage searchAccountByBalance(double balance, int limit, String pageToken) throws RemoteException, NoAccountException;
+
+	public RemoteAccountCursor openAccountCursor() throws RemoteException;
+
+	public RemoteAccountCursor openAccountCursorByName(String accountName) throws RemoteException;
+
+	public RemoteAccountCursor openAccountCursorByBalance(double balance) throws RemoteException;
+
+	public AccountSummary[] searchSummariesByAccountName(String accountName, Set<AccountSummary.Field> fields) throws RemoteException, NoAccountException;
+
+	public AccountSummary[] searchSummariesByBalance(double balance, Set<AccountSummary.Field> fields) throws RemoteException, NoAccountException;
+
+	public TaxStatement[] getTaxStatements(String holderName) throws RemoteException, NoAccountException;
 }
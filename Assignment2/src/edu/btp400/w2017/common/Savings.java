@@ -3,29 +3,43 @@
  * The Savings class emulates a savings bank account by extending the Account
  * superclass. It is taxable and therefore, implements the taxable interface.
  * It implements the following methods from Taxable interface: calculateTax(),
- * createTaxStatement(), and getTaxAmount().
+ * createTaxStatement(), getTaxAmount(), and getTaxStatement().
+ * It also earns interest that can be posted to the balance each month
+ * (see InterestBearing).
+ *
+ * The interest income of the year is the interest already posted in it,
+ * plus the interest the current balance earns over the months of the year
+ * still to be posted. The final balance adds only the second part, since
+ * the posted interest is already in the current balance. The interest
+ * income, the final balance and the amount of tax are derived from the
+ * balance, the interest posted, the annual interest rate and the tax rate.
+ * They are computed once whenever one of those changes, so reading them
+ * does not modify the account.
  *
  * @author awang05
- * @version 1.4
+ * @version 1.8
  */
 package edu.btp400.w2017.common;
-import java.math.BigDecimal;
-import java.math.MathContext;
-import java.math.RoundingMode;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.io.Serializable;
 
- public class Savings extends Account implements Taxable, Serializable {
+ public class Savings extends Account implements Taxable, InterestBearing, Serializable {
 
 	private static final long serialVersionUID = -8017038525303298031L;
 
 	public static final String ACCOUNT_TYPE = "SAV";
+	private static final int MONTHS_PER_YEAR = 12;
 	private double annualInterestRate;
-	private BigDecimal interestIncome;
-	private BigDecimal taxAmount;
+	private long interestPosted;				// In cents, this interest year
+	private int monthsAccrued;					// Since the account was opened
+	private volatile long projectedInterest;	// In cents, to the end of the year
+	private volatile long interestIncome;		// In cents
+	private volatile long taxAmount;			// In cents
 	private int taxRate;
-
-	// For internal hash code generation only
-	private double bogusAnnualInterestRate;
+	private transient volatile TaxStatement taxStatement;
 
 	/**
 	 * Default constructor
@@ -46,8 +60,6 @@ import java.io.Serializable;
 	public Savings(String fullName, String accountNumber, double startingBalance, double interestRate) {
 		super(fullName, accountNumber, startingBalance);
 		setAnnualInterestRate(interestRate);
-		setInterestIncome(0);
-		setTaxAmount(0);
 		this.calculateTax(15);
 	}
 
@@ -55,7 +67,8 @@ import java.io.Serializable;
 	 * Validates the incoming interest rate.
 	 * If interest rate is 0.1 or higher, set the user
 	 * specified interest rates. Otherwise, default to
-	 * 0.1 as interest rate.
+	 * 0.1 as interest rate. The interest income and the
+	 * amount of tax are then recomputed.
 	 *
 	 * @param interestRate		The interest rate being set
 	 */
@@ -64,8 +77,8 @@ import java.io.Serializable;
 			this.annualInterestRate = interestRate;
 		}else{
 			this.annualInterestRate = 0.1;
-			setBogusAnnualInterestRate(interestRate);
 		}
+		updateDerivedValues();
 	}
 
 	/**
@@ -86,27 +99,6 @@ import java.io.Serializable;
 		return false;
 	}
 
-	/**
-	 * Saves the bogus interest rate. If overflow/underflow occurs,
-	 * set the rate to -1. If the rate does not overflow or underflow,
-	 * set it to the specified bogus rate. If the interest rate is
-	 * actually valid, set the bogus interest rate to 0 to indicate
-	 * no errors.
-	 *
-	 * @param interestRate		The bogus interest rate being set
-	 */
-	private void setBogusAnnualInterestRate(double interestRate){
-		if (interestRate < SMALLEST_DOUBLE_VALUE || interestRate > LARGEST_DOUBLE_VALUE){
-			this.bogusAnnualInterestRate = -1;
-		}
-		else if (interestRate > SMALLEST_DOUBLE_VALUE && interestRate < 0.1){
-			this.bogusAnnualInterestRate = interestRate;
-		}
-		else{
-			this.bogusAnnualInterestRate = 0;
-		}
-	}
-
 	/**
 	 * Returns the annual interest rate of the savings account.
 	 *
@@ -117,17 +109,14 @@ import java.io.Serializable;
 	}
 
 	/**
-	 * Validates the income. If income is valid, set the income.
-	 * Otherwise, set the income to default value of 0.
+	 * Returns the account type.
 	 *
-	 * @param income		The income being set
+	 * @return	The account type
+	 * @override
 	 */
-	private void setInterestIncome(double income){
-		if (income > 0 && income < LARGEST_DOUBLE_VALUE){
-			this.interestIncome = BigDecimal.valueOf(income);
-		}else{
-			this.interestIncome = BigDecimal.valueOf(0);
-		}
+	@Override
+	public String getAccountType(){
+		return ACCOUNT_TYPE;
 	}
 
 	/**
@@ -136,21 +125,7 @@ import java.io.Serializable;
 	 * @return	Interest income
 	 */
 	public double getInterestIncome(){
-		return this.interestIncome.doubleValue();
-	}
-
-	/**
-	 * Validates the amount of tax being set. If valid, set
-	 * the amount of tax. Otherwise, set the amount to default value 0.
-	 *
-	 * @param amount	The taxable amount
-	 */
-	private void setTaxAmount(double amount){
-		if (amount > 0 && amount < LARGEST_DOUBLE_VALUE){
-			this.taxAmount = BigDecimal.valueOf(amount);
-		}else{
-			this.taxAmount = BigDecimal.valueOf(0);
-		}
+		return Money.toDollars(this.interestIncome);
 	}
 
 	/**
@@ -160,8 +135,7 @@ import java.io.Serializable;
 	 */
 	@Override
 	public double getTaxAmount() {
-		calculateAmountOfTax();
-		return this.taxAmount.doubleValue();
+		return Money.toDollars(this.taxAmount);
 	}
 
 	/**
@@ -172,11 +146,36 @@ import java.io.Serializable;
 	 */
 	@Override
 	public void calculateTax(int taxRate) {
-		setTaxRate(taxRate);
+		lock();
+		try {
+			setTaxRate(taxRate);
+			updateDerivedValues();
+			refreshBalance();
+		} finally {
+			unlock();
+		}
+	}
+
+	/**
+	 * Recomputes the interest income and the amount of tax after the
+	 * balance, the annual interest rate or the tax rate has changed.
+	 */
+	private void updateDerivedValues(){
 		calculateInterestIncome();
 		calculateAmountOfTax();
 	}
 
+	/**
+	 * Brings the interest income and the amount of tax up to date
+	 * with the new balance.
+	 *
+	 * @override
+	 */
+	@Override
+	protected void balanceChanged(){
+		updateDerivedValues();
+	}
+
 	/**
 	 * Validates the incoming tax rate. If valid, set the tax
 	 * rate of the savings account.
@@ -191,6 +190,29 @@ import java.io.Serializable;
 		}
 	}
 
+	/**
+	 * Returns the tax statement of the account as a compact record.
+	 * The statement is kept and handed out again until the account
+	 * changes, which is noticed by comparing account versions.
+	 *
+	 * @return	The tax statement
+	 */
+	@Override
+	public TaxStatement getTaxStatement(){
+		TaxStatement statement = this.taxStatement;
+		if (statement == null || statement.getAccountVersion() != getVersion()){
+			lock();
+			try {
+				statement = new TaxStatement(this, this.taxRate, this.interestIncome,
+						this.taxAmount, getVersion());
+				this.taxStatement = statement;
+			} finally {
+				unlock();
+			}
+		}
+		return statement;
+	}
+
 	/**
 	 * Returns the current tax rate.
 	 *
@@ -201,17 +223,43 @@ import java.io.Serializable;
 	}
 
 	/**
-	 * Calculates interest income based on tax rate set
-	 * and save the results to interestIncome field.
+	 * Calculates interest income based on the annual interest rate
+	 * and save the results to interestIncome field, rounded to the
+	 * nearest cent. The interest posted this year is counted as it
+	 * was posted, and the current balance is projected over the
+	 * months of the year left to post only.
 	 *
 	 */
 	private void calculateInterestIncome(){
-		BigDecimal taxRate = new BigDecimal((this.annualInterestRate / 100));
-		BigDecimal currentBalance = new BigDecimal(super.getBalance());
+		long fullYear = Money.percentOf(getCurrentBalanceInCents(), this.annualInterestRate);
+		this.projectedInterest = Math.round((double) fullYear
+				* (MONTHS_PER_YEAR - getMonthsAccruedThisYear()) / MONTHS_PER_YEAR);
+		this.interestIncome = this.interestPosted + this.projectedInterest;
+	}
 
-		currentBalance = currentBalance.multiply(taxRate);
+	/**
+	 * Returns the number of months of the current interest year
+	 * already posted. A year counts as current until its twelfth
+	 * month is posted and the next posting starts a new one.
+	 *
+	 * @return	The months posted this year, from 0 to 12
+	 */
+	private int getMonthsAccruedThisYear(){
+		if (this.monthsAccrued == 0){
+			return 0;
+		}
+		return (this.monthsAccrued - 1) % MONTHS_PER_YEAR + 1;
+	}
 
-		this.interestIncome = currentBalance;
+	/**
+	 * Returns the number of months of interest posted since the
+	 * account was opened.
+	 *
+	 * @return	The months accrued
+	 */
+	@Override
+	public int getMonthsAccrued(){
+		return this.monthsAccrued;
 	}
 
 	/**
@@ -222,12 +270,39 @@ import java.io.Serializable;
 	 *
 	 */
 	private void calculateAmountOfTax(){
-		if (this.interestIncome.doubleValue() > 50){
-			BigDecimal taxRate = new BigDecimal((double) this.taxRate / 100);
-			this.taxAmount = this.interestIncome.multiply(taxRate);
+		if (this.interestIncome > Money.toCents(50)){
+			this.taxAmount = Money.percentOf(this.interestIncome, this.taxRate);
 		} else {
-			this.taxAmount = BigDecimal.valueOf(0);
+			this.taxAmount = 0;
+		}
+	}
+
+	/**
+	 * Posts one month of interest, a twelfth of the annual interest
+	 * rate applied to the current balance, to the current balance.
+	 * The month counts as accrued even if it earns nothing. The first
+	 * posting after a full year starts a new interest year.
+	 * The caller must hold the account's lock.
+	 *
+	 * @return	The interest posted in cents
+	 */
+	@Override
+	public long postMonthlyInterest(){
+		long interest = Math.max(Math.round(getCurrentBalanceInCents()
+				* this.annualInterestRate / 1200), 0);
+		long postedBefore = this.interestPosted;
+		if (this.monthsAccrued % MONTHS_PER_YEAR == 0){
+			this.interestPosted = 0;
+		}
+		this.monthsAccrued++;
+		this.interestPosted += interest;
+		// Also brings the interest income and final balance up to date
+		if (!addToCurrentBalance(interest)){
+			this.monthsAccrued--;
+			this.interestPosted = postedBefore;
+			return 0;
 		}
+		return interest;
 	}
 
 	/**
@@ -237,36 +312,73 @@ import java.io.Serializable;
 	 */
 	@Override
 	public String createTaxStatement() {
-		// Formatting currency
-		String interestIncome = currencyFormat.format(this.getInterestIncome());
-		String amountOfTax = currencyFormat.format(this.getTaxAmount());
-
-		StringBuffer output = new StringBuffer("");
-		output.append("Tax rate: " + this.getTaxRate() + "%\n");
-		output.append("Account number: " + this.getAccountNumber() + "\n");
-		output.append("Interest income: " + interestIncome + "\n");
-		output.append("Amount of tax: " + amountOfTax + "\n");
-		return output.toString();
+		lock();
+		try {
+			// Formatting currency
+			String interestIncome = Money.format(this.interestIncome);
+			String amountOfTax = Money.format(this.taxAmount);
+
+			StringBuffer output = new StringBuffer("");
+			output.append("Tax rate: " + this.getTaxRate() + "%\n");
+			output.append("Account number: " + this.getAccountNumber() + "\n");
+			output.append("Interest income: " + interestIncome + "\n");
+			output.append("Amount of tax: " + amountOfTax + "\n");
+			return output.toString();
+		} finally {
+			unlock();
+		}
 	}
 
 
 	/**
-	 * Return true if the incoming object has the same contents as
-	 * this savings account.
+	 * Writes the account in the compact wire format. The interest
+	 * income and amount of tax are not written; they are derived
+	 * again when the account is read. The interest posted this year
+	 * and the months accrued are written from version 3 on.
 	 *
-	 * @return	True, if incoming object is the same savings account.
-	 * 			False, otherwise.
+	 * @param out				The stream to write the account to
+	 * @throws IOException		If the account could not be written
 	 * @override
 	 */
 	@Override
-	public boolean equals (Object foreignObject){
-		if (foreignObject instanceof Savings){
-			Savings savingsAccount = (Savings) foreignObject;
-
-			return (this.hashCode() == savingsAccount.hashCode());
+	public void writeExternal(ObjectOutput out) throws IOException{
+		lock();
+		try {
+			super.writeExternal(out);
+			out.writeDouble(this.annualInterestRate);
+			out.writeInt(this.taxRate);
+			out.writeLong(this.interestPosted);
+			out.writeInt(this.monthsAccrued);
+		} finally {
+			unlock();
 		}
+	}
 
-		return false;
+	/**
+	 * Reads the account from the compact wire format.
+	 *
+	 * @param in				The stream to read the account from
+	 * @throws IOException		If the account could not be read
+	 * @override
+	 */
+	@Override
+	public void readExternal(ObjectInput in) throws IOException{
+		super.readExternal(in);
+		this.annualInterestRate = in.readDouble();
+		this.taxRate = in.readInt();
+		if (getWireFormatVersionRead() >= 3){
+			this.interestPosted = in.readLong();
+			this.monthsAccrued = in.readInt();
+		}else{
+			// Older versions predate monthly posting, so none has been posted
+			this.interestPosted = 0;
+			this.monthsAccrued = 0;
+		}
+		if (this.interestPosted < 0 || this.monthsAccrued < 0){
+			throw new InvalidObjectException("Invalid interest posted");
+		}
+		updateDerivedValues();
+		refreshBalance();
 	}
 
 	/**
@@ -283,66 +395,37 @@ import java.io.Serializable;
 	 */
 	@Override
 	public String toString(){
-
-		// Formatting Currency
-		String interestIncome = currencyFormat.format(this.getInterestIncome());
-		String finalBalance = currencyFormat.format(this.getBalance());
-
-		StringBuffer output = new StringBuffer("");
-		output.append(super.toString());
-		output.append("Type: " + Savings.ACCOUNT_TYPE + "\n");
-		output.append("Interest Rate: " + this.getAnnualInterestRate() + "%\n");
-		output.append("Interest Income: " + interestIncome + "\n");
-		output.append("Final Balance: " + finalBalance + "\n");
-		return output.toString();
+		lock();
+		try {
+
+			// Formatting Currency
+			String interestIncome = Money.format(this.interestIncome);
+			String finalBalance = Money.format(this.getBalanceInCents());
+
+			StringBuffer output = new StringBuffer("");
+			output.append(super.toString());
+			output.append("Type: " + Savings.ACCOUNT_TYPE + "\n");
+			output.append("Interest Rate: " + this.getAnnualInterestRate() + "%\n");
+			output.append("Interest Income: " + interestIncome + "\n");
+			output.append("Final Balance: " + finalBalance + "\n");
+			return output.toString();
+		} finally {
+			unlock();
+		}
 	}
 
 	/**
-	 * Computes the most to date interest income, then
-	 * calculates and returns the final balance.
+	 * Works out the final balance in cents, which is the current
+	 * balance plus the interest it will earn over the rest of the
+	 * interest year. Interest already posted is in the current
+	 * balance, so it is not added again.
 	 *
-	 * @return The final balance
+	 * @return The final balance in cents
 	 * @override
 	 */
 	@Override
-	public double getBalance(){
-		this.calculateInterestIncome();
-		double startingBalance = super.getBalance();
-		BigDecimal finalBalance = new BigDecimal(startingBalance);
-		finalBalance = finalBalance.add(this.interestIncome);
-		
-		return finalBalance.doubleValue();
-	}
-
-	/**
-	 * Generates a unique hash code for the savings account.
-	 *
-	 * @return	The unique hashCode for the savings account
-	 */
-	@Override
-	public int hashCode(){
-		int hash = 52;
-		hash *= 8 + super.hashCode();
-		hash += this.getInterestIncome();
-		hash += 500 + this.getTaxAmount();
-		hash += this.getTaxRate();
-		hash += this.getInterestRateHashCode();
-
-		return hash;
-	}
-
-	/**
-	 * Generates and returns the interest rate hash code
-	 *
-	 * @return Interest rate hashCode
-	 */
-	public double getInterestRateHashCode(){
-		if (this.bogusAnnualInterestRate < 0){ 		//A bogus interest rate has been received
-			return (this.bogusAnnualInterestRate * -1) * 20000;
-		}
-		else{
-			return this.getAnnualInterestRate();
-		}
+	protected long computeBalanceInCents(){
+		return getCurrentBalanceInCents() + this.projectedInterest;
 	}
 
 }
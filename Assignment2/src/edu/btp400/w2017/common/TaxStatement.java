@@ -0,0 +1,114 @@
+/**
+ * This class holds the tax statement of a taxable account: the account
+ * holder's name, the account number and type, the tax rate, the interest
+ * income and the amount of tax.
+ *
+ * Statements are worked out on the bank server (see Bank.getTaxStatements())
+ * and sent to the client as these few values instead of whole accounts. A
+ * taxable account keeps the statement it last produced together with the
+ * account version it was produced at, and hands it out again until the
+ * account changes.
+ *
+ * @author Alex Wang
+ * @version 1.0
+ */
+package edu.btp400.w2017.common;
+import java.io.Serializable;
+
+public final class TaxStatement implements Serializable {
+
+  private static final long serialVersionUID = -2470911953488302618L;
+
+  private final String fullName;
+  private final String accountNumber;
+  private final String accountType;
+  private final int taxRate;
+  private final long interestIncome;    // In cents
+  private final long taxAmount;         // In cents
+  private final transient long accountVersion;
+
+  /**
+   * Creates the tax statement of an account.
+   *
+   * @param account           The account the statement is for
+   * @param taxRate           The tax rate in percent
+   * @param interestIncome    The interest income in cents
+   * @param taxAmount         The amount of tax in cents
+   * @param accountVersion    The version of the account the values were read at
+   */
+  TaxStatement(Account account, int taxRate, long interestIncome, long taxAmount,
+      long accountVersion) {
+    this.fullName = account.getFullName();
+    this.accountNumber = account.getAccountNumber();
+    this.accountType = account.getAccountType();
+    this.taxRate = taxRate;
+    this.interestIncome = interestIncome;
+    this.taxAmount = taxAmount;
+    this.accountVersion = accountVersion;
+  }
+
+  /**
+   * Retrieves the account holder's full name.
+   *
+   * @return    The full name
+   */
+  public String getFullName() { return fullName; }
+
+  /**
+   * Retrieves the account number.
+   *
+   * @return    The account number
+   */
+  public String getAccountNumber() { return accountNumber; }
+
+  /**
+   * Retrieves the account type.
+   *
+   * @return    The account type
+   */
+  public String getAccountType() { return accountType; }
+
+  /**
+   * Retrieves the tax rate.
+   *
+   * @return    The tax rate in percent
+   */
+  public int getTaxRate() { return taxRate; }
+
+  /**
+   * Retrieves the interest income.
+   *
+   * @return    The interest income
+   */
+  public double getInterestIncome() { return Money.toDollars(interestIncome); }
+
+  /**
+   * Retrieves the amount of tax.
+   *
+   * @return    The amount of tax
+   */
+  public double getTaxAmount() { return Money.toDollars(taxAmount); }
+
+  /**
+   * Retrieves the version of the account the statement was produced at.
+   * Only meaningful on the server.
+   *
+   * @return    The account version
+   */
+  long getAccountVersion() { return accountVersion; }
+
+  /**
+   * Returns the statement in the same layout as createTaxStatement().
+   *
+   * @return    The tax statement in a formatted string
+   */
+  @Override
+  public String toString() {
+    StringBuffer output = new StringBuffer("");
+    output.append("Tax rate: " + taxRate + "%\n");
+    output.append("Account number: " + accountNumber + "\n");
+    output.append("Interest income: " + Money.format(interestIncome) + "\n");
+    output.append("Amount of tax: " + Money.format(taxAmount) + "\n");
+    return output.toString();
+  }
+}
@@ -2,7 +2,7 @@
  * A taxable interface for bank accounts that are taxable
  *
  * @author awang05
- * @version 0.2
+ * @version 0.3
  */
 package edu.btp400.w2017.common;
 
@@ -10,4 +10,5 @@ interface Taxable {
 	public void calculateTax(int taxRate);
 	double getTaxAmount();
 	String createTaxStatement();
+	TaxStatement getTaxStatement();
 }
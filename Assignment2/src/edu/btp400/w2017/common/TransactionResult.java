@@ -0,0 +1,79 @@
+/**
+ * This class holds the outcome of a deposit or withdrawal made through the
+ * bank: the account number, whether the transaction went through, and the
+ * balance of the account right after it.
+ *
+ * It is what the bank server sends back for a remote deposit or withdrawal,
+ * so the client learns the new balance without receiving the whole account.
+ *
+ * @author Alex Wang
+ * @version 1.0
+ */
+package edu.btp400.w2017.common;
+import java.io.Serializable;
+
+public final class TransactionResult implements Serializable {
+
+  private static final long serialVersionUID = 3419071287565823144L;
+
+  private final String accountNumber;
+  private final boolean successful;
+  private final long balance;           // In cents
+
+  /**
+   * Creates the result of a transaction.
+   *
+   * @param accountNumber     The account number of the account used
+   * @param successful        True if the transaction went through
+   * @param balance           The balance of the account after the
+   *                          transaction, in cents
+   */
+  public TransactionResult(String accountNumber, boolean successful, long balance) {
+    this.accountNumber = accountNumber;
+    this.successful = successful;
+    this.balance = balance;
+  }
+
+  /**
+   * Retrieves the account number of the account used.
+   *
+   * @return    The account number
+   */
+  public String getAccountNumber() { return accountNumber; }
+
+  /**
+   * Reports if the transaction went through. A declined transaction leaves
+   * the balance unchanged.
+   *
+   * @return    True if the transaction was successful
+   */
+  public boolean isSuccessful() { return successful; }
+
+  /**
+   * Retrieves the balance of the account after the transaction.
+   *
+   * @return    The balance of the account
+   */
+  public double getBalance() { return Money.toDollars(balance); }
+
+  /**
+   * Retrieves the balance of the account after the transaction in cents.
+   *
+   * @return    The balance of the account in cents
+   */
+  public long getBalanceInCents() { return balance; }
+
+  /**
+   * Returns the outcome of the transaction and the new balance.
+   *
+   * @return    The transaction result in a formatted string
+   */
+  @Override
+  public String toString() {
+    StringBuffer output = new StringBuffer("");
+    output.append("Number: " + accountNumber + "\n");
+    output.append("Status: " + (successful ? "Completed" : "Declined") + "\n");
+    output.append("Balance: " + Money.format(balance) + "\n");
+    return output.toString();
+  }
+}
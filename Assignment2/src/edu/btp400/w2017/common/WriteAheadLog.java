@@ -0,0 +1,519 @@
+/**
+ * This class is the write-ahead log of a Bank: every change to the accounts
+ * is appended to a file, and made durable, before the bank acknowledges it.
+ * A bank created on a log (see Bank(String, WriteAheadLog)) replays the log
+ * first, so it starts out with the accounts it had when it last stopped.
+ *
+ * Each record holds the entries of one change to the bank, such as an
+ * account opened, an account closed, or the new state of an account after a
+ * deposit. The state is the whole account, so replaying it puts the account
+ * back exactly, including the service charges and transaction records of a
+ * chequing account. The entries of a transfer or a transaction are written
+ * as one record, so they are replayed together or not at all. Records are
+ * framed by their length and a CRC-32 checksum; a record cut short by a
+ * crash is found when the log is opened and cut off the end of the file.
+ *
+ * Records of one account are appended while its lock is held, so they are in
+ * the log in the order the changes were made. Two sync policies are offered:
+ * SYNC writes and forces each record to disk as it is appended, one disk
+ * flush per change. GROUP_COMMIT only buffers the record; a writer waiting
+ * for its record to be durable becomes the leader, and writes and forces
+ * every record buffered so far. Writers arriving meanwhile wait for the
+ * leader without holding any lock; when it is done, those whose records it
+ * wrote return, and one of the others leads the next flush with every record
+ * buffered during the last one, so concurrent writers share a single flush.
+ *
+ * The state of an account is keyed by its account number. The bank only
+ * logs the state of an account it still holds, while holding the account's
+ * lock, and removes an account under the same lock, so the state of an
+ * account closed is always before its removal and never replayed onto an
+ * account opened later under the same number.
+ *
+ * The log is never compacted, so it grows with every change made.
+ *
+ * @author Alex Wang
+ * @version 1.2
+ */
+package edu.btp400.w2017.common;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+public final class WriteAheadLog {
+
+  private static final int MAGIC = 0x42574c31;          // "BWL1"
+  private static final int HEADER_SIZE = 4;
+  private static final int RECORD_HEADER_SIZE = 8;      // Length and checksum
+  private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+
+  private static final byte ADD = 1;
+  private static final byte STATE = 2;
+  private static final byte REMOVE = 3;
+
+  /**
+   * When appended records are forced to disk.
+   */
+  public enum SyncPolicy {
+    /** Each record is forced to disk as it is appended. */
+    SYNC,
+    /** Records are forced to disk together by the first writer to wait. */
+    GROUP_COMMIT
+  }
+
+  private final File file;
+  private final SyncPolicy policy;
+  private final RandomAccessFile raf;
+  private final FileChannel channel;
+  private final Object flushLock = new Object();
+  private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+  private long appendedRecords;
+  private volatile long durableRecords;
+  private volatile long syncs;
+  private volatile IOException failure;
+  private boolean flushing;             // Guarded by the flush lock
+
+  /**
+   * Opens a log, creating the file if it does not exist. A record cut short
+   * at the end of the file is removed.
+   *
+   * @param file              The file of the log
+   * @param policy            When appended records are forced to disk
+   * @throws IOException      If the file could not be opened or is not a log
+   */
+  public WriteAheadLog(File file, SyncPolicy policy) throws IOException {
+    this.file = file;
+    this.policy = policy;
+    this.raf = new RandomAccessFile(file, "rw");
+    this.channel = raf.getChannel();
+    try {
+      if (raf.length() < HEADER_SIZE) {
+        raf.setLength(0);
+        raf.writeInt(MAGIC);
+        channel.force(true);
+      } else if (raf.readInt() != MAGIC) {
+        throw new IOException(file + " is not a write-ahead log");
+      }
+      long end = scan();
+      if (end < raf.length()) {
+        channel.truncate(end);
+        channel.force(true);
+      }
+      channel.position(end);
+    } catch (IOException e) {
+      raf.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Retrieves the sync policy of the log.
+   *
+   * @return                  The sync policy
+   */
+  public SyncPolicy getSyncPolicy() { return policy; }
+
+  /**
+   * Retrieves the number of times the log has been forced to disk since it
+   * was opened.
+   *
+   * @return                  The number of disk flushes
+   */
+  public long getSyncCount() { return syncs; }
+
+  /**
+   * Writes every buffered record and closes the log.
+   *
+   * @throws IOException      If the records could not be written
+   */
+  public void close() throws IOException {
+    try {
+      forceUpTo(Long.MAX_VALUE);
+    } catch (IllegalStateException e) {
+      if (failure != null) {
+        throw failure;
+      }
+      throw e;
+    } finally {
+      raf.close();
+    }
+  }
+
+  /**
+   * Replays every record of the log into a snapshot being built: accounts
+   * are added and removed, and accounts whose state was logged are put in
+   * that state and moved in the balance index.
+   *
+   * @param next              The snapshot being built
+   * @return                  The number of records replayed
+   * @throws IOException      If the log could not be read
+   */
+  long replay(BankSnapshot next) throws IOException {
+    synchronized (flushLock) {
+      long position = channel.position();
+      try {
+        return replayRecords(next);
+      } finally {
+        channel.position(position);
+      }
+    }
+  }
+
+  /**
+   * Appends a record. Under the SYNC policy the record is durable when this
+   * returns; otherwise it is buffered until awaitDurable() is called.
+   *
+   * @param record            The record to append
+   * @return                  The sequence number of the record, or 0 if the
+   *                          record is empty and was not appended
+   * @throws IllegalStateException if the log could not be written
+   */
+  long append(Record record) {
+    if (record.entries == 0) {
+      return 0;
+    }
+    if (policy == SyncPolicy.SYNC) {
+      // The flush lock is held throughout, so each record is flushed alone.
+      synchronized (flushLock) {
+        long sequence = bufferRecord(record);
+        forceUpTo(sequence);
+        return sequence;
+      }
+    }
+    return bufferRecord(record);
+  }
+
+  /**
+   * Adds a record to the buffer, framed by its length and checksum.
+   *
+   * @param record            The record to buffer
+   * @return                  The sequence number of the record
+   */
+  private long bufferRecord(Record record) {
+    byte[] payload = record.toByteArray();
+    CRC32 crc = new CRC32();
+    crc.update(payload);
+
+    synchronized (this) {
+      checkFailure();
+      DataOutputStream out = new DataOutputStream(buffer);
+      try {
+        out.writeInt(payload.length);
+        out.writeInt((int) crc.getValue());
+        out.write(payload);
+      } catch (IOException e) {
+        throw new IllegalStateException("Could not buffer a log record", e);
+      }
+      return ++appendedRecords;
+    }
+  }
+
+  /**
+   * Waits until a record is durable. If no other writer is forcing the log
+   * to disk, the caller writes and forces every record buffered so far.
+   *
+   * @param sequence          The sequence number of the record
+   * @throws IllegalStateException if the log could not be written
+   */
+  void awaitDurable(long sequence) {
+    if (durableRecords < sequence) {
+      forceUpTo(sequence);
+    }
+  }
+
+  /**
+   * Makes every record up to a sequence number durable. While a leader is
+   * flushing, the caller waits for it; if its record is still not durable
+   * afterwards, it becomes the leader of the next flush.
+   *
+   * @param sequence          The sequence number of the last record needed
+   * @throws IllegalStateException if the log could not be written
+   */
+  private void forceUpTo(long sequence) {
+    synchronized (flushLock) {
+      while (flushing) {
+        if (durableRecords >= sequence) {
+          return;
+        }
+        try {
+          flushLock.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IllegalStateException("Interrupted waiting for write-ahead log " + file, e);
+        }
+      }
+      if (durableRecords >= sequence) {
+        return;
+      }
+      flushing = true;
+    }
+    try {
+      flush();
+    } finally {
+      synchronized (flushLock) {
+        flushing = false;
+        flushLock.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Writes and forces every buffered record. Must only be called by the
+   * leader of a flush. The flush lock, when held, is always taken before
+   * the lock of the buffer. A failure is kept, and every later append or wait fails
+   * with it, as the log no longer matches the bank.
+   */
+  private void flush() {
+    byte[] records;
+    long upTo;
+    synchronized (this) {
+      checkFailure();
+      if (buffer.size() == 0) {
+        return;
+      }
+      records = buffer.toByteArray();
+      buffer = new ByteArrayOutputStream();
+      upTo = appendedRecords;
+    }
+    try {
+      ByteBuffer bytes = ByteBuffer.wrap(records);
+      while (bytes.hasRemaining()) {
+        channel.write(bytes);
+      }
+      channel.force(false);
+      syncs++;
+      durableRecords = upTo;
+    } catch (IOException e) {
+      failure = e;
+      checkFailure();
+    }
+  }
+
+  /**
+   * Fails if writing the log has failed before.
+   */
+  private void checkFailure() {
+    if (failure != null) {
+      throw new IllegalStateException("Write-ahead log " + file + " failed", failure);
+    }
+  }
+
+  /**
+   * Reads every record from the start of the log and applies it to a
+   * snapshot being built.
+   *
+   * @param next              The snapshot being built
+   * @return                  The number of records replayed
+   * @throws IOException      If the log could not be read
+   */
+  private long replayRecords(BankSnapshot next) throws IOException {
+    long count = 0;
+    channel.position(HEADER_SIZE);
+    DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Channels.newInputStream(channel)));
+    byte[] payload;
+    while ((payload = readRecord(in)) != null) {
+      applyRecord(payload, next);
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * Finds the end of the last whole record of the log.
+   *
+   * @return                  The position after the last whole record
+   * @throws IOException      If the log could not be read
+   */
+  private long scan() throws IOException {
+    long end = HEADER_SIZE;
+    channel.position(HEADER_SIZE);
+    DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Channels.newInputStream(channel)));
+    byte[] payload;
+    while ((payload = readRecord(in)) != null) {
+      end += RECORD_HEADER_SIZE + payload.length;
+    }
+    return end;
+  }
+
+  /**
+   * Reads the next record, checking its checksum.
+   *
+   * @param in                The stream of records
+   * @return                  The payload of the record, or null at the end of
+   *                          the log or at a record cut short or damaged
+   * @throws IOException      If the log could not be read
+   */
+  private static byte[] readRecord(DataInputStream in) throws IOException {
+    try {
+      int length = in.readInt();
+      int checksum = in.readInt();
+      if (length < 0 || length > MAX_RECORD_SIZE) {
+        return null;
+      }
+      byte[] payload = new byte[length];
+      in.readFully(payload);
+      CRC32 crc = new CRC32();
+      crc.update(payload);
+      return ((int) crc.getValue() == checksum) ? payload : null;
+    } catch (EOFException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Applies the entries of a record to a snapshot being built.
+   *
+   * @param payload           The payload of the record
+   * @param next              The snapshot being built
+   * @throws IOException      If the record could not be read
+   */
+  private static void applyRecord(byte[] payload, BankSnapshot next) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+    int entries = in.readInt();
+    for (int i = 0; i < entries; i++) {
+      byte type = in.readByte();
+      if (type == ADD) {
+        String className = in.readUTF();
+        Account account = newAccount(className);
+        account.restoreState(readBytes(in));
+        next.add(account);
+      } else if (type == STATE) {
+        Account account = next.accountsByNumber.get(in.readUTF());
+        byte[] state = readBytes(in);
+        if (account != null) {
+          long previousBalance = account.getBalanceInCents();
+          account.restoreState(state);
+          next.rebalance(account, previousBalance);
+        }
+      } else if (type == REMOVE) {
+        next.remove(in.readUTF());
+      } else {
+        throw new IOException("Unknown log entry type " + type);
+      }
+    }
+  }
+
+  /**
+   * Creates an empty account of a logged account class.
+   *
+   * @param className         The name of the account class
+   * @return                  An empty account of the class
+   * @throws IOException      If the class is not an account class
+   */
+  private static Account newAccount(String className) throws IOException {
+    try {
+      return Class.forName(className).asSubclass(Account.class).getDeclaredConstructor()
+          .newInstance();
+    } catch (ReflectiveOperationException e) {
+      throw new IOException("Cannot create a logged account of class " + className, e);
+    } catch (ClassCastException e) {
+      throw new IOException(className + " is not an account class", e);
+    }
+  }
+
+  /**
+   * Reads a length-prefixed byte array.
+   *
+   * @param in                The stream to read from
+   * @return                  The bytes read
+   * @throws IOException      If the bytes could not be read
+   */
+  private static byte[] readBytes(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return bytes;
+  }
+
+  /**
+   * The entries of one change to the bank, built up before the record is
+   * appended. The state of an account must be added while its lock is held.
+   */
+  static final class Record {
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(bytes);
+    private int entries;
+
+    /**
+     * Adds an entry that opens an account in its current state.
+     *
+     * @param account         The account opened
+     * @return                This record
+     */
+    Record add(Account account) {
+      try {
+        out.writeByte(ADD);
+        out.writeUTF(account.getClass().getName());
+        writeBytes(account.captureState());
+      } catch (IOException e) {
+        throw new IllegalStateException("Could not build a log record", e);
+      }
+      entries++;
+      return this;
+    }
+
+    /**
+     * Adds an entry holding the current state of an account.
+     *
+     * @param account         The account changed
+     * @return                This record
+     */
+    Record state(Account account) {
+      try {
+        out.writeByte(STATE);
+        out.writeUTF(account.getAccountNumber());
+        writeBytes(account.captureState());
+      } catch (IOException e) {
+        throw new IllegalStateException("Could not build a log record", e);
+      }
+      entries++;
+      return this;
+    }
+
+    /**
+     * Adds an entry that closes an account.
+     *
+     * @param accountNumber   The account number of the account closed
+     * @return                This record
+     */
+    Record remove(String accountNumber) {
+      try {
+        out.writeByte(REMOVE);
+        out.writeUTF(accountNumber);
+      } catch (IOException e) {
+        throw new IllegalStateException("Could not build a log record", e);
+      }
+      entries++;
+      return this;
+    }
+
+    private void writeBytes(byte[] value) throws IOException {
+      out.writeInt(value.length);
+      out.write(value);
+    }
+
+    /**
+     * Returns the payload of the record: the number of entries followed by
+     * the entries.
+     *
+     * @return                The payload
+     */
+    byte[] toByteArray() {
+      byte[] body = bytes.toByteArray();
+      ByteBuffer payload = ByteBuffer.allocate(4 + body.length);
+      payload.putInt(entries);
+      payload.put(body);
+      return payload.array();
+    }
+  }
+}
@@ -0,0 +1,269 @@
+/**
+ * This class runs the year-end tax batch of a bank: it calculates the tax of
+ * every taxable account and writes the tax statement of each of them to a
+ * file, in account number order.
+ *
+ * The accounts are read from one snapshot of the bank and cut into chunks as
+ * the batch goes, so the account set is never copied. Each chunk is worked
+ * out on a fork-join pool, split in halves down to small runs of accounts so
+ * idle workers can take over part of a large chunk. Only a few chunks are in
+ * progress at once; the finished ones are written out in order through a
+ * buffered writer and dropped. Each account is locked only while its own tax
+ * is calculated, no bank-wide lock is held, and the pool leaves a processor
+ * to the RMI threads and runs at low priority, so online requests carry on
+ * while the batch runs.
+ *
+ * Progress and throughput are reported to a print stream, if one is given,
+ * about once a second and when the batch ends.
+ *
+ * @author Alex Wang
+ * @version 1.1
+ */
+package edu.btp400.w2017.common;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+public final class YearEndTaxBatch {
+
+  private static final int CHUNK_SIZE = 1024;
+  private static final int LEAF_SIZE = 64;
+  private static final int CHUNKS_IN_PROGRESS_PER_WORKER = 4;
+  private static final long PROGRESS_INTERVAL = 1000;     // In milliseconds
+
+  private final Bank bank;
+  private final int taxRate;
+  private final int parallelism;
+
+  /**
+   * Creates a batch that uses every processor but one.
+   *
+   * @param bank              The bank whose accounts are taxed
+   * @param taxRate           The tax rate to calculate the tax with
+   */
+  public YearEndTaxBatch(Bank bank, int taxRate) {
+    this(bank, taxRate, Runtime.getRuntime().availableProcessors() - 1);
+  }
+
+  /**
+   * Creates a batch.
+   *
+   * @param bank              The bank whose accounts are taxed
+   * @param taxRate           The tax rate to calculate the tax with
+   * @param parallelism       The number of worker threads, at least one
+   */
+  public YearEndTaxBatch(Bank bank, int taxRate, int parallelism) {
+    this.bank = bank;
+    this.taxRate = taxRate;
+    this.parallelism = Math.max(parallelism, 1);
+  }
+
+  /**
+   * Runs the batch and writes the statements to a file, replacing it.
+   *
+   * @param file              The file to write the statements to
+   * @param progress          The stream to report progress to, or null
+   * @return                  The number of statements written
+   * @throws IOException      If the file could not be written
+   */
+  public long run(File file, PrintStream progress) throws IOException {
+    Writer out = new BufferedWriter(
+        new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+    try {
+      return writeStatements(out, progress);
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Runs the batch and writes the statements to a writer. The writer is
+   * flushed but not closed.
+   *
+   * @param out               The writer to write the statements to
+   * @param progress          The stream to report progress to, or null
+   * @return                  The number of statements written
+   * @throws IOException      If the statements could not be written
+   */
+  public long writeStatements(Writer out, PrintStream progress) throws IOException {
+    ForkJoinPool pool = new ForkJoinPool(parallelism, new LowPriorityWorkers("tax-batch"), null, false);
+    long started = System.currentTimeMillis();
+    long lastReport = started;
+    long written = 0;
+
+    ArrayDeque<StatementChunk> inProgress = new ArrayDeque<StatementChunk>();
+    try {
+      Iterator<Account> accounts = bank.iterateAccounts();
+      int maxInProgress = parallelism * CHUNKS_IN_PROGRESS_PER_WORKER;
+
+      while (true) {
+        while (inProgress.size() < maxInProgress && accounts.hasNext()) {
+          Account[] chunk = nextChunk(accounts);
+          if (chunk.length > 0) {
+            StatementChunk task = new StatementChunk(chunk, taxRate);
+            pool.execute(task);
+            inProgress.add(task);
+          }
+        }
+        StatementChunk done = inProgress.poll();
+        if (done == null) {
+          break;
+        }
+        out.write(done.join());
+        done.publishBalanceChanges(bank);
+        written += done.accounts.length;
+
+        long now = System.currentTimeMillis();
+        if (progress != null && now - lastReport >= PROGRESS_INTERVAL) {
+          progress.println(report("Tax batch: " + written + " statements written", written,
+              now - started));
+          lastReport = now;
+        }
+      }
+      out.flush();
+    } finally {
+      // Chunks already started still change their accounts, so their
+      // balance changes are published even if writing failed.
+      for (StatementChunk task : inProgress) {
+        task.join();
+        task.publishBalanceChanges(bank);
+      }
+      pool.shutdown();
+    }
+
+    if (progress != null) {
+      progress.println(report("Tax batch done: " + written + " statements written",
+          written, System.currentTimeMillis() - started));
+    }
+    return written;
+  }
+
+  /**
+   * Takes the next taxable accounts from the iterator, up to a chunk.
+   *
+   * @param accounts          The accounts of the bank
+   * @return                  The taxable accounts taken
+   */
+  private static Account[] nextChunk(Iterator<Account> accounts) {
+    ArrayList<Account> chunk = new ArrayList<Account>(CHUNK_SIZE);
+    while (chunk.size() < CHUNK_SIZE && accounts.hasNext()) {
+      Account account = accounts.next();
+      if (account instanceof Taxable) {
+        chunk.add(account);
+      }
+    }
+    return chunk.toArray(new Account[chunk.size()]);
+  }
+
+  /**
+   * Builds a progress line with the elapsed time and throughput.
+   *
+   * @param message           The start of the line
+   * @param written           The number of statements written so far
+   * @param elapsed           The time since the batch started, in milliseconds
+   * @return                  The progress line
+   */
+  private static String report(String message, long written, long elapsed) {
+    long perSecond = (elapsed > 0) ? written * 1000 / elapsed : written;
+    return message + " in " + elapsed + " ms (" + perSecond + " statements/s)";
+  }
+
+  /**
+   * Calculates the tax and builds the statements of a run of accounts of a
+   * chunk, splitting the run in halves until it is small. The balance each
+   * account had before its tax was calculated is recorded, so that accounts
+   * whose balance changed can be moved in the balance index.
+   */
+  private static final class StatementChunk extends RecursiveTask<String> {
+
+    private static final long serialVersionUID = 1L;
+
+    final Account[] accounts;
+    final long[] previousBalances;
+    final boolean[] changed;
+    private final int taxRate;
+    private final int from;
+    private final int to;
+
+    StatementChunk(Account[] accounts, int taxRate) {
+      this(accounts, new long[accounts.length], new boolean[accounts.length],
+          taxRate, 0, accounts.length);
+    }
+
+    private StatementChunk(Account[] accounts, long[] previousBalances, boolean[] changed,
+        int taxRate, int from, int to) {
+      this.accounts = accounts;
+      this.previousBalances = previousBalances;
+      this.changed = changed;
+      this.taxRate = taxRate;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected String compute() {
+      if (to - from > LEAF_SIZE) {
+        int middle = (from + to) >>> 1;
+        StatementChunk left = new StatementChunk(accounts, previousBalances, changed,
+            taxRate, from, middle);
+        StatementChunk right = new StatementChunk(accounts, previousBalances, changed,
+            taxRate, middle, to);
+        left.fork();
+        String rightStatements = right.compute();
+        return left.join() + rightStatements;
+      }
+
+      StringBuilder statements = new StringBuilder();
+      for (int i = from; i < to; i++) {
+        Account account = accounts[i];
+        Taxable taxable = (Taxable) account;
+        account.lock();
+        try {
+          previousBalances[i] = account.getBalanceInCents();
+          taxable.calculateTax(taxRate);
+          changed[i] = account.getBalanceInCents() != previousBalances[i];
+          statements.append("Name: " + account.getFullName() + "\n");
+          statements.append(taxable.createTaxStatement());
+          statements.append("\n");
+        } finally {
+          account.unlock();
+        }
+      }
+      return statements.toString();
+    }
+
+    /**
+     * Tells the bank about the accounts of the chunk whose balance changed.
+     * Must only be called once the chunk is done.
+     *
+     * @param bank            The bank the accounts belong to
+     */
+    void publishBalanceChanges(Bank bank) {
+      ArrayList<Account> changedAccounts = new ArrayList<Account>();
+      ArrayList<Long> changedBalances = new ArrayList<Long>();
+      for (int i = 0; i < accounts.length; i++) {
+        if (changed[i]) {
+          changedAccounts.add(accounts[i]);
+          changedBalances.add(previousBalances[i]);
+        }
+      }
+      if (!changedAccounts.isEmpty()) {
+        long[] balances = new long[changedBalances.size()];
+        for (int i = 0; i < balances.length; i++) {
+          balances[i] = changedBalances.get(i);
+        }
+        bank.balancesChanged(changedAccounts.toArray(new Account[changedAccounts.size()]),
+            balances);
+      }
+    }
+  }
+}
@@ -0,0 +1,113 @@
+/**
+ * RemoteAccountCursor interface implementation
+ *
+ * <p>
+ * An AccountCursor is exported on its own when a client opens it and walks
+ * an iterator over one snapshot of the bank, fetching only as many accounts
+ * as each call to next(int) asks for. Once the iterator is exhausted it is
+ * dropped, and once the cursor is closed it is unexported, so the accounts it
+ * was walking can be reclaimed. The time of the last call is recorded so that
+ * BankImpl can close cursors that have been abandoned by their clients.
+ *
+ * @author Alex Wang
+ * @version 0.1
+ */
+package edu.btp400.w2017.server;
+import java.rmi.*;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.Iterator;
+import edu.btp400.w2017.common.*;
+
+public class AccountCursor extends UnicastRemoteObject implements RemoteAccountCursor {
+
+	/**
+	 *
+	 */
+	private static final long serialVersionUID = -3176514239915487722L;
+
+	private static final int DEFAULT_BATCH_SIZE = 50;
+	private static final int MAX_BATCH_SIZE = 1000;
+
+	private Iterator<Account> accounts;
+	private volatile long lastUsed;
+	private volatile boolean closed;
+
+	/**
+	 * Creates and exports a cursor over the accounts of an iterator.
+	 *
+	 * @param	accounts			The accounts to walk
+	 * @throws						RemoteException if the cursor cannot be exported
+	 */
+	public AccountCursor(Iterator<Account> accounts) throws RemoteException{
+		this.accounts = accounts;
+		this.lastUsed = System.currentTimeMillis();
+	}
+
+	/**
+	 * Returns the next batch of accounts.
+	 *
+	 * <p>
+	 * A batch size below one gives a batch of the default size, and no batch
+	 * holds more than the maximum batch size. Once every account has been
+	 * returned, an empty array is returned.
+	 *
+	 * @param	batchSize			The maximum number of accounts to return
+	 * @return						The next accounts of the cursor
+	 * @throws						RemoteException
+	 */
+	@Override
+	public synchronized Account[] next(int batchSize) throws RemoteException
+	{
+		lastUsed = System.currentTimeMillis();
+		if (accounts == null){
+			return new Account[0];
+		}
+
+		int size = (batchSize < 1) ? DEFAULT_BATCH_SIZE : Math.min(batchSize, MAX_BATCH_SIZE);
+		ArrayList<Account> batch = new ArrayList<Account>(size);
+		while (batch.size() < size && accounts.hasNext()){
+			batch.add(accounts.next());
+		}
+		if (!accounts.hasNext()){
+			accounts = null;
+		}
+		return batch.toArray(new Account[batch.size()]);
+	}
+
+	/**
+	 * Closes the cursor and unexports it. Closing a closed cursor has no
+	 * effect.
+	 *
+	 * @throws						RemoteException
+	 */
+	@Override
+	public synchronized void close() throws RemoteException
+	{
+		if (!closed){
+			closed = true;
+			accounts = null;
+			unexportObject(this, true);
+		}
+	}
+
+	/**
+	 * Reports if the cursor has been closed.
+	 *
+	 * @return						True if the cursor is closed
+	 */
+	public boolean isClosed(){
+		return closed;
+	}
+
+	/**
+	 * Reports if the cursor has not been used for at least the time given.
+	 *
+	 * @param	now					The current time in milliseconds
+	 * @param	idleTimeout			The idle time allowed in milliseconds
+	 * @return						True if the cursor has been idle too long
+	 */
+	public boolean isIdle(long now, long idleTimeout){
+		return now - lastUsed >= idleTimeout;
+	}
+}
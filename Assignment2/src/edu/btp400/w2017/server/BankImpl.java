@@ -3,15 +3,47 @@
  *
  * <p>
  * This class implements the methods addAccount(Account account), deleteAccount(string accountNumber),
- * searchAccountByBalance(double balance), searchAccountByName(string accountName).
+ * searchAccountByBalance(double balance), searchAccountByName(string accountName),
+ * getAccount(String accountNumber), searchAccountsByBalanceRange(double minBalance, double maxBalance),
+ * searchByLastNamePrefix(String prefix, int limit), deposit(String accountNumber, double amount),
+ * withdraw(String accountNumber, double amount), addAccounts(List<Account> accounts),
+ * deleteAccounts(List<String> accountNumbers), execute(List<BankOperation> operations),
+ * transfer(String fromAccountNumber, String toAccountNumber, double amount),
+ * getAccounts(int limit, String pageToken),
+ * searchByAccountName(String accountName, int limit, String pageToken),
+ * searchAccountByBalance(double balance, int limit, String pageToken),
+ * openAccountCursor(), openAccountCursorByName(String accountName),
+ * openAccountCursorByBalance(double balance),
+ * searchSummariesByAccountName(String accountName, Set<AccountSummary.Field> fields),
+ * searchSummariesByBalance(double balance, Set<AccountSummary.Field> fields),
+ * getTaxStatements(String holderName).
+ *
+ * <p>
+ * Every cursor opened is tracked until it is closed. A daemon thread checks
+ * the open cursors periodically and closes those left idle for longer than
+ * the idle timeout, so clients that never close their cursors do not keep
+ * the server's memory.
+ *
+ * <p>
+ * If a scheduler is given, accounts opened and closed through this class
+ * have their timed events scheduled and cancelled with it.
  *
  * @author Alex Wang
- * @version 0.2
+ * @version 1.2
  */
 package edu.btp400.w2017.server;
 import java.rmi.*;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import edu.btp400.w2017.common.*;
 
 public class BankImpl extends UnicastRemoteObject implements RemoteBank {
@@ -21,12 +53,74 @@ public class BankImpl extends UnicastRemoteObject implements RemoteBank {
 	 */
 	private static final long serialVersionUID = 8536951011655483981L;
 
+	private static final long DEFAULT_CURSOR_IDLE_TIMEOUT = 5 * 60 * 1000;	// In milliseconds
+
 	private Bank bank;
+	private final long cursorIdleTimeout;
+	private final BankScheduler scheduler;
+	private final Set<AccountCursor> openCursors =
+			Collections.newSetFromMap(new ConcurrentHashMap<AccountCursor, Boolean>());
+	private final ScheduledExecutorService cursorReaper =
+			Executors.newSingleThreadScheduledExecutor(new ThreadFactory(){
+				@Override
+				public Thread newThread(Runnable task){
+					Thread thread = new Thread(task, "cursor-reaper");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
 
 	public BankImpl(Bank bank) throws RemoteException{
+		this(bank, DEFAULT_CURSOR_IDLE_TIMEOUT, null);
+	}
+
+	/**
+	 * Creates the remote bank with the timed events of its accounts kept by
+	 * a scheduler.
+	 *
+	 * @param	bank				The bank to serve
+	 * @param	scheduler			The scheduler of the bank's timed events
+	 * @throws						RemoteException
+	 */
+	public BankImpl(Bank bank, BankScheduler scheduler) throws RemoteException{
+		this(bank, DEFAULT_CURSOR_IDLE_TIMEOUT, scheduler);
+	}
+
+	/**
+	 * Creates the remote bank and starts checking for idle cursors.
+	 *
+	 * @param	bank				The bank to serve
+	 * @param	cursorIdleTimeout	The time, in milliseconds, after which an
+	 *								unused cursor is closed
+	 * @throws						RemoteException
+	 */
+	public BankImpl(Bank bank, long cursorIdleTimeout) throws RemoteException{
+		this(bank, cursorIdleTimeout, null);
+	}
+
+	/**
+	 * Creates the remote bank and starts checking for idle cursors.
+	 *
+	 * @param	bank				The bank to serve
+	 * @param	cursorIdleTimeout	The time, in milliseconds, after which an
+	 *								unused cursor is closed
+	 * @param	scheduler			The scheduler of the bank's timed events,
+	 *								or null for none
+	 * @throws						RemoteException
+	 */
+	public BankImpl(Bank bank, long cursorIdleTimeout, BankScheduler scheduler) throws RemoteException{
 		if (bank != null){
 			this.bank = bank;
 		}
+		this.cursorIdleTimeout = cursorIdleTimeout;
+		this.scheduler = scheduler;
+		long checkInterval = Math.max(cursorIdleTimeout / 4, 1);
+		cursorReaper.scheduleWithFixedDelay(new Runnable(){
+			@Override
+			public void run(){
+				closeIdleCursors();
+			}
+		}, checkInterval, checkInterval, TimeUnit.MILLISECONDS);
 	}
 
 	/**
@@ -43,7 +137,11 @@ public class BankImpl extends UnicastRemoteObject implements RemoteBank {
 	@Override
 	public boolean addAccount(Account account) throws RemoteException
 	{
-			return bank.addAccount(account);
+			boolean added = bank.addAccount(account);
+			if (added && scheduler != null){
+				scheduler.accountOpened(account);
+			}
+			return added;
 	}
 
 	/**
@@ -60,7 +158,11 @@ public class BankImpl extends UnicastRemoteObject implements RemoteBank {
 	@Override
 	public Account deleteAccount(String accountNumber) throws NoAccountException, RemoteException
 	{
-		return bank.removeAccount(accountNumber);
+		Account removed = bank.removeAccount(accountNumber);
+		if (removed != null && scheduler != null){
+			scheduler.accountClosed(accountNumber);
+		}
+		return removed;
 	}
 
 	/**
@@ -96,4 +198,410 @@ public class BankImpl extends UnicastRemoteObject implements RemoteBank {
 	{
 		return bank.searchByAccountName(accountName);
 	}
+
+	/**
+	 * Invokes getAccount(String) from the bank object.
+	 *
+	 * <p>
+	 * Takes the account number from the user as a string and returns the
+	 * account with that number straight from the bank's account number index.
+	 *
+	 * @param	accountNumber		The account number in string format
+	 * @return						The account with the specified account number
+	 * @throws						NoAccountException if no account is found
+	 * @throws						Remote Exception
+	 */
+	@Override
+	public Account getAccount(String accountNumber) throws RemoteException, NoAccountException
+	{
+		Account account = bank.getAccount(accountNumber);
+		if (account == null){
+			throw new NoAccountException();
+		}
+		return account;
+	}
+
+	/**
+	 * Invokes searchByBalanceRange(double, double) from the bank object.
+	 *
+	 * <p>
+	 * Takes a minimum and maximum balance and returns the accounts whose
+	 * balance, rounded to the nearest cent, falls within that inclusive range.
+	 * The accounts are returned in ascending order of balance.
+	 *
+	 * @param	minBalance			The lowest balance to search for
+	 * @param	maxBalance			The highest balance to search for
+	 * @return						An ArrayList of Accounts within the balance range
+	 * @throws						Remote Exception
+	 */
+	@Override
+	public ArrayList<Account> searchAccountsByBalanceRange(double minBalance, double maxBalance)
+			throws RemoteException, NoAccountException
+	{
+		return bank.searchByBalanceRange(minBalance, maxBalance);
+	}
+
+	/**
+	 * Invokes searchByLastNamePrefix(String, int) from the bank object.
+	 *
+	 * <p>
+	 * Takes the beginning of a last name and returns up to limit accounts whose
+	 * holder's last name starts with it, sorted by last name and first name.
+	 *
+	 * @param	prefix				The beginning of the last name
+	 * @param	limit				The maximum number of accounts to return
+	 * @return						Account[] with accounts found with the last name prefix
+	 * @throws						Remote Exception
+	 */
+	@Override
+	public Account[] searchByLastNamePrefix(String prefix, int limit) throws RemoteException, NoAccountException
+	{
+		return bank.searchByLastNamePrefix(prefix, limit);
+	}
+
+	/**
+	 * Invokes deposit(String, double) from the bank object.
+	 *
+	 * <p>
+	 * Deposits the amount into the account with the specified account number
+	 * on the server and returns only the outcome and the new balance.
+	 *
+	 * @param	accountNumber		The account number in string format
+	 * @param	amount				The amount to deposit
+	 * @return						The outcome of the deposit and the new balance
+	 * @throws						NoAccountException if no account is found
+	 * @throws						Remote Exception
+	 */
+	@Override
+	public TransactionResult deposit(String accountNumber, double amount)
+			throws RemoteException, NoAccountException
+	{
+		return bank.deposit(accountNumber, amount);
+	}
+
+	/**
+	 * Invokes withdraw(String, double) from the bank object.
+	 *
+	 * <p>
+	 * Withdraws the amount from the account with the specified account number
+	 * on the server and returns only the outcome and the new balance.
+	 *
+	 * @param	accountNumber		The account number in string format
+	 * @param	amount				The amount to withdraw
+	 * @return						The outcome of the withdrawal and the new balance
+	 * @throws						NoAccountException if no account is found
+	 * @throws						Remote Exception
+	 */
+	@Override
+	public TransactionResult withdraw(String accountNumber, double amount)
+			throws RemoteException, NoAccountException
+	{
+		return bank.withdraw(accountNumber, amount);
+	}
+
+	/**
+	 * Invokes addAccounts(List) from the bank object.
+	 *
+	 * <p>
+	 * Takes a list of accounts provided by the user and adds all of them
+	 * to the current bank object in one call.
+	 *
+	 * @param	accounts			The accounts to be added
+	 * @return						For each account, true if it was added
+	 * @throws						RemoteException
+	 */
+	@Override
+	public boolean[] addAccounts(List<Account> accounts) throws RemoteException
+	{
+		boolean[] added = bank.addAccounts(accounts);
+		if (scheduler != null){
+			for (int i = 0; i < added.length; i++){
+				if (added[i]){
+					scheduler.accountOpened(accounts.get(i));
+				}
+			}
+		}
+		return added;
+	}
+
+	/**
+	 * Invokes removeAccounts(List) from the bank object.
+	 *
+	 * <p>
+	 * Takes a list of account numbers from the user, deletes the accounts
+	 * found and returns, for each account number, the account deleted or null.
+	 *
+	 * @param	accountNumbers		The account numbers in string format
+	 * @return						The deleted accounts
+	 * @throws						Remote Exception
+	 */
+	@Override
+	public Account[] deleteAccounts(List<String> accountNumbers) throws RemoteException
+	{
+		Account[] removed = bank.removeAccounts(accountNumbers);
+		if (scheduler != null){
+			for (Account account : removed){
+				if (account != null){
+					scheduler.accountClosed(account.getAccountNumber());
+				}
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * Invokes execute(List) from the bank object.
+	 *
+	 * <p>
+	 * Takes a list of operations from the user and applies them to the
+	 * current bank object as one transaction, in a single call. Either every
+	 * operation takes effect or none does.
+	 *
+	 * @param	operations			The operations to apply
+	 * @return						True if every operation was applied
+	 * @throws						Remote Exception
+	 */
+	@Override
+	public boolean execute(List<BankOperation> operations) throws RemoteException
+	{
+		boolean applied = bank.execute(operations);
+		if (applied && scheduler != null){
+			for (BankOperation operation : operations){
+				if (operation.getType() == BankOperation.Type.CLOSE){
+					scheduler.accountClosed(operation.getAccountNumber());
+				}else if (operation.getType() == BankOperation.Type.OPEN){
+					scheduler.accountOpened(operation.getAccount());
+				}
+			}
+		}
+		return applied;
+	}
+
+	/**
+	 * Invokes transfer(String, String, double) from the bank object.
+	 *
+	 * <p>
+	 * Moves the amount from the first account to the second on the server and
+	 * returns only the outcome and the new balance of each account.
+	 *
+	 * @param	fromAccountNumber	The account number to withdraw from
+	 * @param	toAccountNumber		The account number to deposit into
+	 * @param	amount				The amount to move
+	 * @return						The outcome and new balance of both accounts
+	 * @throws						NoAccountException if either account is not found
+	 * @throws						Remote Exception
+	 */
+	@Override
+	public TransactionResult[] transfer(String fromAccountNumber, String toAccountNumber, double amount)
+			throws RemoteException, NoAccountException
+	{
+		return bank.transfer(fromAccountNumber, toAccountNumber, amount);
+	}
+
+	/**
+	 * Invokes getAccounts(int, String) from the bank object.
+	 *
+	 * <p>
+	 * Returns one page of the accounts opened, sorted by account number.
+	 * The page token of the returned page fetches the page after it.
+	 *
+	 * @param	limit				The maximum number of accounts on the page
+	 * @param	pageToken			The token of the page, or null for the first page
+	 * @return						The page of accounts
+	 * @throws						RemoteException
+	 */
+	@Override
+	public AccountPage getAccounts(int limit, String pageToken) throws RemoteException
+	{
+		return bank.getAccounts(limit, pageToken);
+	}
+
+	/**
+	 * Invokes searchByAccountName(String, int, String) from the bank object.
+	 *
+	 * <p>
+	 * Returns one page of the accounts matching the account name, sorted by
+	 * account number, so a common name is sent to the client a page at a time.
+	 *
+	 * @param	accountName			The name of the account
+	 * @param	limit				The maximum number of accounts on the page
+	 * @param	pageToken			The token of the page, or null for the first page
+	 * @return						The page of accounts found with specified name
+	 * @throws						NoAccountException if no account is found
+	 */
+	@Override
+	public AccountPage searchByAccountName(String accountName, int limit, String pageToken)
+			throws RemoteException, NoAccountException
+	{
+		return bank.searchByAccountName(accountName, limit, pageToken);
+	}
+
+	/**
+	 * Invokes search(double, int, String) from the bank object.
+	 *
+	 * <p>
+	 * Returns one page of the accounts with the specified balance, sorted by
+	 * account number.
+	 *
+	 * @param	balance				The balance to search for as a double
+	 * @param	limit				The maximum number of accounts on the page
+	 * @param	pageToken			The token of the page, or null for the first page
+	 * @return						The page of accounts that match the balance
+	 * @throws						NoAccountException if no account is found
+	 */
+	@Override
+	public AccountPage searchAccountByBalance(double balance, int limit, String pageToken)
+			throws RemoteException, NoAccountException
+	{
+		return bank.search(balance, limit, pageToken);
+	}
+
+	/**
+	 * Opens a cursor over every account opened, sorted by account number.
+	 *
+	 * <p>
+	 * The accounts are read from the bank as it was when the cursor was
+	 * opened, a batch at a time, as the client asks for them.
+	 *
+	 * @return						The cursor over the accounts
+	 * @throws						RemoteException
+	 */
+	@Override
+	public RemoteAccountCursor openAccountCursor() throws RemoteException
+	{
+		return openCursor(bank.iterateAccounts());
+	}
+
+	/**
+	 * Opens a cursor over the accounts matching the account name, sorted by
+	 * account number.
+	 *
+	 * @param	accountName			The name of the account
+	 * @return						The cursor over the accounts found
+	 * @throws						RemoteException
+	 */
+	@Override
+	public RemoteAccountCursor openAccountCursorByName(String accountName) throws RemoteException
+	{
+		return openCursor(bank.iterateByAccountName(accountName));
+	}
+
+	/**
+	 * Opens a cursor over the accounts with the specified balance, sorted by
+	 * account number.
+	 *
+	 * @param	balance				The balance to search for as a double
+	 * @return						The cursor over the accounts found
+	 * @throws						RemoteException
+	 */
+	@Override
+	public RemoteAccountCursor openAccountCursorByBalance(double balance) throws RemoteException
+	{
+		return openCursor(bank.iterateByBalance(balance));
+	}
+
+	/**
+	 * Invokes summarizeByAccountName(String, Set) from the bank object.
+	 *
+	 * <p>
+	 * Returns summaries of the accounts matching the account name, holding
+	 * only the fields asked for, instead of the whole accounts.
+	 *
+	 * @param	accountName			The name of the account
+	 * @param	fields				The fields to send, or null to send every field
+	 * @return						The summaries of the accounts found
+	 * @throws						NoAccountException if no account is found
+	 */
+	@Override
+	public AccountSummary[] searchSummariesByAccountName(String accountName,
+			Set<AccountSummary.Field> fields) throws RemoteException, NoAccountException
+	{
+		return bank.summarizeByAccountName(accountName, fields);
+	}
+
+	/**
+	 * Invokes summarizeByBalance(double, Set) from the bank object.
+	 *
+	 * <p>
+	 * Returns summaries of the accounts with the specified balance, holding
+	 * only the fields asked for, instead of the whole accounts.
+	 *
+	 * @param	balance				The balance to search for as a double
+	 * @param	fields				The fields to send, or null to send every field
+	 * @return						The summaries of the accounts found
+	 * @throws						NoAccountException if no account is found
+	 */
+	@Override
+	public AccountSummary[] searchSummariesByBalance(double balance,
+			Set<AccountSummary.Field> fields) throws RemoteException, NoAccountException
+	{
+		return bank.summarizeByBalance(balance, fields);
+	}
+
+	/**
+	 * Invokes getTaxStatements(String) from the bank object.
+	 *
+	 * <p>
+	 * Returns the tax statements of the account holder's taxable accounts,
+	 * worked out on the server, so the client receives neither the accounts
+	 * nor the accounts that are not taxable.
+	 *
+	 * @param	holderName			The name of the account holder
+	 * @return						The tax statements found
+	 * @throws						NoAccountException if no account is found
+	 */
+	@Override
+	public TaxStatement[] getTaxStatements(String holderName) throws RemoteException, NoAccountException
+	{
+		return bank.getTaxStatements(holderName);
+	}
+
+	/**
+	 * Exports a cursor over the accounts of an iterator and tracks it until
+	 * it is closed.
+	 *
+	 * @param	accounts			The accounts to walk
+	 * @return						The cursor
+	 * @throws						RemoteException if the cursor cannot be exported
+	 */
+	private RemoteAccountCursor openCursor(Iterator<Account> accounts) throws RemoteException
+	{
+		AccountCursor cursor = new AccountCursor(accounts);
+		openCursors.add(cursor);
+		return cursor;
+	}
+
+	/**
+	 * Retrieves the number of cursors tracked, that is opened and not yet
+	 * found closed.
+	 *
+	 * @return						The number of cursors tracked
+	 */
+	int getOpenCursorCount()
+	{
+		return openCursors.size();
+	}
+
+	/**
+	 * Closes every cursor that has been idle for longer than the idle timeout
+	 * and stops tracking cursors that are closed. Runs on the reaper thread,
+	 * so nothing is reported: a cursor is marked closed before it is
+	 * unexported, and one that was no longer exported is dropped all the same.
+	 */
+	private void closeIdleCursors()
+	{
+		long now = System.currentTimeMillis();
+		for (AccountCursor cursor : openCursors){
+			try{
+				if (!cursor.isClosed() && cursor.isIdle(now, cursorIdleTimeout)){
+					cursor.close();
+				}
+			}catch (RemoteException e){
+				// Already unexported
+			}
+			if (cursor.isClosed()){
+				openCursors.remove(cursor);
+			}
+		}
+	}
 }
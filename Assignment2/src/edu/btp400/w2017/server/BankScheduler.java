@@ -0,0 +1,399 @@
+/**
+ * BankScheduler carries out the timed events of the bank's accounts: the
+ * maturity of each GIC and the periodic statement of each Chequing account,
+ * which takes the service charges built up over the period.
+ *
+ * <p>
+ * Events are kept on a hashed timing wheel (see TimingWheel), so scheduling
+ * and firing each costs constant time however many are pending. Fired events
+ * run on a small pool of worker threads, and a statement schedules the next
+ * one of its account when it is done. At most one event of each kind is
+ * pending per account; opening an account schedules its events and closing
+ * it cancels them.
+ *
+ * <p>
+ * The pending events are saved to a state file periodically and when the
+ * scheduler stops, as one line per event with its absolute deadline. The
+ * file is written to a temporary file first and then moved over the old one,
+ * so a crash leaves either the old state or the new one. When started, the
+ * scheduler restores the saved events, firing those that fell due while the
+ * server was down, and schedules events for the accounts it has none for. An
+ * event that fired after the last save fires again after a restart; both
+ * events are safe to repeat, as a matured GIC is left as it is and a second
+ * statement finds no charges to take.
+ *
+ * <p>
+ * A GIC does not record when it was opened, so its maturity is scheduled for
+ * the end of its investment period counted from when the scheduler first
+ * sees it.
+ *
+ * @author Alex Wang
+ * @version 0.1
+ */
+package edu.btp400.w2017.server;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import edu.btp400.w2017.common.*;
+
+public class BankScheduler {
+
+	private static final String STATE_HEADER = "bank-scheduler 1";
+	private static final long DAY = 24L * 60 * 60 * 1000;				// In milliseconds
+	private static final long YEAR = 365 * DAY;
+	private static final long DEFAULT_TICK_DURATION = 1000;				// In milliseconds
+	private static final int DEFAULT_WHEEL_SIZE = 4096;
+	private static final long DEFAULT_STATEMENT_PERIOD = 30 * DAY;
+	private static final long DEFAULT_SAVE_INTERVAL = 60 * 1000;		// In milliseconds
+	private static final int DEFAULT_WORKERS = 2;
+
+	/**
+	 * The kinds of timed events.
+	 */
+	public enum EventType {
+		GIC_MATURITY, STATEMENT
+	}
+
+	/**
+	 * A timed event of an account.
+	 */
+	static final class BankEvent {
+
+		final EventType type;
+		final String accountNumber;
+
+		BankEvent(EventType type, String accountNumber){
+			this.type = type;
+			this.accountNumber = accountNumber;
+		}
+
+		/**
+		 * Returns the key of the event among the pending events.
+		 *
+		 * @return	The event type and the account number
+		 */
+		String key(){
+			return type + " " + accountNumber;
+		}
+	}
+
+	private final Bank bank;
+	private final File stateFile;
+	private final long statementPeriod;
+	private final long saveInterval;
+	private final ExecutorService workers;
+	private final TimingWheel<BankEvent> wheel;
+	private final ConcurrentHashMap<String, TimingWheel.Timeout<BankEvent>> scheduled =
+			new ConcurrentHashMap<String, TimingWheel.Timeout<BankEvent>>();
+	private final ScheduledExecutorService saver;
+	private volatile PrintStream log;
+
+	/**
+	 * Creates a scheduler with a one second tick, a 30 day statement period
+	 * and a save every minute.
+	 *
+	 * @param	bank				The bank whose accounts have events
+	 * @param	stateFile			The file the pending events are saved to
+	 */
+	public BankScheduler(Bank bank, File stateFile){
+		this(bank, stateFile, DEFAULT_TICK_DURATION, DEFAULT_WHEEL_SIZE, DEFAULT_STATEMENT_PERIOD,
+				DEFAULT_SAVE_INTERVAL, DEFAULT_WORKERS);
+	}
+
+	/**
+	 * Creates a scheduler.
+	 *
+	 * @param	bank				The bank whose accounts have events
+	 * @param	stateFile			The file the pending events are saved to
+	 * @param	tickDuration		The duration of a tick of the wheel in milliseconds
+	 * @param	wheelSize			The number of buckets of the wheel
+	 * @param	statementPeriod		The time between statements in milliseconds
+	 * @param	saveInterval		The time between saves in milliseconds
+	 * @param	workerCount			The number of threads that run fired events
+	 */
+	public BankScheduler(Bank bank, File stateFile, long tickDuration, int wheelSize,
+			long statementPeriod, long saveInterval, int workerCount){
+		this.bank = bank;
+		this.stateFile = stateFile;
+		this.statementPeriod = statementPeriod;
+		this.saveInterval = saveInterval;
+		this.workers = Executors.newFixedThreadPool(Math.max(workerCount, 1), daemonThreads("bank-events"));
+		this.saver = Executors.newSingleThreadScheduledExecutor(daemonThreads("bank-scheduler-save"));
+		this.wheel = new TimingWheel<BankEvent>(tickDuration, wheelSize, workers,
+				new TimingWheel.Handler<BankEvent>(){
+					@Override
+					public void fire(TimingWheel.Timeout<BankEvent> timeout){
+						runEvent(timeout);
+					}
+				});
+	}
+
+	/**
+	 * Sets the stream that fired events and failures are reported to.
+	 *
+	 * @param	log					The stream to report to, or null for none
+	 */
+	public void setLog(PrintStream log){
+		this.log = log;
+	}
+
+	/**
+	 * Restores the saved events, schedules events for the accounts of the
+	 * bank that have none and starts firing them.
+	 *
+	 * @throws	IOException if the state file could not be read
+	 */
+	public void start() throws IOException{
+		if (stateFile.exists()){
+			load();
+		}
+		Iterator<Account> accounts = bank.iterateAccounts();
+		while (accounts.hasNext()){
+			accountOpened(accounts.next());
+		}
+		wheel.start("bank-scheduler");
+		saver.scheduleWithFixedDelay(new Runnable(){
+			@Override
+			public void run(){
+				try{
+					save();
+				}catch (IOException e){
+					report("Error: scheduler state not saved: " + e);
+				}
+			}
+		}, saveInterval, saveInterval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops firing events, waits for the events already fired and saves the
+	 * pending ones.
+	 *
+	 * @throws	IOException if the state file could not be written
+	 */
+	public void stop() throws IOException{
+		saver.shutdown();
+		try{
+			wheel.stop();
+			workers.shutdown();
+			workers.awaitTermination(1, TimeUnit.MINUTES);
+		}catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+		save();
+	}
+
+	/**
+	 * Schedules the events of an account, unless it already has them: the
+	 * maturity of a GIC that has not matured, or the next statement of a
+	 * Chequing account.
+	 *
+	 * @param	account				The account opened
+	 */
+	public void accountOpened(Account account){
+		long now = System.currentTimeMillis();
+		if (account instanceof GIC){
+			GIC gic = (GIC) account;
+			if (!gic.hasMatured()){
+				schedule(new BankEvent(EventType.GIC_MATURITY, account.getAccountNumber()),
+						now + gic.getMonthsToMaturity() * YEAR / 12, false);
+			}
+		}else if (account instanceof Chequing){
+			schedule(new BankEvent(EventType.STATEMENT, account.getAccountNumber()),
+					now + statementPeriod, false);
+		}
+	}
+
+	/**
+	 * Cancels the events of an account.
+	 *
+	 * @param	accountNumber		The account number of the account closed
+	 */
+	public void accountClosed(String accountNumber){
+		for (EventType type : EventType.values()){
+			TimingWheel.Timeout<BankEvent> timeout =
+					scheduled.remove(new BankEvent(type, accountNumber).key());
+			if (timeout != null){
+				timeout.cancel();
+			}
+		}
+	}
+
+	/**
+	 * Retrieves the number of pending events.
+	 *
+	 * @return	The number of pending events
+	 */
+	public int pendingEvents(){
+		return wheel.size();
+	}
+
+	/**
+	 * Saves the pending events to the state file, replacing it.
+	 *
+	 * @throws	IOException if the state file could not be written
+	 */
+	public synchronized void save() throws IOException{
+		File temporary = new File(stateFile.getPath() + ".tmp");
+		Writer out = new BufferedWriter(
+				new OutputStreamWriter(new FileOutputStream(temporary), "UTF-8"));
+		try{
+			out.write(STATE_HEADER + "\n");
+			for (TimingWheel.Timeout<BankEvent> timeout : wheel.pendingTimeouts()){
+				BankEvent event = timeout.getEvent();
+				out.write(event.type + " " + event.accountNumber + " " + timeout.getDeadline() + "\n");
+			}
+		}finally{
+			out.close();
+		}
+		Files.move(temporary.toPath(), stateFile.toPath(),
+				StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Schedules the events saved in the state file.
+	 *
+	 * @throws	IOException if the state file could not be read or is not a
+	 *			scheduler state file
+	 */
+	private void load() throws IOException{
+		BufferedReader in = new BufferedReader(
+				new InputStreamReader(new FileInputStream(stateFile), "UTF-8"));
+		try{
+			String line = in.readLine();
+			if (!STATE_HEADER.equals(line)){
+				throw new IOException(stateFile + " is not a scheduler state file");
+			}
+			int restored = 0;
+			while ((line = in.readLine()) != null){
+				String[] fields = line.split(" ");
+				try{
+					BankEvent event = new BankEvent(EventType.valueOf(fields[0]), fields[1]);
+					schedule(event, Long.parseLong(fields[2]), true);
+					restored++;
+				}catch (RuntimeException e){
+					throw new IOException("Bad scheduler state line: " + line);
+				}
+			}
+			report("Scheduler: " + restored + " events restored from " + stateFile);
+		}finally{
+			in.close();
+		}
+	}
+
+	/**
+	 * Schedules an event.
+	 *
+	 * @param	event				The event
+	 * @param	deadline			The time it is due, in milliseconds since the epoch
+	 * @param	replace				True to replace a pending event of the same
+	 *								kind and account, false to keep it
+	 */
+	private void schedule(BankEvent event, long deadline, boolean replace){
+		String key = event.key();
+		if (!replace && scheduled.containsKey(key)){
+			return;
+		}
+		TimingWheel.Timeout<BankEvent> previous = scheduled.put(key, wheel.schedule(event, deadline));
+		if (previous != null){
+			previous.cancel();
+		}
+	}
+
+	/**
+	 * Carries out a fired event on a worker thread, and schedules the next
+	 * statement after a statement. Events of accounts no longer in the bank,
+	 * or whose account number now belongs to another kind of account, are
+	 * dropped.
+	 *
+	 * @param	timeout				The timeout of the event
+	 */
+	private void runEvent(TimingWheel.Timeout<BankEvent> timeout){
+		BankEvent event = timeout.getEvent();
+		String key = event.key();
+		try{
+			if (event.type == EventType.GIC_MATURITY){
+				scheduled.remove(key, timeout);
+				TransactionResult result = bank.mature(event.accountNumber);
+				if (result.isSuccessful()){
+					report("Scheduler: GIC " + event.accountNumber + " matured at "
+							+ Money.format(result.getBalanceInCents()));
+				}
+			}else{
+				// Due times are kept on the same grid after a late firing.
+				TimingWheel.Timeout<BankEvent> next =
+						wheel.schedule(event, timeout.getDeadline() + statementPeriod);
+				if (!scheduled.replace(key, timeout, next)){
+					next.cancel();		// Cancelled while firing
+				}else if (!bank.closeStatement(event.accountNumber).isSuccessful()){
+					drop(key, next);
+				}
+			}
+		}catch (NoAccountException e){
+			TimingWheel.Timeout<BankEvent> pending = scheduled.get(key);
+			if (pending != null && pending.getEvent() == event){
+				drop(key, pending);
+			}
+		}catch (RuntimeException e){
+			report("Error: " + event.type + " of " + event.accountNumber + " failed: " + e);
+		}
+	}
+
+	/**
+	 * Cancels a pending event, unless it has been replaced meanwhile.
+	 *
+	 * @param	key					The key of the event
+	 * @param	timeout				The timeout of the event
+	 */
+	private void drop(String key, TimingWheel.Timeout<BankEvent> timeout){
+		if (scheduled.remove(key, timeout)){
+			timeout.cancel();
+		}
+	}
+
+	/**
+	 * Reports a line to the log, if there is one.
+	 *
+	 * @param	message				The line to report
+	 */
+	private void report(String message){
+		PrintStream out = log;
+		if (out != null){
+			out.println(message);
+		}
+	}
+
+	/**
+	 * Creates a thread factory for named daemon threads.
+	 *
+	 * @param	name				The name of the threads
+	 * @return						The thread factory
+	 */
+	private static ThreadFactory daemonThreads(final String name){
+		final AtomicInteger count = new AtomicInteger();
+		return new ThreadFactory(){
+			@Override
+			public Thread newThread(Runnable task){
+				Thread thread = new Thread(task, name + "-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+}
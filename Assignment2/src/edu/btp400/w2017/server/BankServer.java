@@ -3,32 +3,167 @@
  * to connect and obtain data in a secure manner. It uses Remote Method Invocation
  * technology so programming is at an object level instead of the lower level sockets.
  *
+ * Once the bank is bound, the server reads commands from its console. The
+ * command "tax <file> [rate]" starts the year-end tax batch in the background,
+ * writing every tax statement to the file while clients keep being served.
+ * The command "accrue <period>" posts a month of interest to every
+ * interest-bearing account, recording it in the journal file
+ * accrual-<period>.journal; running it again for the same period resumes
+ * an accrual that did not finish.
+ *
+ * Every change to the bank is recorded in the write-ahead log bank.wal, with
+ * group commit, and the log is replayed when the server starts. The sample
+ * accounts are only loaded into a bank whose log is empty.
+ *
+ * GIC maturities and Chequing statements are fired by a scheduler whose
+ * pending events are saved to scheduler.state, periodically and when the
+ * server shuts down, and restored when it starts again.
+ *
  * @author Alex Wang
- * @version 0.2
+ * @version 0.6
  */
 package edu.btp400.w2017.server;
+import java.io.File;
+import java.io.IOException;
+import java.util.Scanner;
 import edu.btp400.w2017.common.*;
 public class BankServer {
 
+	private static final int DEFAULT_TAX_RATE = 15;
+	private static final String SCHEDULER_STATE_FILE = "scheduler.state";
+	private static final String LOG_FILE = "bank.wal";
+	private static Thread taxBatch;
+	private static Thread interestAccrual;
+
 	public static void main(String[] args) {
 		try{
 			System.out.println("starting server..");
 
 			java.rmi.registry.Registry registry = java.rmi.registry.LocateRegistry.createRegistry(5678);
 
-			Bank serverBank = new Bank();
-			loadBank(serverBank);
-			BankImpl bankServer = new BankImpl(serverBank);
+			final WriteAheadLog log = new WriteAheadLog(new File(LOG_FILE),
+					WriteAheadLog.SyncPolicy.GROUP_COMMIT);
+			Bank serverBank = new Bank(null, log);
+			if (serverBank.getNumberOfAccounts() == 0){
+				loadBank(serverBank);
+			}else{
+				System.out.println(serverBank.getNumberOfAccounts() + " accounts restored from " + LOG_FILE);
+			}
+			final BankScheduler scheduler = new BankScheduler(serverBank, new File(SCHEDULER_STATE_FILE));
+			scheduler.setLog(System.out);
+			scheduler.start();
+			Runtime.getRuntime().addShutdownHook(new Thread(new Runnable(){
+				@Override
+				public void run(){
+					try{
+						scheduler.stop();
+					}catch (IOException e){
+						System.out.println("Error: scheduler state not saved: " + e);
+					}
+					try{
+						log.close();
+					}catch (IOException e){
+						System.out.println("Error: write-ahead log not closed: " + e);
+					}
+				}
+			}, "server-shutdown"));
+			BankImpl bankServer = new BankImpl(serverBank, scheduler);
 
 			registry.rebind("bank", bankServer);
 
-			System.out.println("Main thread is put into wait state");
+			System.out.println("Server ready. Type \"help\" for console commands.");
+			readCommands(serverBank);
 		}
 		catch(Exception e){
 			System.out.println("Error: " + e);
 		}
 	}
 
+	/**
+	 * Reads and runs console commands until the console is closed. The RMI
+	 * threads keep the server running afterwards.
+	 *
+	 * @param bank		The bank the commands work on
+	 */
+	private static void readCommands(Bank bank){
+		Scanner console = new Scanner(System.in);
+		while (console.hasNextLine()){
+			String[] command = console.nextLine().trim().split("\\s+");
+			if (command[0].equals("tax") && command.length >= 2){
+				int taxRate = DEFAULT_TAX_RATE;
+				try{
+					if (command.length >= 3){
+						taxRate = Integer.parseInt(command[2]);
+					}
+					startTaxBatch(bank, new File(command[1]), taxRate);
+				}catch (NumberFormatException e){
+					System.out.println("Error: tax rate can only be an integer!");
+				}
+			}else if (command[0].equals("accrue") && command.length >= 2){
+				startInterestAccrual(bank, command[1]);
+			}else if (command[0].equals("help") || command[0].equals("tax") || command[0].equals("accrue")){
+				System.out.println("tax <file> [rate]   Writes every tax statement to file, taxed at rate (default "
+						+ DEFAULT_TAX_RATE + ")");
+				System.out.println("accrue <period>     Posts a month of interest for period, such as 2017-01");
+			}else if (!command[0].isEmpty()){
+				System.out.println("Unknown command: " + command[0]);
+			}
+		}
+	}
+
+	/**
+	 * Starts the year-end tax batch on a thread of its own, unless one is
+	 * already running.
+	 *
+	 * @param bank		The bank whose accounts are taxed
+	 * @param file		The file to write the statements to
+	 * @param taxRate	The tax rate to calculate the tax with
+	 */
+	private static synchronized void startTaxBatch(final Bank bank, final File file,
+			final int taxRate){
+		if (taxBatch != null && taxBatch.isAlive()){
+			System.out.println("A tax batch is already running.");
+			return;
+		}
+		taxBatch = new Thread(new Runnable(){
+			@Override
+			public void run(){
+				try{
+					new YearEndTaxBatch(bank, taxRate).run(file, System.out);
+				}catch (IOException e){
+					System.out.println("Error: tax batch failed: " + e);
+				}
+			}
+		}, "tax-batch");
+		taxBatch.start();
+	}
+
+	/**
+	 * Starts the interest accrual of a period on a thread of its own, unless
+	 * one is already running.
+	 *
+	 * @param bank		The bank whose accounts earn interest
+	 * @param period	The period to accrue, such as 2017-01
+	 */
+	private static synchronized void startInterestAccrual(final Bank bank, final String period){
+		if (interestAccrual != null && interestAccrual.isAlive()){
+			System.out.println("An interest accrual is already running.");
+			return;
+		}
+		interestAccrual = new Thread(new Runnable(){
+			@Override
+			public void run(){
+				try{
+					new InterestAccrual(bank, new File("accrual-" + period + ".journal"), period)
+							.run(System.out);
+				}catch (IOException e){
+					System.out.println("Error: interest accrual failed: " + e);
+				}
+			}
+		}, "interest-accrual");
+		interestAccrual.start();
+	}
+
 	/**
 	 * Preloads the bank with 6 accounts. 2 Savings account, 2 Chequing, and 2 GIC accounts.
 	 * The accounts are divided between two owners "Doe, Joe" and "Ryan, Mary". The GIC
@@ -0,0 +1,319 @@
+/**
+ * A hashed timing wheel: a timer for very many events, each of which costs
+ * constant time to schedule, to cancel and to fire.
+ *
+ * <p>
+ * The wheel is a ring of buckets, one per tick. An event due in k ticks goes
+ * to the bucket k ticks ahead of the current one and records how many full
+ * turns of the wheel are left before it is due. A ticker thread visits one
+ * bucket per tick, fires the events of the bucket with no turns left and
+ * counts down the others. The events of each bucket are kept in a doubly
+ * linked list, so cancelling an event only unlinks it.
+ *
+ * <p>
+ * Fired events are handed to an executor, so the ticker never waits on the
+ * work an event does. An event fires at the first tick after its deadline,
+ * so at most one tick late while the ticker keeps up. Deadlines are absolute
+ * times in milliseconds, so pending events can be saved and scheduled again
+ * after a restart; those already due fire on the first tick.
+ *
+ * @author Alex Wang
+ * @version 0.2
+ */
+package edu.btp400.w2017.server;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class TimingWheel<E> {
+
+	/**
+	 * The work to do when an event fires.
+	 */
+	public interface Handler<E> {
+
+		/**
+		 * Handles an event whose deadline has passed. Runs on a thread of the
+		 * wheel's executor.
+		 *
+		 * @param	timeout			The timeout of the event
+		 */
+		void fire(Timeout<E> timeout);
+	}
+
+	/**
+	 * An event scheduled on the wheel.
+	 */
+	public static final class Timeout<E> {
+
+		private final TimingWheel<E> wheel;
+		private final E event;
+		private final long deadline;
+		private long remainingRounds;
+		private int bucket = -1;		// -1 once fired or cancelled
+		private Timeout<E> previous;
+		private Timeout<E> next;
+
+		private Timeout(TimingWheel<E> wheel, E event, long deadline){
+			this.wheel = wheel;
+			this.event = event;
+			this.deadline = deadline;
+		}
+
+		/**
+		 * Retrieves the event.
+		 *
+		 * @return	The event
+		 */
+		public E getEvent(){ return event; }
+
+		/**
+		 * Retrieves the deadline.
+		 *
+		 * @return	The time the event is due, in milliseconds since the epoch
+		 */
+		public long getDeadline(){ return deadline; }
+
+		/**
+		 * Cancels the event, unless it has already fired.
+		 *
+		 * @return	True if the event was pending and will not fire
+		 */
+		public boolean cancel(){
+			return wheel.cancel(this);
+		}
+	}
+
+	private final long tickDuration;		// In milliseconds
+	private final Timeout<E>[] buckets;
+	private final int mask;
+	private final Executor executor;
+	private final Handler<E> handler;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final long startTime;
+	private long tick;						// The next tick to visit
+	private int pending;
+	private Thread ticker;
+
+	/**
+	 * Creates a wheel. The ticks are counted from the time it is created.
+	 *
+	 * @param	tickDuration	The duration of a tick in milliseconds
+	 * @param	wheelSize		The number of buckets, rounded up to a power of two
+	 * @param	executor		The executor that runs the handler of fired events
+	 * @param	handler			The work to do when an event fires
+	 */
+	public TimingWheel(long tickDuration, int wheelSize, Executor executor, Handler<E> handler){
+		if (tickDuration < 1 || wheelSize < 1){
+			throw new IllegalArgumentException("Tick duration and wheel size must be positive");
+		}
+		int size = Integer.highestOneBit(wheelSize);
+		if (size < wheelSize){
+			size <<= 1;
+		}
+		this.tickDuration = tickDuration;
+		// The array is only ever filled with timeouts of this wheel, all of type E
+		@SuppressWarnings("unchecked")
+		Timeout<E>[] buckets = (Timeout<E>[]) new Timeout<?>[size];
+		this.buckets = buckets;
+		this.mask = size - 1;
+		this.executor = executor;
+		this.handler = handler;
+		this.startTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * Schedules an event. A deadline already passed fires on the next tick.
+	 *
+	 * @param	event			The event
+	 * @param	deadline		The time the event is due, in milliseconds since the epoch
+	 * @return					The timeout of the event, which can cancel it
+	 */
+	public Timeout<E> schedule(E event, long deadline){
+		Timeout<E> timeout = new Timeout<E>(this, event, deadline);
+		long dueTick = Math.max(deadline - startTime, 0) / tickDuration;
+
+		lock.lock();
+		try{
+			long ticks = Math.max(dueTick, tick) - tick;
+			timeout.remainingRounds = ticks / buckets.length;
+			timeout.bucket = (int) ((tick + ticks) & mask);
+			timeout.next = buckets[timeout.bucket];
+			if (timeout.next != null){
+				timeout.next.previous = timeout;
+			}
+			buckets[timeout.bucket] = timeout;
+			pending++;
+		}finally{
+			lock.unlock();
+		}
+		return timeout;
+	}
+
+	/**
+	 * Retrieves the number of events that have not fired or been cancelled.
+	 *
+	 * @return	The number of pending events
+	 */
+	public int size(){
+		lock.lock();
+		try{
+			return pending;
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Retrieves every pending event. Takes time in proportion to the number
+	 * of events, and holds off the ticker meanwhile.
+	 *
+	 * @return	The timeouts of the pending events
+	 */
+	public List<Timeout<E>> pendingTimeouts(){
+		lock.lock();
+		try{
+			List<Timeout<E>> timeouts = new ArrayList<Timeout<E>>(pending);
+			for (Timeout<E> head : buckets){
+				for (Timeout<E> timeout = head; timeout != null; timeout = timeout.next){
+					timeouts.add(timeout);
+				}
+			}
+			return timeouts;
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Starts the ticker thread. It is a daemon thread, so it does not keep
+	 * the program running.
+	 *
+	 * @param	name			The name of the ticker thread
+	 */
+	public synchronized void start(String name){
+		if (ticker != null){
+			throw new IllegalStateException("Timing wheel already started");
+		}
+		ticker = new Thread(new Runnable(){
+			@Override
+			public void run(){
+				runTicker();
+			}
+		}, name);
+		ticker.setDaemon(true);
+		ticker.start();
+	}
+
+	/**
+	 * Stops the ticker thread and waits for it to end. Pending events stay
+	 * on the wheel, so they can still be saved.
+	 *
+	 * @throws	InterruptedException if interrupted while waiting
+	 */
+	public synchronized void stop() throws InterruptedException{
+		if (ticker != null){
+			ticker.interrupt();
+			ticker.join();
+		}
+	}
+
+	/**
+	 * Removes an event from its bucket.
+	 *
+	 * @param	timeout			The timeout of the event
+	 * @return					True if the event was pending
+	 */
+	private boolean cancel(Timeout<E> timeout){
+		lock.lock();
+		try{
+			if (timeout.bucket < 0){
+				return false;
+			}
+			unlink(timeout);
+			return true;
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Unlinks an event from its bucket. The lock must be held.
+	 *
+	 * @param	timeout			The timeout of the event
+	 */
+	private void unlink(Timeout<E> timeout){
+		if (timeout.previous != null){
+			timeout.previous.next = timeout.next;
+		}else{
+			buckets[timeout.bucket] = timeout.next;
+		}
+		if (timeout.next != null){
+			timeout.next.previous = timeout.previous;
+		}
+		timeout.previous = null;
+		timeout.next = null;
+		timeout.bucket = -1;
+		pending--;
+	}
+
+	/**
+	 * Visits a bucket each tick until interrupted, firing its events that
+	 * are due. A ticker that falls behind visits the missed buckets at once.
+	 */
+	private void runTicker(){
+		try{
+			while (!Thread.currentThread().isInterrupted()){
+				long sleep;
+				lock.lock();
+				try{
+					sleep = startTime + (tick + 1) * tickDuration - System.currentTimeMillis();
+				}finally{
+					lock.unlock();
+				}
+				if (sleep > 0){
+					Thread.sleep(sleep);
+				}
+				for (final Timeout<E> timeout : expireBucket()){
+					executor.execute(new Runnable(){
+						@Override
+						public void run(){
+							handler.fire(timeout);
+						}
+					});
+				}
+			}
+		}catch (InterruptedException e){
+			// Stopped
+		}
+	}
+
+	/**
+	 * Takes the due events out of the bucket of the current tick, counts
+	 * down the turns of the others and moves on to the next tick.
+	 *
+	 * @return	The events that are due
+	 */
+	private List<Timeout<E>> expireBucket(){
+		List<Timeout<E>> expired = new ArrayList<Timeout<E>>();
+		lock.lock();
+		try{
+			Timeout<E> timeout = buckets[(int) (tick & mask)];
+			while (timeout != null){
+				Timeout<E> next = timeout.next;
+				if (timeout.remainingRounds <= 0){
+					unlink(timeout);
+					expired.add(timeout);
+				}else{
+					timeout.remainingRounds--;
+				}
+				timeout = next;
+			}
+			tick++;
+		}finally{
+			lock.unlock();
+		}
+		return expired;
+	}
+}
@@ -0,0 +1,81 @@
+/**
+ * Measures deposits made by many threads at once, either all to one hot
+ * account or each to an account of its own. Each thread deposits $1.00 and
+ * reads the balance back, again and again. Every run is checked afterwards
+ * to have recorded every cent deposited, which a lost update would break.
+ *
+ *   java -cp bin edu.btp400.w2017.common.AccountContentionBenchmark [deposits per thread]
+ *
+ * @author Alex Wang
+ * @version 1.0
+ */
+package edu.btp400.w2017.common;
+import static edu.btp400.w2017.common.Checks.check;
+import static edu.btp400.w2017.common.Checks.checkEquals;
+
+public class AccountContentionBenchmark {
+
+  private static final int[] THREADS = { 1, 4, 16 };
+
+  public static void main(String[] args) throws InterruptedException {
+    int deposits = (args.length > 0) ? Integer.parseInt(args[0]) : 2000000;
+
+    System.out.println(Runtime.getRuntime().availableProcessors() + " processors, "
+        + deposits + " deposits per thread");
+    System.out.println("threads  one hot account (ops/s)  one account each (ops/s)");
+    for (int threads : THREADS) {
+      long hot = run(threads, deposits, true);
+      long spread = run(threads, deposits, false);
+      System.out.printf("%7d  %23d  %24d%n", threads, hot, spread);
+    }
+    Checks.done("AccountContentionBenchmark");
+  }
+
+  /**
+   * Runs the threads and checks the balances they leave.
+   *
+   * @param threads           The number of threads
+   * @param deposits          The number of deposits each thread makes
+   * @param hot               True if every thread uses the same account
+   * @return                  Deposits and balance reads per second
+   */
+  private static long run(int threads, final int deposits, boolean hot)
+      throws InterruptedException {
+    final Account[] accounts = new Account[threads];
+    for (int t = 0; t < threads; t++) {
+      accounts[t] = (hot && t > 0) ? accounts[0] : new Account("Doe, John", "C" + t, 0);
+    }
+    final long[] lastSeen = new long[threads];
+    Thread[] workers = new Thread[threads];
+    for (int t = 0; t < threads; t++) {
+      final Account account = accounts[t];
+      final int id = t;
+      workers[t] = new Thread(new Runnable() {
+        public void run() {
+          long seen = 0;
+          for (int i = 0; i < deposits; i++) {
+            account.deposit(1.00);
+            seen = Math.max(seen, account.getBalanceInCents());
+          }
+          lastSeen[id] = seen;
+        }
+      });
+    }
+    long start = System.nanoTime();
+    for (Thread worker : workers) {
+      worker.start();
+    }
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    long elapsed = System.nanoTime() - start;
+
+    long expected = 100L * deposits * (hot ? threads : 1);
+    for (int t = 0; t < threads; t++) {
+      check(lastSeen[t] >= 100L * deposits, "balance read back by thread " + t);
+      checkEquals(expected, accounts[t].getBalanceInCents(),
+          (hot ? "hot" : "own") + " account after " + threads + " threads");
+    }
+    return (long) (2.0 * deposits * threads / (elapsed / 1e9));
+  }
+}
@@ -0,0 +1,58 @@
+/**
+ * Tests of the amounts Account, Chequing, Savings and GIC accept: an amount
+ * is checked once rounded to the cent, so an amount that rounds to nothing
+ * is refused instead of reported as deposited or withdrawn. Also checks that
+ * closing a Chequing statement carries the service charges the balance does
+ * not cover.
+ *
+ * @author Alex Wang
+ * @version 1.1
+ */
+package edu.btp400.w2017.common;
+import static edu.btp400.w2017.common.Checks.check;
+import static edu.btp400.w2017.common.Checks.checkEquals;
+
+public class AccountTest {
+
+  public static void main(String[] args) {
+    Account account = new Account("Doe, John", "A1", 10);
+    check(!account.deposit(0.001), "deposit of a tenth of a cent refused");
+    check(!account.deposit(0.0049), "deposit rounding to zero cents refused");
+    check(!account.deposit(0), "deposit of zero refused");
+    check(!account.deposit(-1), "negative deposit refused");
+    check(!account.deposit(Double.NaN), "NaN deposit refused");
+    check(!account.deposit(Double.POSITIVE_INFINITY), "infinite deposit refused");
+    checkEquals(1000L, account.getBalanceInCents(), "balance after refused deposits");
+    check(account.deposit(0.005), "deposit rounding up to a cent");
+    checkEquals(1001L, account.getBalanceInCents(), "balance after a half cent deposit");
+
+    check(!account.withdraw(0.001), "withdrawal of a tenth of a cent refused");
+    check(!account.withdraw(0.0049), "withdrawal rounding to zero cents refused");
+    check(!account.withdraw(10.02), "withdrawal above the balance refused");
+    check(account.withdraw(10.01), "withdrawal of the whole balance");
+    checkEquals(0L, account.getBalanceInCents(), "balance after withdrawing everything");
+
+    Savings savings = new Savings("Doe, John", "S1", 10, 1);
+    check(!savings.deposit(0.001), "savings deposit rounding to zero cents refused");
+    check(savings.deposit(0.01), "savings deposit of a cent");
+    check(!savings.withdraw(0.001), "savings withdrawal rounding to zero cents refused");
+
+    GIC gic = new GIC("Doe, John", "G1", 10, 1, 1);
+    long gicBalance = gic.getBalanceInCents();
+    check(!gic.deposit(0.001), "GIC deposit rounding to zero cents refused");
+    checkEquals(gicBalance, gic.getBalanceInCents(), "GIC balance after refused deposit");
+
+    // Service charges the balance does not cover are carried, not dropped
+    Chequing chequing = new Chequing("Doe, John", "C1", 1, 0.75, 5);
+    check(chequing.withdraw(0.1) && chequing.withdraw(0.1), "two chequing withdrawals");
+    checkEquals(-70L, chequing.getBalanceInCents(), "chequing balance before closing");
+    checkEquals(80L, chequing.closeStatement(), "service charges taken");
+    checkEquals(0L, chequing.getCurrentBalanceInCents(), "current balance after closing");
+    checkEquals(-70L, chequing.getBalanceInCents(), "chequing balance after closing");
+    check(chequing.deposit(2), "deposit after closing");
+    checkEquals(145L, chequing.closeStatement(), "carried and new service charges taken");
+    checkEquals(55L, chequing.getBalanceInCents(), "chequing balance after the next statement");
+
+    Checks.done("AccountTest");
+  }
+}
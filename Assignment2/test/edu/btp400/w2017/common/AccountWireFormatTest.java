@@ -0,0 +1,154 @@
+/**
+ * Tests of the compact wire format of the account classes: every account
+ * type comes back from a stream as it was written, and the size of each
+ * serialized account is measured and printed.
+ *
+ * The sizes are those of one ObjectOutputStream per account, and of an
+ * array of 1000 accounts in one stream, as RMI sends search results. They
+ * are checked against bounds well under the 2,000 bytes and more each
+ * account took with default serialization.
+ *
+ * Accounts written in version 1 of the format, before a GIC counted the
+ * months of interest it had accrued, must still be read.
+ *
+ * @author Alex Wang
+ * @version 1.1
+ */
+package edu.btp400.w2017.common;
+import static edu.btp400.w2017.common.Checks.check;
+import static edu.btp400.w2017.common.Checks.checkEquals;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+public class AccountWireFormatTest {
+
+  public static void main(String[] args) throws Exception {
+    Chequing chequing = new Chequing("Doe, John", "D2345", 6000, 0.15, 5);
+    chequing.deposit(100);
+    chequing.withdraw(25.5);
+    Savings savings = new Savings("Ryan, Mary", "A5678", 15000, 0.25);
+    GIC gic = new GIC("Doe, John", "D1234", 6000, 2, 1.5);
+
+    System.out.println("Serialized size in bytes, one stream per account:");
+    for (Account account : new Account[] { chequing, savings, gic }) {
+      byte[] bytes = serialize(account);
+      Account copy = (Account) deserialize(bytes);
+      System.out.println("  " + account.getAccountType() + "  " + bytes.length);
+      checkEquals(account.getClass(), copy.getClass(), "class of the copy");
+      checkEquals(account.toString(), copy.toString(), "copy of " + account.getAccountNumber());
+      checkEquals(account.getBalanceInCents(), copy.getBalanceInCents(), "balance of the copy");
+      check(bytes.length < 256, account.getAccountType() + " fits in 256 bytes");
+    }
+
+    Account[] accounts = new Account[1000];
+    for (int i = 0; i < accounts.length; i++) {
+      String number = "N" + i;
+      switch (i % 3) {
+        case 0:  accounts[i] = new Chequing("Doe, John", number, i, 0.15, 5); break;
+        case 1:  accounts[i] = new Savings("Ryan, Mary", number, i, 0.25); break;
+        default: accounts[i] = new GIC("Lee, Ann", number, i, 2, 1.5); break;
+      }
+    }
+    byte[] bytes = serialize(accounts);
+    Account[] copies = (Account[]) deserialize(bytes);
+    System.out.println("  per account in an Account[1000] array  " + bytes.length / accounts.length);
+    for (int i = 0; i < accounts.length; i++) {
+      if (!accounts[i].toString().equals(copies[i].toString())) {
+        check(false, "copy of " + accounts[i].getAccountNumber());
+      }
+    }
+    check(bytes.length / accounts.length < 100, "an account in an array fits in 100 bytes");
+
+    // Version 1: the GIC fields end after the tax rate
+    GIC oldGic = new GIC();
+    oldGic.readExternal(new ObjectInputStream(new ByteArrayInputStream(gicVersion1())));
+    checkEquals("D1234", oldGic.getAccountNumber(), "account number of a version 1 GIC");
+    checkEquals(600000L, oldGic.getCurrentBalanceInCents(), "balance of a version 1 GIC");
+    checkEquals(0, oldGic.getMonthsAccrued(), "months accrued by a version 1 GIC");
+    checkEquals(gic.toString(), oldGic.toString(), "version 1 GIC as a new one");
+
+    Savings oldSavings = new Savings();
+    oldSavings.readExternal(new ObjectInputStream(new ByteArrayInputStream(
+        savingsVersion1())));
+    checkEquals(savings.toString(), oldSavings.toString(), "version 1 savings account");
+
+    try {
+      new GIC().readExternal(new ObjectInputStream(new ByteArrayInputStream(
+          withVersion(gicVersion1(), 9))));
+      check(false, "unknown version refused");
+    } catch (InvalidObjectException e) {
+      check(true, "unknown version refused");
+    }
+
+    Checks.done("AccountWireFormatTest");
+  }
+
+  /**
+   * Writes the GIC D1234 of the test as version 1 of the format wrote it.
+   */
+  private static byte[] gicVersion1() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(bytes);
+    writeAccountVersion1(out, "Doe, John", "D1234", 600000);
+    out.writeInt(2);
+    out.writeDouble(1.5);
+    out.writeInt(15);
+    out.close();
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Writes the savings account A5678 of the test as version 1 of the format
+   * wrote it.
+   */
+  private static byte[] savingsVersion1() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(bytes);
+    writeAccountVersion1(out, "Ryan, Mary", "A5678", 1500000);
+    out.writeDouble(0.25);
+    out.writeInt(15);
+    out.close();
+    return bytes.toByteArray();
+  }
+
+  private static void writeAccountVersion1(ObjectOutputStream out, String fullName,
+      String accountNumber, long balance) throws IOException {
+    out.writeByte(1);
+    out.writeBoolean(true);
+    out.writeUTF(fullName);
+    out.writeBoolean(true);
+    out.writeUTF(accountNumber);
+    out.writeLong(balance);
+  }
+
+  /**
+   * Returns a stream of one account with its version byte replaced.
+   */
+  private static byte[] withVersion(byte[] stream, int version) throws IOException {
+    ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(stream));
+    byte[] fields = new byte[in.available()];
+    in.readFully(fields);
+    fields[0] = (byte) version;
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(bytes);
+    out.write(fields);
+    out.close();
+    return bytes.toByteArray();
+  }
+
+  static byte[] serialize(Object value) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(bytes);
+    out.writeObject(value);
+    out.close();
+    return bytes.toByteArray();
+  }
+
+  static Object deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+    return new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject();
+  }
+}
@@ -0,0 +1,87 @@
+/**
+ * Tests of Bank.addAccounts() and removeAccounts(): the result array has
+ * one element per element of the batch, in order. Of two accounts with the
+ * same number in one batch only the first is added, and an account whose
+ * number is already in the bank, a null account or one without a number is
+ * not. Only the first of two removals of the same number in one batch
+ * removes the account. The accounts logged are the ones reported added.
+ *
+ * @author Alex Wang
+ * @version 1.0
+ */
+package edu.btp400.w2017.common;
+import static edu.btp400.w2017.common.Checks.check;
+import static edu.btp400.w2017.common.Checks.checkEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class BankBatchTest {
+
+  public static void main(String[] args) throws Exception {
+    File file = File.createTempFile("bank", ".wal");
+    file.delete();
+    WriteAheadLog log = new WriteAheadLog(file, WriteAheadLog.SyncPolicy.SYNC);
+    Bank bank = new Bank("Test", log);
+    Account existing = new Savings("Doe, John", "B1", 10, 1);
+    check(bank.addAccount(existing), "add B1");
+
+    Account first = new Savings("Roe, Jim", "B2", 20, 1);
+    Account second = new Savings("Poe, Ann", "B2", 30, 1);
+    Account again = new Savings("Moe, Tom", "B1", 40, 1);
+    Account other = new Chequing("Loe, Sue", "B3", 50, 0.25, 3);
+    List<Account> batch = new ArrayList<Account>(Arrays.asList(
+        first, again, null, new Account("Noe, Al", null, 5), second, other));
+    boolean[] added = bank.addAccounts(batch);
+    checkEquals(batch.size(), added.length, "one result per account added");
+    check(added[0], "first of two accounts with the same number added");
+    check(!added[1], "account whose number is in the bank not added");
+    check(!added[2], "null account not added");
+    check(!added[3], "account without a number not added");
+    check(!added[4], "second of two accounts with the same number not added");
+    check(added[5], "account after the refused ones added");
+    check(bank.getAccount("B2") == first, "B2 is the first account given");
+    check(bank.getAccount("B1") == existing, "B1 is the account already in the bank");
+    checkEquals(3, bank.getNumberOfAccounts(), "accounts after the batch");
+
+    checkEquals(0, bank.addAccounts(new ArrayList<Account>()).length, "result of an empty batch");
+    checkEquals(0, bank.addAccounts(null).length, "result of no batch");
+    boolean[] none = bank.addAccounts(Arrays.asList(again, second));
+    check(!none[0] && !none[1], "batch of numbers all in the bank adds nothing");
+
+    // The log holds the accounts reported added
+    log.close();
+    log = new WriteAheadLog(file, WriteAheadLog.SyncPolicy.SYNC);
+    bank = new Bank("Test", log);
+    checkEquals(3, bank.getNumberOfAccounts(), "accounts replayed");
+    checkEquals("Roe, Jim", bank.getAccount("B2").getFullName(), "first B2 replayed");
+    checkEquals("Doe, John", bank.getAccount("B1").getFullName(), "B1 in the bank replayed");
+
+    Account b2 = bank.getAccount("B2");
+    Account b3 = bank.getAccount("B3");
+    Account[] removed = bank.removeAccounts(Arrays.asList("B2", "NONE", null, "B2", "B3"));
+    checkEquals(5, removed.length, "one result per account number removed");
+    check(removed[0] == b2, "first removal of B2 returns it");
+    checkEquals(null, removed[1], "removal of a number not in the bank");
+    checkEquals(null, removed[2], "removal of a null number");
+    checkEquals(null, removed[3], "second removal of B2 in the batch");
+    check(removed[4] == b3, "removal after the refused ones returns B3");
+    checkEquals(1, bank.getNumberOfAccounts(), "accounts after the removals");
+    removed = bank.removeAccounts(Arrays.asList("B2", "B3"));
+    check(removed[0] == null && removed[1] == null, "removals of numbers no longer in the bank");
+    checkEquals(0, bank.removeAccounts(new ArrayList<String>()).length, "result of an empty batch");
+    checkEquals(0, bank.removeAccounts(null).length, "result of no batch");
+    log.close();
+
+    log = new WriteAheadLog(file, WriteAheadLog.SyncPolicy.SYNC);
+    bank = new Bank("Test", log);
+    log.close();
+    checkEquals(1, bank.getNumberOfAccounts(), "accounts replayed after the removals");
+    check(bank.getAccount("B1") != null, "B1 replayed after the removals");
+
+    file.delete();
+    Checks.done("BankBatchTest");
+  }
+}
@@ -0,0 +1,199 @@
+/**
+ * Tests of the page tokens of Bank.getAccounts(), search(double, int,
+ * String) and searchByAccountName(String, int, String): paging while other
+ * threads open and close accounts returns every account that stays open
+ * exactly once and in order, and a token that no page returned, or that
+ * another search returned, is a position in the account numbers like any
+ * other rather than an error.
+ *
+ * @author Alex Wang
+ * @version 1.0
+ */
+package edu.btp400.w2017.common;
+import static edu.btp400.w2017.common.Checks.check;
+import static edu.btp400.w2017.common.Checks.checkEquals;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BankPagingTest {
+
+  private static final int ACCOUNTS = 2000;
+  private static final int PAGE_SIZE = 7;
+  private static final String NAME = "Doe, John";
+  private static final double BALANCE = 10;
+
+  /**
+   * Fetches one page of a kind of paged read.
+   */
+  interface Pager {
+    AccountPage page(Bank bank, String pageToken) throws NoAccountException;
+  }
+
+  public static void main(String[] args) throws Exception {
+    final Bank bank = new Bank();
+    ArrayList<Account> accounts = new ArrayList<Account>();
+    for (int i = 0; i < ACCOUNTS; i++) {
+      accounts.add(new Savings(NAME, stable(i), BALANCE, 1));
+    }
+    bank.addAccounts(accounts);
+    // The balance searched for includes the interest of the year
+    final double balance = accounts.get(0).getBalance();
+
+    Pager all = new Pager() {
+      @Override
+      public AccountPage page(Bank bank, String pageToken) {
+        return bank.getAccounts(PAGE_SIZE, pageToken);
+      }
+    };
+    Pager byBalance = new Pager() {
+      @Override
+      public AccountPage page(Bank bank, String pageToken) throws NoAccountException {
+        return bank.search(balance, PAGE_SIZE, pageToken);
+      }
+    };
+    Pager byName = new Pager() {
+      @Override
+      public AccountPage page(Bank bank, String pageToken) throws NoAccountException {
+        return bank.searchByAccountName(NAME, PAGE_SIZE, pageToken);
+      }
+    };
+    Pager byShortName = new Pager() {
+      @Override
+      public AccountPage page(Bank bank, String pageToken) throws NoAccountException {
+        return bank.searchByAccountName("Do", PAGE_SIZE, pageToken);
+      }
+    };
+
+    checkPagingWhileChanging(bank, all, "getAccounts");
+    checkPagingWhileChanging(bank, byBalance, "search by balance");
+    checkPagingWhileChanging(bank, byName, "search by name");
+    checkPagingWhileChanging(bank, byShortName, "search by a short name");
+
+    // A token naming an account that was never opened resumes right after it
+    checkEquals(stable(11), bank.getAccounts(1, stable(10) + "zz").getAccounts()[0].getAccountNumber(),
+        "getAccounts after a token no page returned");
+    checkEquals(stable(11), bank.search(balance, 1, stable(10) + "zz").getAccounts()[0]
+        .getAccountNumber(), "search by balance after a token no page returned");
+    checkEquals(stable(11), bank.searchByAccountName(NAME, 1, stable(10) + "zz").getAccounts()[0]
+        .getAccountNumber(), "search by name after a token no page returned");
+
+    // A token past every account number gives an empty last page, not an error
+    for (Pager pager : new Pager[] { all, byBalance, byName, byShortName }) {
+      AccountPage page = pager.page(bank, "~");
+      checkEquals(0, page.getAccounts().length, "empty page after the last account number");
+      check(!page.hasNextPage(), "no page after the last account number");
+    }
+    AccountPage page = bank.search(balance + 1, PAGE_SIZE, stable(3));
+    checkEquals(0, page.getAccounts().length, "later page of a balance no account has is empty");
+    try {
+      bank.search(balance + 1, PAGE_SIZE, null);
+      check(false, "first page of a balance no account has fails");
+    } catch (NoAccountException e) {
+      check(true, "first page of a balance no account has fails");
+    }
+
+    // A token from one read continues another read at the same account number
+    check(bank.addAccount(new Savings("Roe, Jim", stable(20) + "R", 99, 1)), "add an account of Roe");
+    String token = bank.searchByAccountName("Roe, Jim", 1, null).getAccounts()[0].getAccountNumber();
+    page = bank.getAccounts(2, token);
+    checkEquals(stable(21), page.getAccounts()[0].getAccountNumber(),
+        "getAccounts from the position of a search by name");
+    page = bank.searchByAccountName(NAME, 2, bank.getAccounts(3, null).getNextPageToken());
+    checkEquals(stable(3), page.getAccounts()[0].getAccountNumber(),
+        "search by name from the token of getAccounts");
+    page = bank.search(balance, 2, token);
+    checkEquals(stable(21), page.getAccounts()[0].getAccountNumber(),
+        "search by balance from the position of an account with another balance");
+
+    Checks.done("BankPagingTest");
+  }
+
+  private static String stable(int i) {
+    return String.format("A%05d", i);
+  }
+
+  /**
+   * Pages through a read while another thread opens and closes accounts
+   * between those that stay open, and checks that the pages hold every
+   * account that stays open once, in account number order.
+   *
+   * @param bank              The bank
+   * @param pager             The read
+   * @param name              The name of the read, for the failure messages
+   * @throws Exception        If the read fails or is interrupted
+   */
+  private static void checkPagingWhileChanging(final Bank bank, Pager pager, String name)
+      throws Exception {
+    final AtomicBoolean stop = new AtomicBoolean();
+    final AtomicInteger changes = new AtomicInteger();
+    Thread churn = new Thread() {
+      @Override
+      public void run() {
+        int i = 0;
+        while (!stop.get()) {
+          String number = stable(i % ACCOUNTS) + "X";
+          bank.addAccount(new Savings(NAME, number, BALANCE, 1));
+          if (i % 3 != 0) {
+            bank.removeAccount(stable((i * 7) % ACCOUNTS) + "X");
+          }
+          i++;
+          changes.set(i);
+        }
+      }
+    };
+    churn.setDaemon(true);
+    churn.start();
+    while (changes.get() == 0) {
+      Thread.yield();
+    }
+
+    int changesBefore = changes.get();
+    List<String> seen = new ArrayList<String>();
+    String token = null;
+    int pages = 0;
+    do {
+      AccountPage page = pager.page(bank, token);
+      for (Account account : page.getAccounts()) {
+        seen.add(account.getAccountNumber());
+      }
+      token = page.getNextPageToken();
+      pages++;
+      if (pages % 20 == 0) {
+        Thread.yield();
+      }
+    } while (token != null);
+    int changesWhilePaging = changes.get() - changesBefore;
+    stop.set(true);
+    churn.join();
+
+    Set<String> stableSeen = new HashSet<String>();
+    boolean ordered = true;
+    for (int i = 0; i < seen.size(); i++) {
+      if (i > 0 && seen.get(i - 1).compareTo(seen.get(i)) >= 0) {
+        ordered = false;
+      }
+      if (!seen.get(i).endsWith("X")) {
+        stableSeen.add(seen.get(i));
+      }
+    }
+    check(ordered, name + " pages in order without repeats");
+    boolean complete = true;
+    for (int i = 0; i < ACCOUNTS; i++) {
+      complete &= stableSeen.contains(stable(i));
+    }
+    check(complete, name + " pages hold every account that stayed open");
+    check(changesWhilePaging > 0, name + " paged while accounts were opened and closed");
+
+    // Clear the churned accounts for the next read
+    List<String> churned = new ArrayList<String>();
+    for (int i = 0; i < ACCOUNTS; i++) {
+      churned.add(stable(i) + "X");
+    }
+    bank.removeAccounts(churned);
+  }
+}
@@ -0,0 +1,143 @@
+/**
+ * Tests of removing accounts while deposits and withdrawals are made to
+ * them, first with the threads stepped through the race one at a time by
+ * holding the account's lock, then freely. Every deposit the bank reports as successful must show in the
+ * balance of the account removed, and once an account is removed, changes
+ * to it must fail with NoAccountException.
+ *
+ * @author Alex Wang
+ * @version 1.0
+ */
+package edu.btp400.w2017.common;
+import static edu.btp400.w2017.common.Checks.check;
+import static edu.btp400.w2017.common.Checks.checkEquals;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class BankRemovalTest {
+
+  private static final int ROUNDS = 200;
+  private static final int THREADS = 4;
+
+  public static void main(String[] args) throws InterruptedException {
+    final Bank bank = new Bank();
+
+    // A removed account takes no more changes
+    bank.addAccount(new Account("Doe, John", "R0", 10));
+    Account removed = bank.removeAccount("R0");
+    check(removed != null, "account removed");
+    checkEquals(null, bank.removeAccount("R0"), "second removal");
+    try {
+      bank.deposit("R0", 1);
+      check(false, "deposit into a removed account fails");
+    } catch (NoAccountException e) {
+      check(true, "deposit into a removed account fails");
+    }
+    try {
+      bank.withdraw("R0", 1);
+      check(false, "withdrawal from a removed account fails");
+    } catch (NoAccountException e) {
+      check(true, "withdrawal from a removed account fails");
+    }
+    checkEquals(1000L, removed.getBalanceInCents(), "removed account unchanged");
+
+    // A deposit that found the account before a removal, and is waiting for
+    // the account's lock, either lands before the removal or fails
+    for (int round = 0; round < 2; round++) {
+      final String accountNumber = "W" + round;
+      final Account account = new Account("Doe, John", accountNumber, 0);
+      bank.addAccount(account);
+      final boolean[] deposited = new boolean[1];
+      final long[] balanceAtRemoval = new long[1];
+      Thread depositor = new Thread(new Runnable() {
+        public void run() {
+          try {
+            deposited[0] = bank.deposit(accountNumber, 1.00).isSuccessful();
+          } catch (NoAccountException e) {
+            deposited[0] = false;
+          }
+        }
+      });
+      Thread remover = new Thread(new Runnable() {
+        public void run() {
+          balanceAtRemoval[0] = bank.removeAccount(accountNumber).getBalanceInCents();
+        }
+      });
+      account.lock();
+      try {
+        depositor.start();
+        waitUntilBlocked(depositor);
+        remover.start();
+        waitUntilBlocked(remover);
+        if (round == 1) {
+          // Let the two race for the lock while the removal finishes
+          account.unlock();
+          remover.join();
+          account.lock();
+        }
+      } finally {
+        account.unlock();
+      }
+      depositor.join();
+      remover.join();
+      checkEquals(deposited[0] ? 100L : 0L, balanceAtRemoval[0],
+          "balance at removal of " + accountNumber + " holds every deposit reported");
+      checkEquals(balanceAtRemoval[0], account.getBalanceInCents(),
+          "no change to " + accountNumber + " after its removal");
+    }
+
+    // Deposits racing a removal are either in the removed balance or fail
+    for (int round = 0; round < ROUNDS; round++) {
+      final String accountNumber = "R" + (round + 1);
+      bank.addAccount(new Account("Doe, John", accountNumber, 0));
+      final AtomicLong deposited = new AtomicLong();
+      Thread[] depositors = new Thread[THREADS];
+      for (int t = 0; t < THREADS; t++) {
+        depositors[t] = new Thread(new Runnable() {
+          public void run() {
+            try {
+              while (true) {
+                if (bank.deposit(accountNumber, 1.00).isSuccessful()) {
+                  deposited.addAndGet(100);
+                }
+                if (bank.withdraw(accountNumber, 0.50).isSuccessful()) {
+                  deposited.addAndGet(-50);
+                }
+              }
+            } catch (NoAccountException e) {
+              // Removed
+            }
+          }
+        });
+        depositors[t].start();
+      }
+      Thread.yield();
+      Account account = (round % 2 == 0) ? bank.removeAccount(accountNumber)
+          : bank.removeAccounts(Arrays.asList(accountNumber, "missing"))[0];
+      for (Thread depositor : depositors) {
+        depositor.join();
+      }
+      if (account == null || account.getBalanceInCents() != deposited.get()) {
+        checkEquals(deposited.get(), (account == null) ? null : account.getBalanceInCents(),
+            "balance of removed account " + accountNumber);
+      }
+    }
+    check(true, ROUNDS + " removals raced by deposits and withdrawals");
+    checkEquals(0, bank.getNumberOfAccounts(), "every account removed");
+
+    Checks.done("BankRemovalTest");
+  }
+
+  /**
+   * Waits until a thread is parked, waiting for a lock, or has ended.
+   *
+   * @param thread            The thread
+   */
+  private static void waitUntilBlocked(Thread thread) throws InterruptedException {
+    while (thread.getState() != Thread.State.WAITING
+        && thread.getState() != Thread.State.TERMINATED) {
+      Thread.sleep(1);
+    }
+  }
+}
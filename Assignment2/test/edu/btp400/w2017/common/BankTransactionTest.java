@@ -0,0 +1,110 @@
+/**
+ * Tests of Bank.execute(): a failed transaction leaves every account as it
+ * was and opens nothing, and a transaction that opens an account racing an
+ * addAccount() for the same number either opens its own account or fails
+ * as a whole, so no money moved into the account it opened is lost.
+ *
+ * @author Alex Wang
+ * @version 1.0
+ */
+package edu.btp400.w2017.common;
+import static edu.btp400.w2017.common.Checks.check;
+import static edu.btp400.w2017.common.Checks.checkEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+public class BankTransactionTest {
+
+  private static final int RACES = 3000;
+
+  public static void main(String[] args) throws Exception {
+    Bank bank = new Bank();
+    check(bank.addAccount(new Savings("Doe, John", "A1", 1000, 1)), "add A1");
+    check(bank.addAccount(new Savings("Roe, Jim", "A2", 20, 1)), "add A2");
+    long a1 = balanceOf(bank, "A1");
+    long a2 = balanceOf(bank, "A2");
+
+    // Rollback: a deposit into a missing account undoes the withdrawal before it
+    check(!bank.execute(Arrays.asList(BankOperation.withdraw("A1", 10),
+        BankOperation.deposit("NONE", 10))), "transaction into a missing account fails");
+    checkEquals(a1, balanceOf(bank, "A1"), "A1 put back after a failed transaction");
+
+    // Rollback: an account opened and moved into is dropped when a later step fails
+    check(!bank.execute(Arrays.asList(BankOperation.open(new Savings("Poe, Ann", "Y", 0, 1)),
+        BankOperation.transfer("A1", "Y", 5), BankOperation.withdraw("A2", 1000))),
+        "transaction withdrawing too much fails");
+    checkEquals(null, bank.getAccount("Y"), "account opened by a failed transaction dropped");
+    checkEquals(a1, balanceOf(bank, "A1"), "A1 put back after a failed transfer");
+    checkEquals(a2, balanceOf(bank, "A2"), "A2 unchanged by a failed transaction");
+
+    check(bank.execute(Arrays.asList(BankOperation.open(new Savings("Poe, Ann", "Y", 0, 1)),
+        BankOperation.transfer("A1", "Y", 5))), "transaction opening Y");
+    checkEquals(500L, bank.getAccount("Y").getCurrentBalanceInCents(), "Y opened with $5");
+    check(!bank.execute(Arrays.asList(BankOperation.open(new Savings("Poe, Ann", "Y", 0, 1)))),
+        "opening a number in use fails");
+
+    // Race: a transaction opening X and moving $50 into it against addAccount(X)
+    long start = bank.getAccount("A1").getCurrentBalanceInCents();
+    int transactionsWon = 0;
+    int addsWon = 0;
+    for (int i = 0; i < RACES; i++) {
+      final String number = "X" + i;
+      final Account opened = new Savings("Poe, Ann", number, 0, 1);
+      final Account added = new Savings("Moe, Tom", number, 0, 1);
+      final List<BankOperation> operations = new ArrayList<BankOperation>(Arrays.asList(
+          BankOperation.withdraw("A1", 0.5), BankOperation.open(opened),
+          BankOperation.deposit(number, 0.5)));
+      final boolean[] results = new boolean[2];
+      final Bank racing = bank;
+      final CountDownLatch go = new CountDownLatch(1);
+      Thread adder = new Thread() {
+        @Override
+        public void run() {
+          await(go);
+          results[1] = racing.addAccount(added);
+        }
+      };
+      adder.start();
+      go.countDown();
+      results[0] = bank.execute(operations);
+      adder.join();
+
+      Account account = bank.getAccount(number);
+      if (results[0] == results[1]) {
+        check(false, "exactly one of the transaction and the add wins " + number);
+      }
+      if (results[0]) {
+        transactionsWon++;
+        if (account != opened || account.getCurrentBalanceInCents() != 50) {
+          check(false, "the account opened by the transaction holds its deposit " + number);
+        }
+      } else {
+        addsWon++;
+        if (account != added || account.getCurrentBalanceInCents() != 0) {
+          check(false, "the account added is left alone " + number);
+        }
+      }
+    }
+    check(true, "every race has one winner that keeps its account");
+    checkEquals(start - 50L * transactionsWon, bank.getAccount("A1").getCurrentBalanceInCents(),
+        "A1 lost only the money moved into accounts opened");
+    System.out.println(transactionsWon + " transactions and " + addsWon + " adds won");
+
+    Checks.done("BankTransactionTest");
+  }
+
+  private static long balanceOf(Bank bank, String accountNumber) {
+    return bank.getAccount(accountNumber).getCurrentBalanceInCents();
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
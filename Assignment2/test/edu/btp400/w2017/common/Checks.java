@@ -0,0 +1,67 @@
+/**
+ * This class holds the checks used by the tests of the project.
+ *
+ * The tests are plain programs, one class per subject with a main method,
+ * so they run with nothing but the JDK:
+ *
+ *   javac -d bin $(find src test -name '*.java')
+ *   java -cp bin edu.btp400.w2017.common.MoneyTest
+ *
+ * A failed check throws an AssertionError, which ends the test with a
+ * non-zero exit status. Classes named ...Benchmark are not tests; they print
+ * measurements and check only that the work they measured was done right.
+ *
+ * @author Alex Wang
+ * @version 1.0
+ */
+package edu.btp400.w2017.common;
+
+public final class Checks {
+
+  private static int passed;
+
+  /**
+   * Checks is only a holder of static checks and is never instantiated.
+   */
+  private Checks() {
+  }
+
+  /**
+   * Checks that a condition holds.
+   *
+   * @param condition         The condition
+   * @param message           What was checked, for the failure message
+   * @throws AssertionError   If the condition does not hold
+   */
+  public static void check(boolean condition, String message) {
+    if (!condition) {
+      throw new AssertionError("Check failed: " + message);
+    }
+    passed++;
+  }
+
+  /**
+   * Checks that a value is the one expected.
+   *
+   * @param expected          The value expected
+   * @param actual            The value found
+   * @param message           What was checked, for the failure message
+   * @throws AssertionError   If the values differ
+   */
+  public static void checkEquals(Object expected, Object actual, String message) {
+    if (expected == null ? actual != null : !expected.equals(actual)) {
+      throw new AssertionError("Check failed: " + message + ": expected <" + expected
+          + "> but was <" + actual + ">");
+    }
+    passed++;
+  }
+
+  /**
+   * Reports the number of checks that passed.
+   *
+   * @param test              The name of the test
+   */
+  public static void done(String test) {
+    System.out.println(test + ": " + passed + " checks passed");
+  }
+}
@@ -0,0 +1,176 @@
+/**
+ * Measures the throughput of a Bank used by many threads at once, as the RMI
+ * runtime uses it, against the original store: a plain list of accounts with
+ * every call made under one lock.
+ *
+ * Each thread looks an account up by number and searches by last name in a
+ * loop. The names are built from syllables, so each search finds a few
+ * accounts, as a search for a real name does. Thread 0 also removes and adds
+ * an account back every 16 calls, so readers run while the account set
+ * changes. Both stores are checked afterwards to hold every account exactly
+ * once.
+ *
+ *   java -cp bin edu.btp400.w2017.common.ConcurrentBankBenchmark [accounts] [seconds]
+ *
+ * @author Alex Wang
+ * @version 1.0
+ */
+package edu.btp400.w2017.common;
+import static edu.btp400.w2017.common.Checks.checkEquals;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ConcurrentBankBenchmark {
+
+  private static final String[] SYLLABLES = { "an", "be", "cor", "da", "el", "fi", "gar",
+      "ho", "is", "ju", "ka", "lo", "mi", "nor", "ol", "pe", "qui", "ra", "si", "tu" };
+  private static final int[] THREADS = { 1, 4, 16 };
+
+  /**
+   * The operations both stores offer.
+   */
+  private interface Store {
+    Account get(String accountNumber);
+    int searchByName(String name);
+    void remove(String accountNumber);
+    void add(Account account);
+    int size();
+  }
+
+  /**
+   * The original store: a list scanned in full, one lock for every call.
+   */
+  private static final class ListStore implements Store {
+    private final ArrayList<Account> accounts = new ArrayList<Account>();
+
+    public synchronized Account get(String accountNumber) {
+      for (Account account : accounts) {
+        if (account.getAccountNumber().equals(accountNumber)) {
+          return account;
+        }
+      }
+      return null;
+    }
+
+    public synchronized int searchByName(String name) {
+      int found = 0;
+      for (Account account : accounts) {
+        if (account.getFullName().contains(name)) {
+          found++;
+        }
+      }
+      return found;
+    }
+
+    public synchronized void remove(String accountNumber) {
+      for (int i = 0; i < accounts.size(); i++) {
+        if (accounts.get(i).getAccountNumber().equals(accountNumber)) {
+          accounts.remove(i);
+          return;
+        }
+      }
+    }
+
+    public synchronized void add(Account account) { accounts.add(account); }
+
+    public synchronized int size() { return accounts.size(); }
+  }
+
+  /**
+   * The Bank.
+   */
+  private static final class BankStore implements Store {
+    private final Bank bank = new Bank();
+
+    public Account get(String accountNumber) { return bank.getAccount(accountNumber); }
+
+    public int searchByName(String name) {
+      try {
+        return bank.searchByAccountName(name).length;
+      } catch (NoAccountException e) {
+        return 0;
+      }
+    }
+
+    public void remove(String accountNumber) { bank.removeAccount(accountNumber); }
+
+    public void add(Account account) { bank.addAccount(account); }
+
+    public int size() { return bank.getNumberOfAccounts(); }
+  }
+
+  public static void main(String[] args) throws Exception {
+    int accounts = (args.length > 0) ? Integer.parseInt(args[0]) : 5000;
+    double seconds = (args.length > 1) ? Double.parseDouble(args[1]) : 2;
+
+    System.out.println(accounts + " accounts, " + Runtime.getRuntime().availableProcessors()
+        + " processors");
+    System.out.println("threads  list+lock ops/s  Bank ops/s");
+    for (int threads : THREADS) {
+      long list = run(new ListStore(), accounts, threads, seconds);
+      long bank = run(new BankStore(), accounts, threads, seconds);
+      System.out.printf("%7d  %15d  %10d%n", threads, list, bank);
+    }
+  }
+
+  private static long run(final Store store, final int accounts, int threads, double seconds)
+      throws InterruptedException {
+    for (int i = 0; i < accounts; i++) {
+      store.add(account(i));
+    }
+    final long end = System.nanoTime() + (long) (seconds * 1e9);
+    final AtomicLong operations = new AtomicLong();
+    Thread[] workers = new Thread[threads];
+    for (int t = 0; t < threads; t++) {
+      final int id = t;
+      workers[t] = new Thread(new Runnable() {
+        public void run() {
+          long count = 0;
+          int i = id;
+          while (System.nanoTime() < end) {
+            int n = (i * 7919) % accounts;
+            store.get("N" + n);
+            store.searchByName(lastName(i % accounts));
+            if (id == 0 && i % 16 == 0) {
+              store.remove("N" + n);
+              store.add(account(n));
+              count += 2;
+            }
+            count += 2;
+            i++;
+          }
+          operations.addAndGet(count);
+        }
+      });
+      workers[t].start();
+    }
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    checkEquals(accounts, store.size(), "accounts left in " + store.getClass().getSimpleName());
+    return (long) (operations.get() / seconds);
+  }
+
+  private static Account account(int i) {
+    return new Savings(lastName(i) + ", " + firstName(i), "N" + i, i % 1000, 1);
+  }
+
+  /**
+   * Builds the last name of an account from syllables, so the names spread
+   * over many trigrams as real names do and a search finds a few accounts.
+   *
+   * @param i                 The number of the account
+   * @return                  The last name
+   */
+  private static String lastName(int i) {
+    return capitalize(SYLLABLES[i % 20] + SYLLABLES[(i / 20) % 20] + SYLLABLES[(i / 400) % 20]);
+  }
+
+  private static String firstName(int i) {
+    return capitalize(SYLLABLES[(i * 7) % 20] + SYLLABLES[(i * 3 / 20) % 20]);
+  }
+
+  private static String capitalize(String name) {
+    return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+  }
+}
@@ -0,0 +1,214 @@
+/**
+ * Tests of monthly interest: the interest income of a savings account counts
+ * the interest posted in the year once, an accrual posts every account once
+ * per period, and an accrual resumed after a crash in the middle of a
+ * partition does not post the accounts already posted again. The postings
+ * of an accrual on a logged bank are replayed from its log.
+ *
+ * @author Alex Wang
+ * @version 1.1
+ */
+package edu.btp400.w2017.common;
+import static edu.btp400.w2017.common.Checks.check;
+import static edu.btp400.w2017.common.Checks.checkEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+public class InterestAccrualTest {
+
+  public static void main(String[] args) throws Exception {
+    // Nothing posted yet: the whole year is projected, as before
+    Savings savings = new Savings("Doe, John", "S1", 1000, 6);
+    checkEquals(6000L, cents(savings.getInterestIncome()), "interest income of a new year");
+    checkEquals(106000L, savings.getBalanceInCents(), "final balance of a new year");
+
+    long posted = 0;
+    for (int month = 1; month <= 3; month++) {
+      posted += post(savings);
+    }
+    long projected = Math.round(Money.percentOf(savings.getCurrentBalanceInCents(), 6) * 9 / 12.0);
+    checkEquals(posted + projected, cents(savings.getInterestIncome()),
+        "interest income after three months");
+    checkEquals(savings.getCurrentBalanceInCents() + projected, savings.getBalanceInCents(),
+        "final balance after three months");
+
+    for (int month = 4; month <= 12; month++) {
+      posted += post(savings);
+    }
+    checkEquals(posted, cents(savings.getInterestIncome()), "interest income of a posted year");
+    checkEquals(savings.getCurrentBalanceInCents(), savings.getBalanceInCents(),
+        "final balance of a posted year");
+    checkEquals(100000L + posted, savings.getCurrentBalanceInCents(), "balance of a posted year");
+
+    long thirteenth = post(savings);
+    projected = Math.round(Money.percentOf(savings.getCurrentBalanceInCents(), 6) * 11 / 12.0);
+    checkEquals(thirteenth + projected, cents(savings.getInterestIncome()),
+        "interest income once a new year starts");
+
+    Savings copy = roundTrip(savings);
+    checkEquals(13, copy.getMonthsAccrued(), "months accrued after a round trip");
+    checkEquals(savings.getInterestIncome(), copy.getInterestIncome(),
+        "interest income after a round trip");
+
+    // A whole accrual posts every account once, and running it again posts nothing
+    Bank bank = newBank("A");
+    File journal = File.createTempFile("accrual", ".journal");
+    journal.delete();
+    long interest = new InterestAccrual(bank, journal, "2017-01", 8, 2).run(null);
+    check(interest > 0, "interest posted");
+    checkMonths(bank, 1, "after an accrual");
+    checkEquals(0L, new InterestAccrual(bank, journal, "2017-01", 8, 2).run(null),
+        "interest posted by a second run");
+    checkMonths(bank, 1, "after a second run");
+    journal.delete();
+
+    // A crash after posting part of a partition: its months were recorded
+    // and some accounts posted, but the partition was never marked done
+    bank = newBank("B");
+    journal = File.createTempFile("accrual", ".journal");
+    Writer out = new OutputStreamWriter(new FileOutputStream(journal), "UTF-8");
+    out.write("period 2017-02 partitions 4\n");
+    int postedBeforeCrash = 0;
+    Iterator<Account> accounts = bank.iterateAccounts();
+    while (accounts.hasNext()) {
+      Account account = accounts.next();
+      if (account instanceof InterestBearing && InterestAccrual.partitionOf(account, 4) == 0) {
+        out.write("months 0 " + account.getAccountNumber() + " 0\n");
+        if (postedBeforeCrash % 2 == 0) {
+          post((InterestBearing) account);
+        }
+        postedBeforeCrash++;
+      }
+    }
+    out.write("post 0 B");  // Cut short by the crash
+    out.close();
+    check(postedBeforeCrash > 2, "accounts in the partition cut short");
+
+    new InterestAccrual(bank, journal, "2017-02", 4, 2).run(null);
+    checkMonths(bank, 1, "after resuming a partition cut short");
+    checkEquals(0L, new InterestAccrual(bank, journal, "2017-02", 4, 2).run(null),
+        "interest posted after the resumed run");
+    checkMonths(bank, 1, "after running the resumed accrual again");
+    journal.delete();
+
+    // The postings are in the bank's log once the accrual is done
+    File logFile = File.createTempFile("bank", ".wal");
+    logFile.delete();
+    WriteAheadLog log = new WriteAheadLog(logFile, WriteAheadLog.SyncPolicy.GROUP_COMMIT);
+    bank = new Bank("Test", log);
+    bank.addAccounts(accountsOf(newBank("C")));
+    journal = File.createTempFile("accrual", ".journal");
+    journal.delete();
+    new InterestAccrual(bank, journal, "2017-03", 4, 2).run(null);
+    long balances = totalBalance(bank);
+    log.close();
+    log = new WriteAheadLog(logFile, WriteAheadLog.SyncPolicy.SYNC);
+    bank = new Bank("Test", log);
+    log.close();
+    checkMonths(bank, 1, "after replaying the log of an accrual");
+    checkEquals(balances, totalBalance(bank), "balances after replaying the log of an accrual");
+    logFile.delete();
+    journal.delete();
+
+    Checks.done("InterestAccrualTest");
+  }
+
+  /**
+   * Posts a month of interest to an account while holding its lock.
+   *
+   * @param account           The account
+   * @return                  The interest posted, in cents
+   */
+  private static long post(InterestBearing account) {
+    ((Account) account).lock();
+    try {
+      return account.postMonthlyInterest();
+    } finally {
+      ((Account) account).unlock();
+    }
+  }
+
+  private static ArrayList<Account> accountsOf(Bank bank) {
+    ArrayList<Account> accounts = new ArrayList<Account>();
+    Iterator<Account> iterator = bank.iterateAccounts();
+    while (iterator.hasNext()) {
+      accounts.add(iterator.next());
+    }
+    return accounts;
+  }
+
+  private static long totalBalance(Bank bank) {
+    long total = 0;
+    Iterator<Account> accounts = bank.iterateAccounts();
+    while (accounts.hasNext()) {
+      total += accounts.next().getCurrentBalanceInCents();
+    }
+    return total;
+  }
+
+  private static long cents(double dollars) {
+    return Math.round(dollars * 100);
+  }
+
+  /**
+   * Makes a bank of savings accounts, GICs and chequing accounts.
+   *
+   * @param prefix            The start of the account numbers
+   * @return                  The bank
+   */
+  private static Bank newBank(String prefix) {
+    Bank bank = new Bank();
+    ArrayList<Account> accounts = new ArrayList<Account>();
+    for (int i = 0; i < 300; i++) {
+      String number = prefix + i;
+      if (i % 3 == 0) {
+        accounts.add(new Savings("Doe, John", number, 100 + i, 3));
+      } else if (i % 3 == 1) {
+        accounts.add(new GIC("Doe, Jane", number, 100 + i, 2, 4));
+      } else {
+        accounts.add(new Chequing("Roe, Jim", number, 100 + i, 1, 5));
+      }
+    }
+    bank.addAccounts(accounts);
+    return bank;
+  }
+
+  /**
+   * Checks that every interest-bearing account of a bank accrued a number
+   * of months.
+   *
+   * @param bank              The bank
+   * @param months            The months each account should have accrued
+   * @param when              When the check is made, for the failure message
+   */
+  private static void checkMonths(Bank bank, int months, String when) {
+    Iterator<Account> accounts = bank.iterateAccounts();
+    while (accounts.hasNext()) {
+      Account account = accounts.next();
+      if (account instanceof InterestBearing
+          && ((InterestBearing) account).getMonthsAccrued() != months) {
+        check(false, account.getAccountNumber() + " accrued " + months + " months " + when);
+      }
+    }
+    check(true, "every account accrued " + months + " months " + when);
+  }
+
+  private static Savings roundTrip(Savings savings) throws IOException, ClassNotFoundException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(bytes);
+    out.writeObject(savings);
+    out.close();
+    ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    return (Savings) in.readObject();
+  }
+}
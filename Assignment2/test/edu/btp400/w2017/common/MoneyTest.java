@@ -0,0 +1,63 @@
+/**
+ * Tests of Money: conversions between dollars and cents, and rounding at
+ * the half-cent boundaries, where a binary double lies just below or above
+ * the decimal amount it was written as.
+ *
+ * @author Alex Wang
+ * @version 1.0
+ */
+package edu.btp400.w2017.common;
+import static edu.btp400.w2017.common.Checks.check;
+import static edu.btp400.w2017.common.Checks.checkEquals;
+
+public class MoneyTest {
+
+  public static void main(String[] args) {
+    // Whole and exact amounts
+    checkEquals(0L, Money.toCents(0), "0.00");
+    checkEquals(100L, Money.toCents(1), "1.00");
+    checkEquals(1234L, Money.toCents(12.34), "12.34");
+    checkEquals(-1234L, Money.toCents(-12.34), "-12.34");
+
+    // Half a cent rounds up, whichever side of it the double falls on
+    checkEquals(1L, Money.toCents(0.005), "0.005");
+    checkEquals(2L, Money.toCents(0.015), "0.015");
+    checkEquals(101L, Money.toCents(1.005), "1.005 (double just below)");
+    checkEquals(112L, Money.toCents(1.115), "1.115");
+    checkEquals(268L, Money.toCents(2.675), "2.675 (double just below)");
+    checkEquals(1001L, Money.toCents(10.005), "10.005");
+    checkEquals(100001L, Money.toCents(1000.005), "1000.005");
+    checkEquals(123457L, Money.toCents(1234.565), "1234.565");
+    checkEquals(-101L, Money.toCents(-1.005), "-1.005 rounds away from zero");
+
+    // Just either side of the half
+    checkEquals(0L, Money.toCents(0.004), "0.004");
+    checkEquals(0L, Money.toCents(0.0049999), "0.0049999");
+    checkEquals(100L, Money.toCents(1.0049), "1.0049");
+    checkEquals(101L, Money.toCents(1.0051), "1.0051");
+
+    // Every x.xx5 from 0.005 to 99.995 rounds up
+    for (int cents = 0; cents < 10000; cents++) {
+      double amount = Double.parseDouble((cents / 100) + "." + twoDigits(cents % 100) + "5");
+      if (Money.toCents(amount) != cents + 1) {
+        check(false, amount + " rounds to " + (cents + 1) + " cents, not " + Money.toCents(amount));
+      }
+    }
+    check(true, "every x.xx5 up to 99.995");
+
+    // Edges
+    checkEquals(0L, Money.toCents(Double.NaN), "NaN");
+    checkEquals(Long.MAX_VALUE, Money.toCents(Double.POSITIVE_INFINITY), "infinity");
+    checkEquals(100000000000000L, Money.toCents(1e12), "one trillion dollars");
+
+    // Back to dollars
+    checkEquals(1.01, Money.toDollars(101), "101 cents");
+    checkEquals("$1,234.57", Money.format(123457), "format");
+
+    Checks.done("MoneyTest");
+  }
+
+  private static String twoDigits(int value) {
+    return (value < 10) ? "0" + value : String.valueOf(value);
+  }
+}
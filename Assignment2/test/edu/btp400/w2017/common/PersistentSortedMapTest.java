@@ -0,0 +1,127 @@
+/**
+ * Tests of PersistentSortedMap: random adds and removes are checked against
+ * a TreeMap, range walks against the TreeMap views, and every earlier
+ * version is checked to be unchanged by the versions made from it.
+ *
+ * @author Alex Wang
+ * @version 1.0
+ */
+package edu.btp400.w2017.common;
+import static edu.btp400.w2017.common.Checks.check;
+import static edu.btp400.w2017.common.Checks.checkEquals;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+public class PersistentSortedMapTest {
+
+  private static final int KEYS = 2000;
+  private static final int STEPS = 20000;
+
+  public static void main(String[] args) {
+    Random random = new Random(400);
+    PersistentSortedMap<Integer, String> map = PersistentSortedMap.empty();
+    TreeMap<Integer, String> expected = new TreeMap<Integer, String>();
+    List<PersistentSortedMap<Integer, String>> versions =
+        new ArrayList<PersistentSortedMap<Integer, String>>();
+    List<TreeMap<Integer, String>> expectedVersions = new ArrayList<TreeMap<Integer, String>>();
+
+    for (int step = 0; step < STEPS; step++) {
+      Integer key = Integer.valueOf(random.nextInt(KEYS));
+      if (random.nextInt(3) == 0) {
+        map = map.minus(key);
+        expected.remove(key);
+      } else {
+        String value = "v" + step;
+        map = map.plus(key, value);
+        expected.put(key, value);
+      }
+      if (step % 1000 == 0) {
+        versions.add(map);
+        expectedVersions.add(new TreeMap<Integer, String>(expected));
+      }
+    }
+    checkEquals(expected.size(), map.size(), "size after random changes");
+    checkEquals(new ArrayList<Map.Entry<Integer, String>>(expected.entrySet()),
+        new ArrayList<Map.Entry<Integer, String>>(map.entrySet()), "entries in key order");
+    checkEquals(expected, map, "equal to the TreeMap");
+    for (int key = -1; key <= KEYS; key++) {
+      if (!equal(expected.get(key), map.get(key))) {
+        check(false, "get " + key);
+      }
+    }
+    check(true, "get of every key");
+    checkEquals(null, map.get(null), "get of null");
+
+    // Every version kept still holds what it held when it was made
+    for (int i = 0; i < versions.size(); i++) {
+      checkEquals(expectedVersions.get(i), versions.get(i), "version " + i + " unchanged");
+    }
+
+    // Ranges
+    for (int i = 0; i < 200; i++) {
+      int from = random.nextInt(KEYS + 2) - 1;
+      int to = from + random.nextInt(200);
+      boolean fromInclusive = random.nextBoolean();
+      boolean toInclusive = random.nextBoolean();
+      if (!sameValues(expected.subMap(from, fromInclusive, to, toInclusive).values(),
+          map.subValues(from, fromInclusive, to, toInclusive))) {
+        check(false, "range " + from + (fromInclusive ? "]" : ")") + " to " + to);
+      }
+      if (!sameValues(expected.tailMap(from, fromInclusive).values(),
+          map.tailValues(from, fromInclusive))) {
+        check(false, "tail from " + from);
+      }
+    }
+    check(true, "ranges and tails");
+
+    // Unchanged maps are returned as they are
+    Integer present = expected.firstKey();
+    check(map.plus(present, expected.get(present)) == map, "adding the same value keeps the map");
+    check(map.minus(Integer.valueOf(-5)) == map, "removing a missing key keeps the map");
+
+    // Removing every key
+    for (Integer key : new ArrayList<Integer>(expected.keySet())) {
+      map = map.minus(key);
+    }
+    check(map.isEmpty(), "empty after removing every key");
+    check(!map.entrySet().iterator().hasNext(), "empty map has no entries");
+
+    // The tree stays balanced when keys arrive in order
+    PersistentSortedMap<Integer, String> ascending = PersistentSortedMap.empty();
+    for (int key = 0; key < 100000; key++) {
+      ascending = ascending.plus(key, "a");
+    }
+    checkEquals(100000, ascending.size(), "size of ascending map");
+    checkEquals(Integer.valueOf(99990), ascending.tailEntries(99989, false).iterator().next()
+        .getKey(), "tail of ascending map");
+
+    try {
+      map.put(1, "x");
+      check(false, "put is not supported");
+    } catch (UnsupportedOperationException e) {
+      check(true, "put is not supported");
+    }
+
+    Checks.done("PersistentSortedMapTest");
+  }
+
+  private static boolean equal(Object a, Object b) {
+    return (a == null) ? b == null : a.equals(b);
+  }
+
+  private static boolean sameValues(Iterable<String> expected, Iterable<String> actual) {
+    Iterator<String> e = expected.iterator();
+    Iterator<String> a = actual.iterator();
+    while (e.hasNext() && a.hasNext()) {
+      if (!e.next().equals(a.next())) {
+        return false;
+      }
+    }
+    return !e.hasNext() && !a.hasNext();
+  }
+}
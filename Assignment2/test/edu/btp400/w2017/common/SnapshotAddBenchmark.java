@@ -0,0 +1,102 @@
+/**
+ * Measures the cost of adding and removing one account as the bank grows.
+ * Each add and each remove publishes a new snapshot, which shares all but
+ * the changed entries of every index with the one before, so the cost
+ * should grow with the logarithm of the number of accounts and not with the
+ * number itself. For scale, the time to copy the account number index once,
+ * which is what each add used to cost, is printed alongside.
+ *
+ *   java -cp bin edu.btp400.w2017.common.SnapshotAddBenchmark [adds]
+ *
+ * @author Alex Wang
+ * @version 1.0
+ */
+package edu.btp400.w2017.common;
+import static edu.btp400.w2017.common.Checks.check;
+import static edu.btp400.w2017.common.Checks.checkEquals;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+public class SnapshotAddBenchmark {
+
+  private static final int[] SIZES = { 1000, 10000, 100000, 400000 };
+  private static final String[] SYLLABLES = { "an", "be", "cor", "da", "el", "fi", "gar",
+      "ho", "is", "ju", "ka", "lo", "mi", "nor", "ol", "pe", "qui", "ra", "si", "tu" };
+
+  public static void main(String[] args) {
+    int adds = (args.length > 0) ? Integer.parseInt(args[0]) : 20000;
+    double first = 0;
+    double last = 0;
+
+    System.out.println("accounts   add+remove (us)   copy one index (us)");
+    for (int size : SIZES) {
+      Bank bank = new Bank();
+      List<Account> accounts = new ArrayList<Account>(size);
+      for (int i = 0; i < size; i++) {
+        accounts.add(newAccount("A", i));
+      }
+      bank.addAccounts(accounts);
+
+      // Warm up, then measure
+      addAndRemove(bank, adds / 4);
+      long start = System.nanoTime();
+      addAndRemove(bank, adds);
+      double perPair = (System.nanoTime() - start) / 1000.0 / adds;
+      checkEquals(size, bank.getNumberOfAccounts(), "accounts left after " + size);
+
+      TreeMap<String, Account> index = new TreeMap<String, Account>();
+      for (Account account : accounts) {
+        index.put(account.getAccountNumber(), account);
+      }
+      start = System.nanoTime();
+      int copies = Math.max(1, 2000000 / size);
+      for (int i = 0; i < copies; i++) {
+        check(new TreeMap<String, Account>(index).size() == size, "copy of " + size);
+      }
+      double perCopy = (System.nanoTime() - start) / 1000.0 / copies;
+
+      System.out.printf("%8d   %15.2f   %19.2f%n", size, perPair, perCopy);
+      if (first == 0) {
+        first = perPair;
+      }
+      last = perPair;
+    }
+    System.out.printf("add+remove grew %.1fx while the bank grew %dx%n",
+        last / first, SIZES[SIZES.length - 1] / SIZES[0]);
+    Checks.done("SnapshotAddBenchmark");
+  }
+
+  /**
+   * Adds and then removes an account, again and again.
+   *
+   * @param bank              The bank
+   * @param count             The number of accounts to add and remove
+   */
+  private static void addAndRemove(Bank bank, int count) {
+    for (int i = 0; i < count; i++) {
+      Account account = newAccount("B", i);
+      check(bank.addAccount(account), "add");
+      check(bank.removeAccount(account.getAccountNumber()) == account, "remove");
+    }
+  }
+
+  /**
+   * Makes a savings account with a name built from syllables, so the names
+   * spread over many trigrams as real names do.
+   *
+   * @param prefix            The start of the account number
+   * @param i                 The number of the account
+   * @return                  The account
+   */
+  private static Account newAccount(String prefix, int i) {
+    String last = SYLLABLES[i % 20] + SYLLABLES[(i / 20) % 20] + SYLLABLES[(i / 400) % 20];
+    String first = SYLLABLES[(i / 8000) % 20] + SYLLABLES[(i * 7) % 20];
+    return new Savings(capitalize(last) + ", " + capitalize(first), prefix + i,
+        100 + i % 1000, 0.5);
+  }
+
+  private static String capitalize(String name) {
+    return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+  }
+}
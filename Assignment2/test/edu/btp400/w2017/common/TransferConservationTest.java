@@ -0,0 +1,101 @@
+/**
+ * A stress test of transfers: threads move money between random accounts
+ * while another thread removes accounts and adds them back. No transfer
+ * creates or destroys money, so the accounts must hold the same total at
+ * the end as at the start, and a removed account must not change while it
+ * is out of the bank.
+ *
+ *   java -cp bin edu.btp400.w2017.common.TransferConservationTest [seconds]
+ *
+ * @author Alex Wang
+ * @version 1.0
+ */
+package edu.btp400.w2017.common;
+import static edu.btp400.w2017.common.Checks.check;
+import static edu.btp400.w2017.common.Checks.checkEquals;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TransferConservationTest {
+
+  private static final int ACCOUNTS = 20;
+  private static final int THREADS = 6;
+  private static final long START_BALANCE = 100000;    // In cents
+
+  public static void main(String[] args) throws InterruptedException, NoAccountException {
+    double seconds = (args.length > 0) ? Double.parseDouble(args[0]) : 2;
+    final Bank bank = new Bank();
+    for (int i = 0; i < ACCOUNTS; i++) {
+      bank.addAccount(new Account("Doe, John", "T" + i, Money.toDollars(START_BALANCE)));
+    }
+    final long end = System.nanoTime() + (long) (seconds * 1e9);
+    final AtomicLong transfers = new AtomicLong();
+    final AtomicLong missed = new AtomicLong();
+    final AtomicLong changedWhileOut = new AtomicLong();
+
+    Thread[] workers = new Thread[THREADS];
+    for (int t = 0; t < THREADS; t++) {
+      final Random random = new Random(t);
+      workers[t] = new Thread(new Runnable() {
+        public void run() {
+          while (System.nanoTime() < end) {
+            String from = "T" + random.nextInt(ACCOUNTS);
+            String to = "T" + random.nextInt(ACCOUNTS);
+            double amount = (1 + random.nextInt(50000)) / 100.0;
+            try {
+              TransactionResult[] results = bank.transfer(from, to, amount);
+              if (results[0].isSuccessful()) {
+                transfers.incrementAndGet();
+              }
+            } catch (NoAccountException e) {
+              missed.incrementAndGet();
+            }
+          }
+        }
+      });
+      workers[t].start();
+    }
+
+    Thread remover = new Thread(new Runnable() {
+      public void run() {
+        Random random = new Random(400);
+        while (System.nanoTime() < end) {
+          Account account = bank.removeAccount("T" + random.nextInt(ACCOUNTS));
+          if (account != null) {
+            long balance = account.getBalanceInCents();
+            Thread.yield();
+            if (account.getBalanceInCents() != balance) {
+              changedWhileOut.incrementAndGet();
+            }
+            bank.addAccount(account);
+          }
+        }
+      }
+    });
+    remover.start();
+
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    remover.join();
+
+    long total = 0;
+    for (Account account : bank.getAllAccounts()) {
+      total += account.getBalanceInCents();
+    }
+    checkEquals(ACCOUNTS, bank.getNumberOfAccounts(), "every account back in the bank");
+    checkEquals(ACCOUNTS * START_BALANCE, total, "total after " + transfers.get()
+        + " transfers and " + missed.get() + " transfers to or from a removed account");
+    checkEquals(0L, changedWhileOut.get(), "removed accounts changed while out of the bank");
+    check(transfers.get() > 0, "transfers made");
+    for (int i = 0; i < ACCOUNTS; i++) {
+      Account account = bank.getAccount("T" + i);
+      check(bank.search(Money.toDollars(account.getBalanceInCents())).contains(account),
+          "T" + i + " indexed under its balance");
+    }
+    System.out.println(transfers.get() + " transfers, " + missed.get() + " missed");
+
+    Checks.done("TransferConservationTest");
+  }
+}
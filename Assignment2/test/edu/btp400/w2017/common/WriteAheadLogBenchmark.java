@@ -0,0 +1,117 @@
+/**
+ * Measures deposits into a bank kept in a write-ahead log, with each record
+ * forced to disk on its own (SYNC) and with concurrent writers sharing a
+ * flush (GROUP_COMMIT). Each thread deposits into an account of its own, so
+ * the threads only meet in the log. Under group commit the number of disk
+ * flushes per deposit should fall as threads are added, and the deposits
+ * per second rise with it.
+ *
+ *   java -cp bin edu.btp400.w2017.common.WriteAheadLogBenchmark [deposits per thread]
+ *
+ * @author Alex Wang
+ * @version 1.0
+ */
+package edu.btp400.w2017.common;
+import static edu.btp400.w2017.common.Checks.check;
+import static edu.btp400.w2017.common.Checks.checkEquals;
+import java.io.File;
+import java.io.IOException;
+
+public class WriteAheadLogBenchmark {
+
+  private static final int[] THREADS = { 1, 2, 4, 8, 16 };
+
+  public static void main(String[] args) throws Exception {
+    int deposits = (args.length > 0) ? Integer.parseInt(args[0]) : 200;
+
+    System.out.println("policy         threads   deposits/s   flushes/deposit");
+    for (WriteAheadLog.SyncPolicy policy : WriteAheadLog.SyncPolicy.values()) {
+      for (int threads : THREADS) {
+        run(policy, threads, deposits);
+      }
+    }
+    Checks.done("WriteAheadLogBenchmark");
+  }
+
+  /**
+   * Runs the deposits of one policy and number of threads on a new log.
+   *
+   * @param policy            The sync policy of the log
+   * @param threads           The number of threads depositing
+   * @param deposits          The number of deposits each thread makes
+   * @throws Exception        If the log could not be written
+   */
+  private static void run(WriteAheadLog.SyncPolicy policy, int threads, final int deposits)
+      throws Exception {
+    File file = File.createTempFile("bank", ".wal");
+    file.delete();
+    WriteAheadLog log = new WriteAheadLog(file, policy);
+    final Bank bank = new Bank("Benchmark", log);
+    for (int i = 0; i < threads; i++) {
+      check(bank.addAccount(new Savings("Doe, John", "S" + i, 0, 1)), "add S" + i);
+    }
+    long syncsBefore = log.getSyncCount();
+
+    Thread[] workers = new Thread[threads];
+    final boolean[] failed = new boolean[threads];
+    for (int i = 0; i < threads; i++) {
+      final int worker = i;
+      workers[i] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int d = 0; d < deposits; d++) {
+              if (!bank.deposit("S" + worker, 1).isSuccessful()) {
+                failed[worker] = true;
+              }
+            }
+          } catch (NoAccountException e) {
+            failed[worker] = true;
+          }
+        }
+      };
+    }
+    long start = System.nanoTime();
+    for (Thread thread : workers) {
+      thread.start();
+    }
+    for (Thread thread : workers) {
+      thread.join();
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    long syncs = log.getSyncCount() - syncsBefore;
+    log.close();
+
+    int total = threads * deposits;
+    System.out.printf("%-13s  %7d   %10.0f   %15.2f%n", policy, threads, total / seconds,
+        (double) syncs / total);
+    for (int i = 0; i < threads; i++) {
+      check(!failed[i], policy + " deposits of thread " + i);
+    }
+    check(syncs <= total, policy + " at most one flush per deposit");
+    checkReplayed(file, threads, deposits);
+    file.delete();
+  }
+
+  /**
+   * Checks that every deposit is in the log.
+   *
+   * @param file              The file of the log
+   * @param threads           The number of accounts
+   * @param deposits          The number of dollars deposited into each
+   * @throws IOException      If the log could not be read
+   */
+  private static void checkReplayed(File file, int threads, int deposits) throws IOException {
+    WriteAheadLog log = new WriteAheadLog(file, WriteAheadLog.SyncPolicy.SYNC);
+    try {
+      Bank bank = new Bank("Benchmark", log);
+      long cents = 0;
+      for (int i = 0; i < threads; i++) {
+        cents += bank.getAccount("S" + i).getCurrentBalanceInCents();
+      }
+      checkEquals(threads * deposits * 100L, cents, "deposits replayed");
+    } finally {
+      log.close();
+    }
+  }
+}
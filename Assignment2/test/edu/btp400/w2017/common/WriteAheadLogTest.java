@@ -0,0 +1,141 @@
+/**
+ * Tests of WriteAheadLog: a bank replays its log, a record cut short or
+ * damaged at the end of the log is cut off and the records before it are
+ * kept, the state of a closed account is not replayed onto a new account
+ * with the same number, a change that cannot be logged is taken back, and
+ * a bank whose log fails refuses every change.
+ *
+ * @author Alex Wang
+ * @version 1.1
+ */
+package edu.btp400.w2017.common;
+import static edu.btp400.w2017.common.Checks.check;
+import static edu.btp400.w2017.common.Checks.checkEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+public class WriteAheadLogTest {
+
+  public static void main(String[] args) throws Exception {
+    File file = File.createTempFile("bank", ".wal");
+    file.delete();
+
+    WriteAheadLog log = new WriteAheadLog(file, WriteAheadLog.SyncPolicy.SYNC);
+    Bank bank = new Bank("Test", log);
+    check(bank.addAccount(new Savings("Doe, John", "S1", 100, 2)), "add S1");
+    check(bank.addAccount(new Chequing("Roe, Jim", "C1", 50, 0.25, 3)), "add C1");
+    check(bank.deposit("S1", 25).isSuccessful(), "deposit into S1");
+    check(bank.withdraw("C1", 10).isSuccessful(), "withdraw from C1");
+
+    // S1 is closed and a new account opened under its number
+    check(bank.removeAccount("S1") != null, "remove S1");
+    check(bank.addAccount(new Savings("Poe, Ann", "S1", 7, 1)), "add a new S1");
+    long beforeLast = file.length();
+    long c1BalanceBeforeLast = bank.getAccount("C1").getBalanceInCents();
+    check(bank.deposit("C1", 5).isSuccessful(), "deposit into C1");
+    long whole = file.length();
+    long c1Balance = bank.getAccount("C1").getBalanceInCents();
+    long s1Balance = bank.getAccount("S1").getBalanceInCents();
+    log.close();
+
+    bank = reopen(file);
+    checkEquals(2, bank.getNumberOfAccounts(), "accounts replayed");
+    checkEquals("Poe, Ann", bank.getAccount("S1").getFullName(), "the new S1 replayed");
+    checkEquals(s1Balance, bank.getAccount("S1").getBalanceInCents(),
+        "balance of the new S1 replayed");
+    checkEquals(c1Balance, bank.getAccount("C1").getBalanceInCents(), "balance of C1 replayed");
+
+    // A record torn by a crash: its header and part of its payload were written
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    raf.seek(whole);
+    raf.writeInt(200);
+    raf.writeInt(12345);
+    raf.write(new byte[40]);
+    raf.close();
+    bank = reopen(file);
+    checkEquals(whole, file.length(), "torn tail cut off");
+    checkEquals(c1Balance, bank.getAccount("C1").getBalanceInCents(),
+        "balance of C1 after a torn tail");
+
+    // The last record whole but damaged: its checksum no longer matches
+    raf = new RandomAccessFile(file, "rw");
+    raf.seek(whole - 3);
+    int damaged = raf.read() ^ 0xff;
+    raf.seek(whole - 3);
+    raf.write(damaged);
+    raf.close();
+    bank = reopen(file);
+    checkEquals(beforeLast, file.length(), "damaged record cut off");
+    checkEquals(c1BalanceBeforeLast, bank.getAccount("C1").getBalanceInCents(),
+        "balance of C1 without the damaged deposit");
+    checkEquals(s1Balance, bank.getAccount("S1").getBalanceInCents(),
+        "balance of S1 kept before the damaged record");
+
+    // Records appended after the cut are replayed
+    log = new WriteAheadLog(file, WriteAheadLog.SyncPolicy.GROUP_COMMIT);
+    bank = new Bank("Test", log);
+    check(bank.deposit("C1", 5).isSuccessful(), "deposit into C1 again");
+    log.close();
+    bank = reopen(file);
+    checkEquals(c1Balance, bank.getAccount("C1").getBalanceInCents(),
+        "balance of C1 after appending past the cut");
+
+    // A deposit that cannot be logged is taken back
+    log = new WriteAheadLog(file, WriteAheadLog.SyncPolicy.SYNC);
+    bank = new Bank("Test", log);
+    log.close();
+    Account c1 = bank.getAccount("C1");
+    long c1Before = c1.getBalanceInCents();
+    try {
+      bank.deposit("C1", 5);
+      check(false, "deposit that cannot be logged fails");
+    } catch (IllegalStateException e) {
+      check(true, "deposit that cannot be logged fails");
+    }
+    checkEquals(c1Before, c1.getBalanceInCents(), "balance put back when the log fails");
+    check(bank.searchByBalanceRange(c1.getBalance(), c1.getBalance()).contains(c1),
+        "balance index matches the balance put back");
+
+    // A log that cannot be written stops the bank
+    log = new WriteAheadLog(file, WriteAheadLog.SyncPolicy.SYNC);
+    bank = new Bank("Test", log);
+    log.close();
+    try {
+      bank.addAccount(new Savings("Doe, Jane", "S2", 10, 1));
+      check(false, "add refused once the log fails");
+    } catch (IllegalStateException e) {
+      check(true, "add refused once the log fails");
+    }
+    checkEquals(null, bank.getAccount("S2"), "account not published when its log failed");
+    long balance = bank.getAccount("C1").getBalanceInCents();
+    try {
+      bank.deposit("C1", 5);
+      check(false, "deposit refused after the log failed");
+    } catch (IllegalStateException e) {
+      check(true, "deposit refused after the log failed");
+    }
+    checkEquals(balance, bank.getAccount("C1").getBalanceInCents(),
+        "balance unchanged after the log failed");
+
+    file.delete();
+    Checks.done("WriteAheadLogTest");
+  }
+
+  /**
+   * Opens a log and replays it into a new bank, then closes the log.
+   *
+   * @param file              The file of the log
+   * @return                  The bank replayed
+   * @throws IOException      If the log could not be read
+   */
+  private static Bank reopen(File file) throws IOException {
+    WriteAheadLog log = new WriteAheadLog(file, WriteAheadLog.SyncPolicy.SYNC);
+    try {
+      return new Bank("Test", log);
+    } finally {
+      log.close();
+    }
+  }
+}
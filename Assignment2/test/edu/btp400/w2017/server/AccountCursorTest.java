@@ -0,0 +1,88 @@
+/**
+ * Tests of AccountCursor and the cursors of BankImpl: batches are clamped
+ * to the default and maximum sizes, a cursor walks one snapshot of the bank
+ * and returns an empty array once exhausted, a cursor in use is not idle,
+ * and cursors left idle are closed and dropped by the reaper.
+ *
+ * @author Alex Wang
+ * @version 1.0
+ */
+package edu.btp400.w2017.server;
+import static edu.btp400.w2017.common.Checks.check;
+import static edu.btp400.w2017.common.Checks.checkEquals;
+
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import edu.btp400.w2017.common.Account;
+import edu.btp400.w2017.common.Bank;
+import edu.btp400.w2017.common.Checks;
+import edu.btp400.w2017.common.Savings;
+
+public class AccountCursorTest {
+
+  private static final int ACCOUNTS = 1200;
+  private static final long IDLE_TIMEOUT = 100;           // In milliseconds
+
+  public static void main(String[] args) throws Exception {
+    Bank bank = new Bank();
+    ArrayList<Account> accounts = new ArrayList<Account>();
+    for (int i = 0; i < ACCOUNTS; i++) {
+      accounts.add(new Savings("Doe, John", String.format("S%05d", i), 10, 1));
+    }
+    bank.addAccounts(accounts);
+
+    // Batch sizes and exhaustion
+    AccountCursor cursor = new AccountCursor(bank.iterateAccounts());
+    check(bank.addAccount(new Savings("Roe, Jim", "T1", 10, 1)), "add an account after opening");
+    checkEquals(1000, cursor.next(5000).length, "batch clamped to the maximum");
+    checkEquals(50, cursor.next(0).length, "batch of size zero gets the default size");
+    checkEquals(50, cursor.next(-3).length, "negative batch gets the default size");
+    Account[] last = cursor.next(1000);
+    checkEquals(ACCOUNTS - 1100, last.length, "last batch holds the rest");
+    checkEquals(String.format("S%05d", ACCOUNTS - 1), last[last.length - 1].getAccountNumber(),
+        "cursor walks the accounts in order, without the account added after opening");
+    checkEquals(0, cursor.next(10).length, "empty array once exhausted");
+    checkEquals(0, cursor.next(10).length, "empty array again once exhausted");
+
+    // Idle time
+    long now = System.currentTimeMillis();
+    check(!cursor.isIdle(now, IDLE_TIMEOUT), "cursor just used is not idle");
+    check(cursor.isIdle(now + IDLE_TIMEOUT, IDLE_TIMEOUT), "cursor unused for the timeout is idle");
+    check(!cursor.isClosed(), "cursor open");
+    cursor.close();
+    check(cursor.isClosed(), "cursor closed");
+    cursor.close();
+    check(cursor.isClosed(), "closing a closed cursor has no effect");
+    checkEquals(0, cursor.next(10).length, "closed cursor returns an empty array");
+
+    // The reaper closes the idle cursors and keeps the one in use
+    BankImpl remote = new BankImpl(bank, IDLE_TIMEOUT);
+    AccountCursor idle = (AccountCursor) remote.openAccountCursor();
+    AccountCursor used = (AccountCursor) remote.openAccountCursorByName("Doe, John");
+    AccountCursor closed = (AccountCursor) remote.openAccountCursorByBalance(10);
+    checkEquals(3, remote.getOpenCursorCount(), "cursors tracked when opened");
+    closed.close();
+    int fetched = 0;
+    long end = System.currentTimeMillis() + 5000;
+    while ((!idle.isClosed() || remote.getOpenCursorCount() != 1)
+        && System.currentTimeMillis() < end) {
+      fetched += used.next(1).length;
+      Thread.sleep(IDLE_TIMEOUT / 5);
+    }
+    check(idle.isClosed(), "idle cursor closed by the reaper");
+    check(!used.isClosed(), "cursor in use left open");
+    checkEquals(1, remote.getOpenCursorCount(), "closed cursors no longer tracked");
+    check(fetched > 0, "accounts fetched from the cursor in use");
+
+    end = System.currentTimeMillis() + 5000;
+    while ((!used.isClosed() || remote.getOpenCursorCount() != 0)
+        && System.currentTimeMillis() < end) {
+      Thread.sleep(IDLE_TIMEOUT / 5);
+    }
+    check(used.isClosed(), "cursor closed by the reaper once left idle");
+    checkEquals(0, remote.getOpenCursorCount(), "no cursors tracked");
+    UnicastRemoteObject.unexportObject(remote, true);
+
+    Checks.done("AccountCursorTest");
+  }
+}
@@ -0,0 +1,136 @@
+/**
+ * Tests of BankScheduler: events restored from the state file that are
+ * already due fire on the first tick, a statement schedules the next one a
+ * period later, the pending events are saved on stop and restored by the
+ * next scheduler, and closing an account cancels its events.
+ *
+ * @author Alex Wang
+ * @version 1.0
+ */
+package edu.btp400.w2017.server;
+import static edu.btp400.w2017.common.Checks.check;
+import static edu.btp400.w2017.common.Checks.checkEquals;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import edu.btp400.w2017.common.Bank;
+import edu.btp400.w2017.common.Checks;
+import edu.btp400.w2017.common.Chequing;
+import edu.btp400.w2017.common.GIC;
+
+public class BankSchedulerTest {
+
+  private static final long TICK = 10;                    // In milliseconds
+  private static final int WHEEL_SIZE = 8;
+  private static final long HOUR = 60 * 60 * 1000;        // In milliseconds
+
+  public static void main(String[] args) throws Exception {
+    Bank bank = new Bank();
+    GIC gic = new GIC("Doe, John", "G1", 1000, 2, 3);
+    Chequing chequing = new Chequing("Roe, Jim", "C1", 500, 0.25, 3);
+    check(bank.addAccount(gic), "add G1");
+    check(bank.addAccount(chequing), "add C1");
+    check(bank.withdraw("C1", 10).isSuccessful(), "withdraw from C1");
+    check(chequing.getNumberOfTransactionUsed() > 0, "C1 has transactions in its statement");
+
+    // Both events fell due while the server was down
+    File stateFile = File.createTempFile("scheduler", ".state");
+    long statementDue = System.currentTimeMillis() - HOUR / 2;
+    Writer out = new OutputStreamWriter(new FileOutputStream(stateFile), "UTF-8");
+    out.write("bank-scheduler 1\n");
+    out.write("GIC_MATURITY G1 " + (System.currentTimeMillis() - 2 * HOUR) + "\n");
+    out.write("STATEMENT C1 " + statementDue + "\n");
+    out.close();
+
+    BankScheduler scheduler = newScheduler(bank, stateFile);
+    scheduler.start();
+    long end = System.currentTimeMillis() + 3000;
+    while ((!gic.hasMatured() || chequing.getNumberOfTransactionUsed() != 0)
+        && System.currentTimeMillis() < end) {
+      Thread.sleep(5);
+    }
+    check(gic.hasMatured(), "overdue maturity of G1 fired");
+    checkEquals(0, chequing.getNumberOfTransactionUsed(), "overdue statement of C1 closed");
+    waitForPending(scheduler, 1);
+    checkEquals(1, scheduler.pendingEvents(), "only the next statement of C1 pending");
+    scheduler.accountOpened(chequing);
+    checkEquals(1, scheduler.pendingEvents(), "an account opened again is not scheduled twice");
+    scheduler.stop();
+
+    List<String> lines = readLines(stateFile);
+    checkEquals(2, lines.size(), "lines saved on stop");
+    checkEquals("bank-scheduler 1", lines.get(0), "header saved");
+    checkEquals("STATEMENT C1 " + (statementDue + HOUR), lines.get(1),
+        "next statement saved a period after the last");
+
+    // The next scheduler restores the saved statement and fires nothing yet
+    scheduler = newScheduler(bank, stateFile);
+    scheduler.start();
+    Thread.sleep(5 * TICK);
+    checkEquals(1, scheduler.pendingEvents(), "statement restored");
+    checkEquals(0, chequing.getNumberOfTransactionUsed(), "restored statement not fired early");
+    scheduler.accountClosed("C1");
+    checkEquals(0, scheduler.pendingEvents(), "closing C1 cancels its statement");
+    scheduler.stop();
+    lines = readLines(stateFile);
+    checkEquals(1, lines.size(), "nothing saved once C1 is closed");
+
+    // A state file of another kind is refused
+    out = new OutputStreamWriter(new FileOutputStream(stateFile), "UTF-8");
+    out.write("something else\n");
+    out.close();
+    scheduler = newScheduler(bank, stateFile);
+    try {
+      scheduler.start();
+      check(false, "a file that is not a state file is refused");
+    } catch (IOException e) {
+      check(true, "a file that is not a state file is refused");
+    }
+
+    stateFile.delete();
+    Checks.done("BankSchedulerTest");
+  }
+
+  private static BankScheduler newScheduler(Bank bank, File stateFile) {
+    return new BankScheduler(bank, stateFile, TICK, WHEEL_SIZE, HOUR, HOUR, 1);
+  }
+
+  /**
+   * Waits until a scheduler has a number of pending events. A fired
+   * statement schedules the next one just before it closes the statement.
+   *
+   * @param scheduler         The scheduler
+   * @param events            The number of pending events
+   * @throws InterruptedException if interrupted while waiting
+   */
+  private static void waitForPending(BankScheduler scheduler, int events)
+      throws InterruptedException {
+    long end = System.currentTimeMillis() + 3000;
+    while (scheduler.pendingEvents() != events && System.currentTimeMillis() < end) {
+      Thread.sleep(5);
+    }
+  }
+
+  private static List<String> readLines(File file) throws IOException {
+    List<String> lines = new ArrayList<String>();
+    BufferedReader in = new BufferedReader(
+        new InputStreamReader(new FileInputStream(file), "UTF-8"));
+    try {
+      String line;
+      while ((line = in.readLine()) != null) {
+        lines.add(line);
+      }
+    } finally {
+      in.close();
+    }
+    return lines;
+  }
+}
@@ -0,0 +1,100 @@
+/**
+ * Tests of TimingWheel: events fire once, at or after their deadline, an
+ * event due more than a turn of the wheel ahead waits out its turns, a
+ * deadline already passed fires on the first tick, and a cancelled event
+ * never fires.
+ *
+ * @author Alex Wang
+ * @version 1.0
+ */
+package edu.btp400.w2017.server;
+import static edu.btp400.w2017.common.Checks.check;
+import static edu.btp400.w2017.common.Checks.checkEquals;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import edu.btp400.w2017.common.Checks;
+
+public class TimingWheelTest {
+
+  private static final long TICK = 10;            // In milliseconds
+  private static final int WHEEL_SIZE = 8;        // One turn is 80 ms
+
+  public static void main(String[] args) throws Exception {
+    final ConcurrentHashMap<String, Long> fired = new ConcurrentHashMap<String, Long>();
+    final ConcurrentHashMap<String, Integer> firings = new ConcurrentHashMap<String, Integer>();
+    Executor direct = new Executor() {
+      @Override
+      public void execute(Runnable task) {
+        task.run();
+      }
+    };
+    TimingWheel<String> wheel = new TimingWheel<String>(TICK, WHEEL_SIZE, direct,
+        new TimingWheel.Handler<String>() {
+          @Override
+          public void fire(TimingWheel.Timeout<String> timeout) {
+            fired.put(timeout.getEvent(), System.currentTimeMillis());
+            firings.merge(timeout.getEvent(), 1, Integer::sum);
+          }
+        });
+
+    long now = System.currentTimeMillis();
+    TimingWheel.Timeout<String> soon = wheel.schedule("soon", now + 30);
+    TimingWheel.Timeout<String> later = wheel.schedule("later", now + 300);
+    TimingWheel.Timeout<String> cancelled = wheel.schedule("cancelled", now + 50);
+    TimingWheel.Timeout<String> overdue = wheel.schedule("overdue", now - 5000);
+    checkEquals(4, wheel.size(), "pending after scheduling");
+    checkEquals(4, wheel.pendingTimeouts().size(), "timeouts listed");
+    check(cancelled.cancel(), "cancel a pending event");
+    check(!cancelled.cancel(), "cancel an event twice");
+    checkEquals(3, wheel.size(), "pending after cancelling");
+
+    wheel.start("timing-wheel-test");
+    waitFor(fired, "soon", 2000);
+    check(fired.containsKey("overdue"), "an overdue event fires on the first ticks");
+    check(fired.get("overdue") < now + 10 * TICK + 500, "an overdue event fires at once");
+    check(fired.get("soon") >= soon.getDeadline(), "an event fires no earlier than its deadline");
+    check(!fired.containsKey("later"), "an event more than a turn ahead waits");
+    checkEquals(1, wheel.size(), "pending while a later event waits out its turns");
+
+    waitFor(fired, "later", 3000);
+    check(fired.get("later") >= later.getDeadline(),
+        "an event more than a turn ahead fires no earlier than its deadline");
+    Thread.sleep(3 * WHEEL_SIZE * TICK);
+    wheel.stop();
+
+    check(!fired.containsKey("cancelled"), "a cancelled event never fires");
+    for (String event : new String[] { "soon", "later", "overdue" }) {
+      checkEquals(Integer.valueOf(1), firings.get(event), event + " fired once");
+    }
+    check(!soon.cancel(), "cancel an event that fired");
+    checkEquals(0, wheel.size(), "nothing pending");
+    check(wheel.pendingTimeouts().isEmpty(), "no timeouts listed");
+
+    try {
+      new TimingWheel<String>(0, WHEEL_SIZE, direct, null);
+      check(false, "a tick of zero is refused");
+    } catch (IllegalArgumentException e) {
+      check(true, "a tick of zero is refused");
+    }
+
+    Checks.done("TimingWheelTest");
+  }
+
+  /**
+   * Waits until an event has fired.
+   *
+   * @param fired             The time each event fired
+   * @param event             The event
+   * @param limit             The longest to wait, in milliseconds
+   * @throws InterruptedException if interrupted while waiting
+   */
+  static void waitFor(ConcurrentHashMap<String, Long> fired, String event, long limit)
+      throws InterruptedException {
+    long end = System.currentTimeMillis() + limit;
+    while (!fired.containsKey(event) && System.currentTimeMillis() < end) {
+      Thread.sleep(5);
+    }
+    check(fired.containsKey(event), event + " fired");
+  }
+}